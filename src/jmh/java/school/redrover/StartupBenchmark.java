@@ -0,0 +1,155 @@
+package school.redrover;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from process launch to the first answer, for the CLI ({@code -p}, until the response is
+ * printed) and the server (until the first {@code POST /ask} succeeds). The prompt is pre-seeded
+ * in the conversation log, so no network call is involved.
+ * <p>
+ * By default both entry points run on a plain JVM with this build's classpath. Pass a different
+ * launcher to compare builds, e.g. {@code -p launcher="target/bender"} for the native CLI or
+ * {@code -p launcher="java -XX:SharedArchiveFile=target/bender-server.jsa -Dspring.aot.enabled=true -jar target/oBender-1.0-SNAPSHOT.jar"}
+ * for the CDS server (use an absolute path; the process runs in a temp directory).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final String PROMPT = "What is the key to success?";
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    @Param({"cli", "server"})
+    public String entryPoint;
+
+    @Param({""})
+    public String launcher;
+
+    private Path directory;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bender-startup-bench");
+        Files.createDirectories(directory.resolve("logs"));
+        Files.writeString(directory.resolve("logs/conversations.jsonl"),
+                "{\"prompt\":\"" + PROMPT + "\",\"response\":\"Four hundred relatively honest ways.\","
+                        + "\"timestamp\":\"2024-01-01T00:00:00Z\"}\n");
+        Files.writeString(directory.resolve("local.properties"), "openai.api-key=sk-benchmark\n");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String timeToFirstResponse() throws Exception {
+        return "cli".equals(entryPoint) ? firstCliResponse() : firstServerResponse();
+    }
+
+    private String firstCliResponse() throws Exception {
+        Process process = start(command("school.redrover.BenderLLM", "-p", PROMPT), ProcessBuilder.Redirect.PIPE);
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.contains("Response")) {
+                    return line;
+                }
+            }
+            throw new IllegalStateException("CLI exited without a response, exit code " + process.waitFor());
+        } finally {
+            stop(process);
+        }
+    }
+
+    private String firstServerResponse() throws Exception {
+        int port = freePort();
+        Process process = start(command("school.redrover.BenderApplication", "--server.port=" + port),
+                ProcessBuilder.Redirect.DISCARD);
+        HttpRequest ask = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/bender/api/bender/ask"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("\"" + PROMPT + "\""))
+                .build();
+        try {
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("Server exited with code " + process.exitValue());
+                }
+                try {
+                    HttpResponse<String> response = http.send(ask, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        return response.body();
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet.
+                }
+                Thread.sleep(10);
+            }
+            throw new IllegalStateException("Server did not answer within " + TIMEOUT);
+        } finally {
+            stop(process);
+        }
+    }
+
+    private List<String> command(String mainClass, String... args) {
+        List<String> command = new ArrayList<>();
+        if (launcher.isBlank()) {
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(mainClass);
+        } else {
+            command.addAll(Arrays.asList(launcher.trim().split("\\s+")));
+        }
+        command.addAll(List.of(args));
+        return command;
+    }
+
+    private Process start(List<String> command, ProcessBuilder.Redirect output) throws IOException {
+        return new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(output)
+                .start();
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
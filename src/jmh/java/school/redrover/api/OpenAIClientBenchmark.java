@@ -0,0 +1,78 @@
+package school.redrover.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-body serialization and completion parsing, without any I/O. The {@code *Tree} variants
+ * are the Gson tree-model code the client used before it streamed; run with {@code -prof gc} and
+ * compare {@code gc.alloc.rate.norm} for bytes allocated per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenAIClientBenchmark {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private OpenAIClient client;
+    private OpenAIConfig config;
+    private String prompt;
+    private ByteString completion;
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("openai.api-key", "bench-key");
+        config = OpenAIConfig.from(properties);
+        client = new OpenAIClient(config, new OkHttpClient());
+        prompt = "How would you handle a complex strategy involving \"quotes\", a chair and twelve jewels?";
+        completion = ByteString.encodeUtf8(StubOpenAIServer.COMPLETION);
+    }
+
+    @Benchmark
+    public RequestBody buildRequestBody() {
+        return client.buildRequestBody(prompt, false);
+    }
+
+    @Benchmark
+    public RequestBody buildRequestBodyTree() {
+        JsonObject json = new JsonObject();
+        json.addProperty("model", config.model());
+        json.addProperty("max_tokens", config.maxTokens());
+        json.addProperty("temperature", config.temperature());
+        json.addProperty("prompt", prompt);
+        return RequestBody.create(json.toString(), JSON);
+    }
+
+    /**
+     * Parses straight from the response's Okio source, as the client does.
+     */
+    @Benchmark
+    public String parseCompletion() throws IOException {
+        BufferedSource source = new Buffer().write(completion);
+        return OpenAIClient.parseCompletion(OkioJson.reader(source));
+    }
+
+    @Benchmark
+    public String parseCompletionTree() {
+        String body = new Buffer().write(completion).readUtf8();
+        JsonArray choices = JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("choices");
+        return choices.get(0).getAsJsonObject().get("text").getAsString().trim();
+    }
+}
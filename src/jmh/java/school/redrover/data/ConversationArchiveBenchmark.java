@@ -0,0 +1,70 @@
+package school.redrover.data;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of the same synthetic conversations stored as the JSONL log (parsed line by line with
+ * Gson) and as compressed segments. The on-disk size of both is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConversationArchiveBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int lines;
+
+    private Path directory;
+    private Path log;
+    private final List<ConversationSegment> segments = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("bender-archive-bench");
+        log = directory.resolve("conversations.jsonl");
+        Path segmentDirectory = directory.resolve("segments");
+        SyntheticConversations.write(log, lines, Math.max(16, lines / 4));
+        SegmentCacheStore.importLog(log, segmentDirectory, 100_000);
+
+        long segmentBytes = 0L;
+        try (var files = Files.list(segmentDirectory)) {
+            for (Path file : files.sorted().toList()) {
+                segments.add(ConversationSegment.open(file));
+                segmentBytes += Files.size(file);
+            }
+        }
+        System.out.printf("%n%d lines: JSONL %d bytes, segments %d bytes (%.1fx smaller)%n",
+                lines, Files.size(log), segmentBytes, (double) Files.size(log) / segmentBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        segments.forEach(ConversationSegment::close);
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void scanJsonl(Blackhole blackhole) {
+        JsonlCacheStore.readRecords(log, blackhole::consume);
+    }
+
+    @Benchmark
+    public void scanSegments(Blackhole blackhole) {
+        for (ConversationSegment segment : segments) {
+            segment.forEach(blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package school.redrover.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start cost of opening a ResponseCache over logs of increasing size, with and without an
+ * index snapshot. Use {@code -p lines=10000000} for the largest log; generating it takes a while.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConversationLogLoadBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Path directory;
+    private Path log;
+    private Path index;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("bender-load-bench");
+        log = directory.resolve("conversations.jsonl");
+        index = directory.resolve("conversations.jsonl.idx");
+        SyntheticConversations.write(log, lines, Math.max(16, lines / 4));
+        if (indexed) {
+            // Opening and closing once leaves a snapshot covering the whole log.
+            new ResponseCache(log, 10_000, 64L * 1024 * 1024, Duration.ZERO, 5).close();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetIndex() throws IOException {
+        if (!indexed) {
+            Files.deleteIfExists(index);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public CacheStats load() {
+        ResponseCache cache = new ResponseCache(log, 10_000, 64L * 1024 * 1024, Duration.ZERO, 5);
+        CacheStats stats = cache.getStats();
+        cache.close();
+        return stats;
+    }
+}
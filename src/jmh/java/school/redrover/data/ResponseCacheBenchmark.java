@@ -0,0 +1,64 @@
+package school.redrover.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache lookup and save throughput with several threads hitting the same cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Dresponse.cache.writer.fsync=none")
+public class ResponseCacheBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private Path directory;
+    private ResponseCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bender-cache-bench");
+        cache = new ResponseCache(directory.resolve("conversations.jsonl"), entries, Long.MAX_VALUE, Duration.ZERO, 5);
+        for (int i = 0; i < entries; i++) {
+            cache.saveResponse(SyntheticConversations.prompt(i), SyntheticConversations.response(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public List<String> lookupHit() {
+        String prompt = SyntheticConversations.prompt(ThreadLocalRandom.current().nextInt(entries));
+        return cache.isCached(prompt) ? cache.getResponse(prompt) : null;
+    }
+
+    @Benchmark
+    public boolean lookupMiss() {
+        return cache.isCached("never asked " + ThreadLocalRandom.current().nextInt());
+    }
+
+    @Benchmark
+    public void save() {
+        int id = ThreadLocalRandom.current().nextInt(entries);
+        cache.saveResponse(SyntheticConversations.prompt(id), SyntheticConversations.response(id));
+    }
+}
@@ -0,0 +1,39 @@
+package school.redrover.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+final class SyntheticConversations {
+
+    private SyntheticConversations() {
+    }
+
+    /**
+     * Writes a conversation log shaped like production: a long tail of distinct prompts with a
+     * few popular ones repeated, each answered with a paragraph-sized response.
+     */
+    static void write(Path file, int lines, int distinctPrompts) throws IOException {
+        Files.createDirectories(file.getParent());
+        long timestamp = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < lines; i++) {
+                int promptId = (i % 10 == 0) ? i % 16 : i % distinctPrompts;
+                writer.write("{\"prompt\":\"" + prompt(promptId) + "\",\"response\":\"" + response(i)
+                        + "\",\"timestamp\":\"" + Instant.ofEpochMilli(timestamp + i * 1000L) + "\"}");
+                writer.newLine();
+            }
+        }
+    }
+
+    static String prompt(int id) {
+        return "How would Ostap Bender handle situation number " + id + "?";
+    }
+
+    static String response(int id) {
+        return "Response " + id + ": Ice will be broken, gentlemen of the jury! The great schemer always has"
+                + " a plan, four hundred relatively honest ways to take money, and a chair to look after.";
+    }
+}
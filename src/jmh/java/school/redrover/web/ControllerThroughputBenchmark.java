@@ -0,0 +1,92 @@
+package school.redrover.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.*;
+import school.redrover.api.HttpClientFactory;
+import school.redrover.api.OpenAIClient;
+import school.redrover.api.OpenAIConfig;
+import school.redrover.api.StubOpenAIServer;
+import school.redrover.data.ResponseCache;
+import school.redrover.service.BenderService;
+import school.redrover.service.ClientRateLimiter;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Calls the controller's /ask handler directly (no servlet container) with the real client talking
+ * to a local stub server, so the cache, coalescing, limiter and HTTP client are all on the path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = "-Dresponse.cache.writer.fsync=none")
+public class ControllerThroughputBenchmark {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final String WARM_KEY = ResponseCache.keyOf("warm prompt");
+
+    // Only the client address and context path are read off the request.
+    private static final HttpServletRequest CLIENT = (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "getRemoteAddr" -> "127.0.0.1";
+                case "getContextPath" -> "";
+                default -> null;
+            });
+
+    private StubOpenAIServer upstream;
+    private Path directory;
+    private ResponseCache cache;
+    private ExecutorService streamExecutor;
+    private BenderController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        upstream = new StubOpenAIServer();
+        directory = Files.createTempDirectory("bender-controller-bench");
+        cache = new ResponseCache(directory.resolve("conversations.jsonl"), 100_000, 256L * 1024 * 1024, Duration.ZERO, 5);
+
+        OpenAIConfig config = upstream.config();
+        BenderService service = new BenderService(new OpenAIClient(config, HttpClientFactory.create(config)), cache);
+        streamExecutor = Executors.newSingleThreadExecutor();
+        controller = new BenderController(service, streamExecutor,
+                new ClientRateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, 1), 3600);
+        controller.askBender("warm prompt", null, CLIENT).join();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        streamExecutor.shutdown();
+        upstream.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String cachedPrompt() {
+        return controller.askBender("warm prompt", null, CLIENT).join().getBody();
+    }
+
+    @Benchmark
+    public String cachedAnswerByKey() {
+        return controller.cachedAnswer(WARM_KEY).getBody();
+    }
+
+    @Benchmark
+    public String upstreamPrompt() {
+        return controller.askBender("cold prompt " + SEQUENCE.incrementAndGet(), null, CLIENT).join().getBody();
+    }
+}
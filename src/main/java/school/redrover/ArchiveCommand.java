@@ -0,0 +1,60 @@
+package school.redrover;
+
+import picocli.CommandLine;
+import school.redrover.data.SegmentCacheStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+@CommandLine.Command(
+        name = "archive",
+        mixinStandardHelpOptions = true,
+        description = "Convert the JSONL conversation log to compressed segments (response.cache.store=segments) and back."
+)
+public class ArchiveCommand {
+
+    @CommandLine.Command(name = "convert", description = "Write a JSONL conversation log as compressed segments.")
+    int convert(
+            @CommandLine.Option(names = "--from", defaultValue = "logs/conversations.jsonl",
+                    description = "JSONL log to read (default: ${DEFAULT-VALUE}).") Path from,
+            @CommandLine.Option(names = "--to", defaultValue = "logs/segments",
+                    description = "Segment directory to write (default: ${DEFAULT-VALUE}).") Path to,
+            @CommandLine.Option(names = "--segment-records", defaultValue = "100000",
+                    description = "Records per segment (default: ${DEFAULT-VALUE}).") int segmentRecords
+    ) throws IOException {
+        if (!Files.exists(from)) {
+            System.err.println("No conversation log at " + from);
+            return 1;
+        }
+        long start = System.nanoTime();
+        long records = SegmentCacheStore.importLog(from, to, segmentRecords);
+        System.out.printf("Converted %d records in %d ms: %s (%d bytes) -> %s (%d bytes)%n",
+                records, (System.nanoTime() - start) / 1_000_000, from, Files.size(from), to, directorySize(to));
+        return 0;
+    }
+
+    @CommandLine.Command(name = "export", description = "Write a segment directory back out as a JSONL conversation log.")
+    int export(
+            @CommandLine.Option(names = "--from", defaultValue = "logs/segments",
+                    description = "Segment directory to read (default: ${DEFAULT-VALUE}).") Path from,
+            @CommandLine.Option(names = "--to", required = true,
+                    description = "JSONL file to write.") Path to
+    ) throws IOException {
+        if (!Files.isDirectory(from)) {
+            System.err.println("No segment directory at " + from);
+            return 1;
+        }
+        long start = System.nanoTime();
+        long records = SegmentCacheStore.exportLog(from, to);
+        System.out.printf("Exported %d records in %d ms to %s%n", records, (System.nanoTime() - start) / 1_000_000, to);
+        return 0;
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
@@ -4,16 +4,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.PropertySource;
 
 @SpringBootApplication
-@PropertySource("file:local.properties")
+@PropertySource(value = "file:local.properties", ignoreResourceNotFound = true)
 
 public class BenderApplication {
     private static final Logger logger = LoggerFactory.getLogger(BenderApplication.class);
 
     public static void main(String[] args) {
-        SpringApplication.run(BenderApplication.class, args);
+        ConfigurableApplicationContext context = SpringApplication.run(BenderApplication.class, args);
         logger.info("BenderApplication has started successfully!");
+
+        // Training run for the class-data-sharing archive (see the cds profile): start fully, then exit.
+        if (Boolean.getBoolean("bender.exit-after-startup")) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
@@ -0,0 +1,195 @@
+package school.redrover;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.OkHttpClient;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import school.redrover.api.HttpClientFactory;
+import school.redrover.api.LlmProviderRegistry;
+import school.redrover.api.LlmRouter;
+import school.redrover.api.OpenAIConfig;
+import school.redrover.data.PromptManager;
+import school.redrover.data.ResponseCache;
+import school.redrover.metrics.BenderMetrics;
+import school.redrover.service.BenderService;
+import school.redrover.service.ClientRateLimiter;
+import school.redrover.service.ConcurrencyLimiter;
+import school.redrover.service.ConversationStore;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class BenderConfiguration {
+
+    @Bean
+    public OpenAIConfig openAIConfig(Environment environment) {
+        return OpenAIConfig.from(environment::getProperty);
+    }
+
+    @Bean
+    public BenderMetrics benderMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+        return new BenderMetrics(meterRegistry, observationRegistry);
+    }
+
+    @Bean
+    public OkHttpClient okHttpClient(OpenAIConfig config, BenderMetrics metrics) {
+        return HttpClientFactory.create(config, metrics.upstreamListenerFactory());
+    }
+
+    /**
+     * Extension point for additional providers: register them on this bean.
+     */
+    @Bean
+    public LlmProviderRegistry llmProviderRegistry(BenderMetrics metrics) {
+        return LlmProviderRegistry.withDefaults().batchListener(metrics.batchListener());
+    }
+
+    @Bean
+    public LlmRouter llmRouter(LlmProviderRegistry registry, Environment environment, OkHttpClient okHttpClient,
+                               BenderMetrics metrics) {
+        LlmRouter router = registry.createRouter(environment::getProperty, okHttpClient);
+        metrics.bindRouter(router);
+        return router;
+    }
+
+    /**
+     * Closed by {@link BenderService#close()} once its background refresher has stopped, not by
+     * the container, so the store and stats are flushed exactly once.
+     */
+    @Bean(destroyMethod = "")
+    public ResponseCache responseCache(BenderMetrics metrics) {
+        ResponseCache cache = new ResponseCache();
+        metrics.bindCache(cache);
+        return cache;
+    }
+
+    @Bean
+    public ConcurrencyLimiter upstreamLimiter(Environment environment, BenderMetrics metrics) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                environment.getProperty("bender.upstream.max-concurrent", Integer.class, 64),
+                environment.getProperty("bender.upstream.max-queued", Integer.class, 1_000),
+                Duration.ofMillis(environment.getProperty("bender.upstream.max-queue-time-ms", Long.class, 30_000L)),
+                environment.getProperty("bender.upstream.tokens-per-minute", Long.class, 0L),
+                parseWeights(environment.getProperty("bender.upstream.client-weights", ""))
+        );
+        metrics.bindLimiter(limiter);
+        return limiter;
+    }
+
+    @Bean
+    public ClientRateLimiter clientRateLimiter(Environment environment, BenderMetrics metrics) {
+        ClientRateLimiter rateLimiter = new ClientRateLimiter(
+                environment.getProperty("bender.rate-limit.requests-per-minute", Integer.class, 60),
+                environment.getProperty("bender.rate-limit.burst", Integer.class, 20),
+                environment.getProperty("bender.rate-limit.max-clients", Integer.class, 100_000)
+        );
+        metrics.bindRateLimiter(rateLimiter);
+        return rateLimiter;
+    }
+
+    /**
+     * "client=weight" pairs, comma separated.
+     */
+    static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String pair : spec.split(",")) {
+            int separator = pair.lastIndexOf('=');
+            if (separator > 0) {
+                weights.put(pair.substring(0, separator).strip(), Integer.parseInt(pair.substring(separator + 1).strip()));
+            }
+        }
+        return weights;
+    }
+
+    @Bean
+    public ConversationStore conversationStore(Environment environment) {
+        return new ConversationStore(
+                environment.getProperty("bender.conversation.preamble", ConversationStore.DEFAULT_PREAMBLE),
+                environment.getProperty("bender.conversation.max-turns", Integer.class, 16),
+                environment.getProperty("bender.conversation.token-budget", Integer.class, 1_500),
+                environment.getProperty("bender.conversation.summary-tokens", Integer.class, 300),
+                environment.getProperty("bender.conversation.max-sessions", Integer.class, 10_000),
+                Duration.ofMinutes(environment.getProperty("bender.conversation.idle-timeout-minutes", Long.class, 30L))
+        );
+    }
+
+    @Bean
+    public PromptManager promptManager(Environment environment) {
+        return new PromptManager(Path.of(environment.getProperty("prompts.dir", "prompts")),
+                environment.getProperty("prompts.watch", Boolean.class, true));
+    }
+
+    @Bean
+    public BenderService benderService(LlmRouter llmRouter, ResponseCache responseCache,
+                                       ConcurrencyLimiter upstreamLimiter, BenderMetrics metrics,
+                                       ConversationStore conversationStore, PromptManager promptManager,
+                                       Environment environment) {
+        Duration inFlightTimeout = Duration.ofSeconds(
+                environment.getProperty("bender.in-flight.timeout-seconds", Long.class, 60L));
+        BenderService service = new BenderService(llmRouter, responseCache, inFlightTimeout, upstreamLimiter,
+                metrics, conversationStore)
+                .withBackgroundRefresh(environment.getProperty("bender.refresh.max-concurrent", Integer.class, 2),
+                        prompt -> promptManager.getCatalog().containsPrompt(prompt));
+        metrics.bindRefresher(service.getRefresher());
+        return service;
+    }
+
+    /**
+     * Fetches the catalog prompts and the most requested prompts of earlier runs that have no
+     * cached answer once the server is up, so their first askers are served from cache.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "bender.refresh.prewarm", havingValue = "true", matchIfMissing = true)
+    public ApplicationRunner promptPrewarmer(BenderService benderService, PromptManager promptManager,
+                                             Environment environment) {
+        int hot = environment.getProperty("bender.refresh.prewarm-hot", Integer.class, 20);
+        return args -> {
+            Set<String> prompts = new LinkedHashSet<>(promptManager.getPrompts().values());
+            benderService.getHotPromptTracker().top(hot).forEach(stats -> prompts.add(stats.prompt()));
+            benderService.prewarm(prompts);
+        };
+    }
+
+    /**
+     * Runs SSE streams (which hold a thread for the whole upstream call) on virtual threads when
+     * bender.web.virtual-threads is enabled, otherwise on a fixed platform pool.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService streamExecutor(Environment environment) {
+        if (environment.getProperty("bender.web.virtual-threads", Boolean.class, false)) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(environment.getProperty("bender.stream.threads", Integer.class, 16));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "bender.web.virtual-threads", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadRequestExecutor() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Bean
+    public HttpClientShutdown httpClientShutdown(OkHttpClient okHttpClient) {
+        return new HttpClientShutdown(okHttpClient);
+    }
+
+    // OkHttpClient has no close method, so shut its dispatcher and pool down with the context.
+    record HttpClientShutdown(OkHttpClient client) implements AutoCloseable {
+        @Override
+        public void close() {
+            HttpClientFactory.shutdown(client);
+        }
+    }
+}
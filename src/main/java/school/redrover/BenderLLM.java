@@ -1,26 +1,50 @@
 package school.redrover;
 
+import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.jline.reader.EndOfFileException;
+import org.jline.reader.LineReader;
+import org.jline.reader.LineReaderBuilder;
+import org.jline.reader.UserInterruptException;
+import org.jline.reader.impl.completer.StringsCompleter;
+import org.jline.terminal.Terminal;
+import org.jline.terminal.TerminalBuilder;
 import picocli.CommandLine;
-import school.redrover.api.OpenAIClient;
+import school.redrover.api.HttpClientFactory;
+import school.redrover.api.LlmClient;
+import school.redrover.api.LlmProviderRegistry;
+import school.redrover.api.OpenAIConfig;
+import school.redrover.data.PromptCatalog;
 import school.redrover.data.PromptManager;
 import school.redrover.data.ResponseCache;
+import school.redrover.service.BenderService;
 import school.redrover.ui.CLI;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @CommandLine.Command(
         name = "BenderLLM",
         mixinStandardHelpOptions = true,
         version = "1.0",
-        description = "Interact with Ostap Bender, the Great Strategist."
+        description = "Interact with Ostap Bender, the Great Strategist.",
+        subcommands = {ArchiveCommand.class, LoadTestCommand.class, HotPromptsCommand.class}
 )
 public class BenderLLM implements Callable<Integer> {
 
     private static final Logger logger = LoggerFactory.getLogger(BenderLLM.class);
+    private static final String CLI_SESSION = "cli";
+    private static final List<String> REPL_COMMANDS = List.of("/prompts", "/history", "/reset", "/stats", "/exit");
 
     @CommandLine.Option(
             names = {"-p", "--prompt"},
@@ -28,29 +52,60 @@ public class BenderLLM implements Callable<Integer> {
     )
     private String userInput;
 
-    private final OpenAIClient llm;
-    private final PromptManager promptManager;
-    private final ResponseCache cache;
-    private final CLI cli;
-    private final StringBuilder conversationHistory;
-
-    public BenderLLM() {
-        this.llm = new OpenAIClient(
-                "https://api.openai.com/v1/completions",
-                "your-api-key",
-                "text-davinci-003",
-                100,
-                0.7
-        );
+    @CommandLine.Option(
+            names = {"-i", "--interactive"},
+            description = "Keep asking in one session, reusing the warm connection and cache; answers stream as they arrive."
+    )
+    private boolean interactive;
+
+    @CommandLine.Option(
+            names = {"-b", "--batch"},
+            arity = "1..*",
+            description = "Ask several prompts at once (questions, prompt keys or numbers); prints NDJSON results in completion order."
+    )
+    private List<String> batchInputs;
+
+    @CommandLine.Option(
+            names = {"--batch-file"},
+            description = "Read batch prompts from a file, one per line."
+    )
+    private Path batchFile;
+
+    @CommandLine.Option(
+            names = {"--parallelism"},
+            defaultValue = "8",
+            description = "Maximum upstream calls in flight for a batch (default: ${DEFAULT-VALUE})."
+    )
+    private int parallelism;
+
+    private final CLI cli = new CLI();
+    private PromptManager promptManager;
+    private BenderService bender;
+
+    /**
+     * Builds the service only when asking, so subcommands run without an API key or opening the cache.
+     */
+    private void start() {
+        Properties properties = loadProperties();
+        OpenAIConfig config = OpenAIConfig.from(properties);
+        LlmClient llm = LlmProviderRegistry.withDefaults()
+                .createRouter(properties::getProperty, HttpClientFactory.create(config));
         this.promptManager = new PromptManager();
-        this.cache = new ResponseCache();
-        this.cli = new CLI();
-        this.conversationHistory = new StringBuilder("You are Ostap Bender, the Great Strategist.\n");
+        // The server owns the persisted hot prompt stats; the CLI only counts its own lookups in memory.
+        this.bender = new BenderService(llm, new ResponseCache(false));
     }
 
     @Override
     public Integer call() {
+        start();
         try {
+            if (batchInputs != null || batchFile != null) {
+                return runBatch();
+            }
+            if (interactive) {
+                return runInteractive();
+            }
+
             if (userInput == null || userInput.trim().isEmpty()) {
                 cli.displayError("Prompt cannot be null or empty.", "Please enter a valid prompt.");
                 return 1;
@@ -62,14 +117,12 @@ public class BenderLLM implements Callable<Integer> {
             }
 
             cli.displayAvailablePrompts(promptManager.getPrompts());
-            String prompt = determinePrompt(userInput);
+            String prompt = promptManager.resolve(userInput);
 
-            String response = processPrompt(prompt);
+            String response = bender.ask(CLI_SESSION, prompt);
 
-            addToConversationHistory("User", prompt);
-            addToConversationHistory("Bender", response);
             cli.displayResponse(prompt, response);
-            cli.displayConversationHistory(conversationHistory.toString());
+            cli.displayConversationHistory(bender.getConversations().get(CLI_SESSION).transcript());
 
         } catch (IOException e) {
             cli.displayError("Error communicating with OpenAI: ", e.getMessage());
@@ -77,50 +130,161 @@ public class BenderLLM implements Callable<Integer> {
         } catch (Exception e) {
             cli.displayError("An unexpected error occurred: ", e.getMessage());
             logger.error("Unexpected Error: {}", e.getMessage());
+        } finally {
+            bender.close();
+            promptManager.close();
         }
 
         return 0;
     }
 
-    private String determinePrompt(String userInput) {
-        // Grab the map of prompts
-        Map<String, String> allPrompts = promptManager.getPrompts();
+    private int runBatch() throws IOException {
+        List<String> prompts = new ArrayList<>();
+        if (batchInputs != null) {
+            batchInputs.forEach(input -> prompts.add(promptManager.resolve(input)));
+        }
+        if (batchFile != null) {
+            for (String line : Files.readAllLines(batchFile)) {
+                if (!line.isBlank()) {
+                    prompts.add(promptManager.resolve(line.trim()));
+                }
+            }
+        }
 
-        try {
-            int index = Integer.parseInt(userInput);
-            var promptList = allPrompts.values().stream().toList();
-            if (index >= 1 && index <= promptList.size()) {
-                return promptList.get(index - 1);
+        Gson gson = new Gson();
+        AtomicInteger failures = new AtomicInteger();
+        bender.askBatch(prompts, parallelism, result -> {
+            if (!"ok".equals(result.status())) {
+                failures.incrementAndGet();
             }
-        } catch (NumberFormatException ignored) {
+            synchronized (System.out) {
+                System.out.println(gson.toJson(result));
+            }
+        }).join();
+
+        return failures.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * Read-eval-print loop over one BenderService, so every turn after the first skips JVM start,
+     * the cache load and the TLS handshake. Catalog selections (numbers or keys) are standalone
+     * questions and are answered from the response cache when possible; free text is asked in the
+     * CLI session's context. Both are recorded in the session.
+     */
+    private int runInteractive() throws IOException {
+        // A REPL lives long enough for stale catalog answers to be refreshed behind the user's back.
+        bender.withBackgroundRefresh(Integer.getInteger("bender.refresh.max-concurrent", 2),
+                prompt -> promptManager.getCatalog().containsPrompt(prompt));
+        Map<String, String> allPrompts = promptManager.getPrompts();
+        List<String> completions = new ArrayList<>(REPL_COMMANDS);
+        completions.addAll(allPrompts.keySet());
+        for (int i = 1; i <= allPrompts.size(); i++) {
+            completions.add(String.valueOf(i));
         }
 
-        return allPrompts.getOrDefault(userInput, userInput);
+        try (Terminal terminal = TerminalBuilder.builder().system(true).build()) {
+            LineReader reader = LineReaderBuilder.builder()
+                    .terminal(terminal)
+                    .appName("BenderLLM")
+                    .completer(new StringsCompleter(completions))
+                    .variable(LineReader.HISTORY_FILE, Path.of(System.getProperty("user.home"), ".bender_history"))
+                    .build();
+
+            cli.displayAvailablePrompts(allPrompts);
+            System.out.println("Commands: /prompts, /history, /reset, /stats, /exit. Tab completes prompt keys.");
+            while (true) {
+                String line;
+                try {
+                    line = reader.readLine("bender> ").strip();
+                } catch (UserInterruptException e) {
+                    continue;
+                } catch (EndOfFileException e) {
+                    break;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if ("/exit".equals(line) || "exit".equalsIgnoreCase(line)) {
+                    break;
+                }
+                if (!runReplCommand(line)) {
+                    askInteractive(line);
+                }
+            }
+            reader.getHistory().save();
+        }
+        System.out.println("Exiting BenderLLM. Goodbye!");
+        return 0;
     }
 
-    private String processPrompt(String prompt) throws IOException {
-        String response;
-
-        if (cache.isCached(prompt)) {
-            response = String.valueOf(cache.getResponse(prompt));
-            logger.info("Prompt (from cache): {}", prompt);
-            logger.info("Response (from cache): {}", response);
-        } else {
-            response = llm.getResponse(prompt);
-            cache.saveResponse(prompt, response);
-            logger.info("Prompt: {}", prompt);
-            logger.info("Response: {}", response);
+    private boolean runReplCommand(String line) {
+        switch (line) {
+            case "/prompts" -> cli.displayAvailablePrompts(promptManager.getPrompts());
+            case "/history" -> cli.displayConversationHistory(bender.getConversations().get(CLI_SESSION).transcript());
+            case "/reset" -> {
+                bender.getConversations().remove(CLI_SESSION);
+                System.out.println("Conversation cleared.");
+            }
+            case "/stats" -> System.out.println(bender.getCacheStats());
+            default -> {
+                return false;
+            }
         }
+        return true;
+    }
 
-        return response;
+    private void askInteractive(String input) {
+        PromptCatalog catalog = promptManager.getCatalog();
+        String prompt = catalog.resolve(input);
+        boolean fromCatalog = !prompt.equals(input) || catalog.containsPrompt(input);
+        long start = System.nanoTime();
+        try {
+            cli.beginStreamedResponse(prompt);
+            if (fromCatalog) {
+                String response = bender.askStreaming(prompt, cli::displayToken);
+                bender.getConversations().get(CLI_SESSION).record(prompt, response);
+            } else {
+                bender.askStreaming(CLI_SESSION, prompt, cli::displayToken);
+            }
+            cli.endStreamedResponse((System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            System.out.println();
+            cli.displayError("Error communicating with OpenAI: ", e.getMessage());
+            logger.error("OpenAI Communication Error: {}", e.getMessage());
+        }
     }
 
-    private void addToConversationHistory(String role, String message) {
-        conversationHistory.append(role).append(": ").append(message).append("\n");
+    /**
+     * Same sources the web app uses: bundled application.properties, then local.properties from the
+     * working directory, then -D system properties.
+     */
+    private static Properties loadProperties() {
+        Properties properties = new Properties();
+        try (InputStream input = BenderLLM.class.getResourceAsStream("/application.properties")) {
+            if (input != null) {
+                properties.load(input);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read application.properties: {}", e.getMessage());
+        }
+
+        Path localProperties = Path.of("local.properties");
+        if (Files.exists(localProperties)) {
+            try (Reader reader = Files.newBufferedReader(localProperties)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                logger.warn("Failed to read local.properties: {}", e.getMessage());
+            }
+        }
+
+        properties.putAll(System.getProperties());
+        return properties;
     }
 
     public static void main(String[] args) {
-        int exitCode = new CommandLine(new BenderLLM()).execute(args);
+        int exitCode = new CommandLine(new BenderLLM())
+                .setCaseInsensitiveEnumValuesAllowed(true)
+                .execute(args);
         System.exit(exitCode);
     }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package school.redrover;
+
+import com.google.gson.Gson;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import picocli.CommandLine;
+import school.redrover.data.HotPromptTracker;
+import school.redrover.web.HotPromptsEndpoint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Prints the most requested prompts, either from the stats file a stopped server left behind or
+ * live from a running server's {@code /actuator/hotprompts}.
+ */
+@CommandLine.Command(
+        name = "hot-prompts",
+        mixinStandardHelpOptions = true,
+        description = "Show the most requested prompts with their cache hit ratio and upstream latency."
+)
+public class HotPromptsCommand implements Callable<Integer> {
+
+    private static final int MAX_PROMPT_WIDTH = 80;
+
+    @CommandLine.Option(names = "--file", defaultValue = "logs/conversations.jsonl.hot",
+            description = "Hot prompt stats saved by the server (default: ${DEFAULT-VALUE}).")
+    private Path file;
+
+    @CommandLine.Option(names = "--target",
+            description = "Base URL of a running server's actuator, e.g. http://localhost:9091 for one on a "
+                    + "management port. Reads live stats instead of --file.")
+    private String target;
+
+    @CommandLine.Option(names = "--limit", defaultValue = "20",
+            description = "Prompts to show (default: ${DEFAULT-VALUE}).")
+    private int limit;
+
+    @CommandLine.Option(names = "--full-text",
+            description = "With --target, ask for whole prompts instead of previews (the saved file always has them).")
+    private boolean fullText;
+
+    @CommandLine.Option(names = "--json", description = "Print the report as JSON.")
+    private boolean json;
+
+    @Override
+    public Integer call() throws IOException {
+        HotPromptsEndpoint.Report report;
+        if (target != null) {
+            report = fetch(target.endsWith("/") ? target.substring(0, target.length() - 1) : target);
+        } else if (Files.exists(file)) {
+            // Read only: the tracker is not closed, so the file is left as the server wrote it.
+            report = HotPromptsEndpoint.report(new HotPromptTracker(file), limit, true);
+        } else {
+            System.err.println("No hot prompt stats at " + file);
+            return 1;
+        }
+
+        if (json) {
+            System.out.println(new Gson().toJson(report));
+        } else {
+            print(report);
+        }
+        return 0;
+    }
+
+    private HotPromptsEndpoint.Report fetch(String baseUrl) throws IOException {
+        OkHttpClient http = new OkHttpClient();
+        Request request = new Request.Builder()
+                .url(baseUrl + "/actuator/hotprompts?limit=" + limit + "&fullText=" + fullText)
+                .build();
+        try (Response response = http.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("HTTP " + response.code() + " from " + request.url());
+            }
+            return new Gson().fromJson(response.body().charStream(), HotPromptsEndpoint.Report.class);
+        } finally {
+            http.dispatcher().executorService().shutdown();
+            http.connectionPool().evictAll();
+        }
+    }
+
+    private static void print(HotPromptsEndpoint.Report report) {
+        System.out.printf("%d lookups, half-life %s%n%n", report.lookups(),
+                report.halfLifeMinutes() > 0 ? report.halfLifeMinutes() + " min" : "none");
+        System.out.printf("%4s %10s %6s %9s %9s  %s%n", "#", "lookups", "hit %", "upstream", "mean ms", "prompt");
+        int rank = 1;
+        for (HotPromptsEndpoint.HotPrompt stats : report.prompts()) {
+            long answered = stats.hits() + stats.misses();
+            String hitRatio = answered > 0
+                    ? String.format(Locale.ROOT, "%.1f", 100.0 * stats.hits() / answered)
+                    : "-";
+            System.out.printf(Locale.ROOT, "%4d %10d %6s %9d %9.0f  %s%n", rank++, stats.lookups(), hitRatio,
+                    stats.upstreamCalls(), stats.meanUpstreamMillis(), abbreviate(stats.prompt()));
+        }
+    }
+
+    private static String abbreviate(String prompt) {
+        String line = prompt.replaceAll("\\s+", " ").strip();
+        return line.length() > MAX_PROMPT_WIDTH ? line.substring(0, MAX_PROMPT_WIDTH - 3) + "..." : line;
+    }
+}
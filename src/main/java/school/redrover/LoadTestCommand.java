@@ -0,0 +1,387 @@
+package school.redrover;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import picocli.CommandLine;
+import school.redrover.api.LatencyDistribution;
+import school.redrover.api.StubOpenAIServer;
+import school.redrover.data.ConversationRecord;
+import school.redrover.data.JsonlCacheStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the prompts recorded in the conversation log against {@code /api/bender/ask} and reports
+ * latency percentiles, throughput, cache hit ratio and error rates as JSON.
+ *
+ * <p>In the closed model, {@code --concurrency} workers each send their next request as soon as the
+ * last one answers. In the open model, requests start on a schedule whether or not earlier ones
+ * have answered: every {@code 1/--rate} seconds, or at the log's recorded arrival times sped up
+ * by {@code --time-scale}. {@code --concurrency} then caps requests in flight, and latency is
+ * measured from the scheduled start, so time spent waiting for a free slot counts too.
+ *
+ * <p>Without {@code --target} the server is started in-process against a stub completions
+ * endpoint with {@code --stub-latency}, and an empty response cache in a temporary directory.
+ */
+@CommandLine.Command(
+        name = "loadtest",
+        mixinStandardHelpOptions = true,
+        description = "Replay the recorded prompt stream against /api/bender/ask and report latency, throughput and errors as JSON."
+)
+public class LoadTestCommand implements Callable<Integer> {
+
+    private static final MediaType TEXT = MediaType.get("text/plain; charset=utf-8");
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    enum Model { OPEN, CLOSED }
+
+    @CommandLine.Option(names = "--log", defaultValue = "logs/conversations.jsonl",
+            description = "Conversation log to replay (default: ${DEFAULT-VALUE}).")
+    private Path log;
+
+    @CommandLine.Option(names = "--target",
+            description = "Base URL of a running server, e.g. http://localhost:8081/bender. Without it the server runs in-process.")
+    private String target;
+
+    @CommandLine.Option(names = "--model", defaultValue = "closed",
+            description = "Workload model: open or closed (default: ${DEFAULT-VALUE}).")
+    private Model model;
+
+    @CommandLine.Option(names = "--concurrency", defaultValue = "16",
+            description = "Closed model: workers. Open model: maximum requests in flight (default: ${DEFAULT-VALUE}).")
+    private int concurrency;
+
+    @CommandLine.Option(names = "--rate", defaultValue = "0",
+            description = "Open model: requests per second; 0 replays the log's recorded arrival times (default: ${DEFAULT-VALUE}).")
+    private double rate;
+
+    @CommandLine.Option(names = "--time-scale", defaultValue = "1",
+            description = "Open model with recorded arrivals: replay this many times faster (default: ${DEFAULT-VALUE}).")
+    private double timeScale;
+
+    @CommandLine.Option(names = "--requests", defaultValue = "0",
+            description = "Requests to send, cycling through the log; 0 sends the log once, or runs until --duration (default: ${DEFAULT-VALUE}).")
+    private long requests;
+
+    @CommandLine.Option(names = "--duration", defaultValue = "0",
+            description = "Stop sending after this many seconds; 0 means no limit (default: ${DEFAULT-VALUE}).")
+    private long durationSeconds;
+
+    @CommandLine.Option(names = "--clients", defaultValue = "64",
+            description = "Distinct X-Api-Key values to spread requests over, so per-client rate limits apply as in production (default: ${DEFAULT-VALUE}).")
+    private int clients;
+
+    @CommandLine.Option(names = "--stub-latency", defaultValue = "lognormal:300,2000",
+            description = "In-process only: upstream latency in ms, as fixed:N, uniform:MIN-MAX, exponential:MEAN or lognormal:MEDIAN,P99 (default: ${DEFAULT-VALUE}).")
+    private String stubLatency;
+
+    @CommandLine.Option(names = "--app-property",
+            description = "In-process only: extra server property, e.g. --app-property bender.upstream.max-concurrent=32.")
+    private Map<String, String> appProperties = new LinkedHashMap<>();
+
+    @CommandLine.Option(names = "--output",
+            description = "Also write the JSON report to this file.")
+    private Path output;
+
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private record Target(String baseUrl, StubOpenAIServer stub, AutoCloseable resources) implements AutoCloseable {
+
+        @Override
+        public void close() throws Exception {
+            resources.close();
+        }
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        List<ConversationRecord> workload = new ArrayList<>();
+        JsonlCacheStore.readRecords(log, workload::add);
+        if (workload.isEmpty()) {
+            System.err.println("No conversations to replay in " + log);
+            return 1;
+        }
+        if (concurrency < 1 || clients < 1 || timeScale <= 0) {
+            System.err.println("--concurrency, --clients and --time-scale must be positive.");
+            return 1;
+        }
+        long total = requests > 0 ? requests : durationSeconds > 0 ? Long.MAX_VALUE : workload.size();
+        long deadline = durationSeconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds) : Long.MAX_VALUE;
+
+        OkHttpClient http = new OkHttpClient.Builder()
+                .dispatcher(dispatcher())
+                .connectionPool(new ConnectionPool(concurrency, 5, TimeUnit.MINUTES))
+                .readTimeout(Duration.ofMinutes(2))
+                .callTimeout(Duration.ofMinutes(5))
+                .retryOnConnectionFailure(false)
+                .build();
+        try (Target server = target != null ? new Target(stripSlash(target), null, () -> {
+        }) : startInProcess()) {
+            System.err.printf("Replaying %d prompts from %s against %s (%s model, concurrency %d)%n",
+                    workload.size(), log, server.baseUrl(), model.name().toLowerCase(), concurrency);
+            double[] hitsBefore = cacheLookups(http, server.baseUrl());
+            long upstreamBefore = server.stub() != null ? server.stub().requestCount() : 0L;
+
+            long start = System.nanoTime();
+            if (model == Model.CLOSED) {
+                runClosed(http, server.baseUrl(), workload, total, deadline);
+            } else {
+                runOpen(http, server.baseUrl(), workload, total, deadline);
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+            double[] hitsAfter = cacheLookups(http, server.baseUrl());
+            Long upstreamCalls = server.stub() != null ? server.stub().requestCount() - upstreamBefore : null;
+            LoadTestReport report = report(server.baseUrl(), elapsedSeconds, hitRatio(hitsBefore, hitsAfter), upstreamCalls);
+
+            String json = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+            System.out.println(json);
+            if (output != null) {
+                Files.writeString(output, json + System.lineSeparator());
+            }
+            return report.errors() == 0 ? 0 : 2;
+        } finally {
+            http.dispatcher().executorService().shutdown();
+            http.connectionPool().evictAll();
+        }
+    }
+
+    private Dispatcher dispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(concurrency);
+        dispatcher.setMaxRequestsPerHost(concurrency);
+        return dispatcher;
+    }
+
+    private void runClosed(OkHttpClient http, String baseUrl, List<ConversationRecord> workload,
+                           long total, long deadline) throws InterruptedException {
+        AtomicLong next = new AtomicLong();
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            workers.add(Thread.ofVirtual().name("loadtest-", w).start(() -> {
+                long i;
+                while ((i = next.getAndIncrement()) < total && System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    sent.incrementAndGet();
+                    try (Response response = http.newCall(request(baseUrl, workload, i)).execute()) {
+                        record(start, response.code(), response.body() != null ? response.body().string() : "");
+                    } catch (IOException e) {
+                        record(start, -1, e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    private void runOpen(OkHttpClient http, String baseUrl, List<ConversationRecord> workload,
+                         long total, long deadline) {
+        Phaser outstanding = new Phaser(1);
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + arrivalOffsetNanos(workload, i);
+            if (scheduled >= deadline) {
+                break;
+            }
+            for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            outstanding.register();
+            sent.incrementAndGet();
+            http.newCall(request(baseUrl, workload, i)).enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    try (response) {
+                        record(scheduled, response.code(), response.body() != null ? response.body().string() : "");
+                    } catch (IOException e) {
+                        record(scheduled, -1, e.getMessage());
+                    } finally {
+                        outstanding.arriveAndDeregister();
+                    }
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    record(scheduled, -1, e.getMessage());
+                    outstanding.arriveAndDeregister();
+                }
+            });
+        }
+        outstanding.arriveAndAwaitAdvance();
+    }
+
+    /**
+     * When request {@code i} starts, relative to the first. Recorded arrivals repeat the log's span
+     * (plus one average gap) on each pass.
+     */
+    private long arrivalOffsetNanos(List<ConversationRecord> workload, long i) {
+        if (rate > 0) {
+            return (long) (i * 1e9 / rate);
+        }
+        int n = workload.size();
+        long first = workload.get(0).timestamp();
+        long span = workload.get(n - 1).timestamp() - first;
+        long passMillis = n > 1 ? span + span / (n - 1) : 1_000L;
+        long offsetMillis = (i / n) * passMillis + Math.max(0L, workload.get((int) (i % n)).timestamp() - first);
+        return (long) (TimeUnit.MILLISECONDS.toNanos(offsetMillis) / timeScale);
+    }
+
+    private Request request(String baseUrl, List<ConversationRecord> workload, long i) {
+        return new Request.Builder()
+                .url(baseUrl + "/api/bender/ask")
+                .header("X-Api-Key", "loadtest-" + (i % clients))
+                .post(RequestBody.create(workload.get((int) (i % workload.size())).prompt(), TEXT))
+                .build();
+    }
+
+    /**
+     * The controller answers upstream failures with 200 and an "Error:" body, so those count as
+     * errors too.
+     */
+    private void record(long startNanos, int status, String body) {
+        histogram.recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - startNanos) / 1_000));
+        if (status == 200 && !body.startsWith("Error:")) {
+            ok.incrementAndGet();
+        } else if (status == 429) {
+            rateLimited.incrementAndGet();
+        } else {
+            errors.incrementAndGet();
+        }
+    }
+
+    private LoadTestReport report(String baseUrl, double elapsedSeconds, Double cacheHitRatio, Long upstreamCalls) {
+        Histogram snapshot = histogram.copy();
+        long completed = snapshot.getTotalCount();
+        return new LoadTestReport(
+                baseUrl,
+                model.name().toLowerCase(),
+                concurrency,
+                model == Model.OPEN ? rate : 0.0,
+                model == Model.OPEN && rate <= 0 ? timeScale : 0.0,
+                sent.get(),
+                ok.get(),
+                rateLimited.get(),
+                errors.get(),
+                completed == 0 ? 0.0 : (double) errors.get() / completed,
+                elapsedSeconds,
+                completed / elapsedSeconds,
+                cacheHitRatio,
+                upstreamCalls,
+                new LoadTestReport.Latency(
+                        millis(snapshot.getMinValue()),
+                        snapshot.getMean() / 1_000.0,
+                        millis(snapshot.getValueAtPercentile(50)),
+                        millis(snapshot.getValueAtPercentile(90)),
+                        millis(snapshot.getValueAtPercentile(99)),
+                        millis(snapshot.getValueAtPercentile(99.9)),
+                        millis(snapshot.getMaxValue())));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+
+    /**
+     * Cache hits and misses so far, from the actuator, or null when the target does not expose them.
+     */
+    private static double[] cacheLookups(OkHttpClient http, String baseUrl) {
+        try {
+            return new double[]{
+                    actuatorCount(http, baseUrl, "bender.cache.requests", "result:hit"),
+                    actuatorCount(http, baseUrl, "bender.cache.requests", "result:miss")};
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static double actuatorCount(OkHttpClient http, String baseUrl, String metric, String tag) throws IOException {
+        Request request = new Request.Builder().url(baseUrl + "/actuator/metrics/" + metric + "?tag=" + tag).build();
+        try (Response response = http.newCall(request).execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("HTTP " + response.code());
+            }
+            JsonObject body = new Gson().fromJson(response.body().string(), JsonObject.class);
+            return body.getAsJsonArray("measurements").get(0).getAsJsonObject().get("value").getAsDouble();
+        }
+    }
+
+    private static Double hitRatio(double[] before, double[] after) {
+        if (before == null || after == null) {
+            return null;
+        }
+        double hits = after[0] - before[0];
+        double lookups = hits + after[1] - before[1];
+        return lookups == 0 ? null : hits / lookups;
+    }
+
+    private Target startInProcess() throws IOException {
+        StubOpenAIServer stub = new StubOpenAIServer(LatencyDistribution.parse(stubLatency));
+        Path cacheDirectory = Files.createTempDirectory("bender-loadtest");
+        if (System.getProperty("response.cache.path") == null) {
+            System.setProperty("response.cache.path", cacheDirectory.resolve("conversations.jsonl").toString());
+        }
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("openai.api-url", stub.url());
+        properties.put("openai.api-key", "loadtest");
+        properties.put("openai.http.http2", "false");
+        properties.put("bender.llm.backends", "openai");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.school.redrover", "WARN");
+        properties.put("logging.level.org.springframework", "WARN");
+        properties.put("logging.level.org.apache", "WARN");
+        // Tomcat otherwise lists this process's own HTTP client threads as leaks on shutdown.
+        properties.put("logging.level.org.apache.catalina.loader", "ERROR");
+        properties.putAll(appProperties);
+        // Command-line arguments outrank application.properties and local.properties.
+        String[] args = properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue()).toArray(String[]::new);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BenderApplication.class).run(args);
+        String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port")
+                + context.getEnvironment().getProperty("server.servlet.context-path", "");
+        return new Target(baseUrl, stub, () -> {
+            context.close();
+            stub.close();
+            try (var files = Files.walk(cacheDirectory)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        });
+    }
+
+    private static String stripSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,29 @@
+package school.redrover;
+
+/**
+ * Outcome of a {@link LoadTestCommand} run, printed as JSON. Latencies are in milliseconds and, in
+ * the open model, measured from each request's scheduled start, so queueing behind a slow server
+ * counts against it. {@code cacheHitRatio} and {@code upstreamCalls} are null when the target does
+ * not expose them.
+ */
+public record LoadTestReport(
+        String target,
+        String model,
+        int concurrency,
+        double arrivalRate,
+        double timeScale,
+        long requests,
+        long ok,
+        long rateLimited,
+        long errors,
+        double errorRate,
+        double durationSeconds,
+        double throughputPerSecond,
+        Double cacheHitRatio,
+        Long upstreamCalls,
+        Latency latencyMillis
+) {
+
+    public record Latency(double min, double mean, double p50, double p90, double p99, double p999, double max) {
+    }
+}
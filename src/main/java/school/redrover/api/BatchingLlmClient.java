@@ -0,0 +1,163 @@
+package school.redrover.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Gathers concurrent completion requests for up to the linger time, or until the batch is full,
+ * and sends them upstream as one {@link LlmClient#getResponsesAsync} call. Each waiting caller gets
+ * the answer at its prompt's index. Streaming calls pass straight through.
+ */
+public class BatchingLlmClient implements LlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingLlmClient.class);
+
+    /**
+     * Told about each batch once its upstream call completes.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void batchCompleted(String backend, int size, long lingerNanos, long latencyNanos, boolean failed);
+    }
+
+    private record Pending(String prompt, CompletableFuture<String> result, long enqueuedNanos) {
+    }
+
+    private static final ScheduledExecutorService LINGER_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "llm-batch-linger");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LlmClient delegate;
+    private final int maxBatchSize;
+    private final Duration linger;
+    private final Listener listener;
+
+    private List<Pending> batch = new ArrayList<>();
+    private long batchGeneration;
+
+    public BatchingLlmClient(LlmClient delegate, int maxBatchSize, Duration linger, Listener listener) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.linger = linger;
+        this.listener = listener;
+        logger.info("Batching prompts for '{}': up to {} per request, {} ms linger",
+                delegate.name(), maxBatchSize, linger.toMillis());
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public int getMaxTokens() {
+        return delegate.getMaxTokens();
+    }
+
+    @Override
+    public String getResponse(String prompt) throws IOException {
+        return Futures.await(getResponseAsync(prompt));
+    }
+
+    @Override
+    public CompletableFuture<String> getResponseAsync(String prompt) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        List<Pending> full = null;
+        long generation;
+        boolean first;
+        synchronized (this) {
+            first = batch.isEmpty();
+            batch.add(new Pending(prompt, result, System.nanoTime()));
+            generation = batchGeneration;
+            if (batch.size() >= maxBatchSize) {
+                full = takeBatch();
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        } else if (first) {
+            LINGER_TIMER.schedule(() -> flush(generation), linger.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the batch that was open when the linger timer was armed, unless it already filled up
+     * and left.
+     */
+    private void flush(long generation) {
+        List<Pending> due;
+        synchronized (this) {
+            if (generation != batchGeneration || batch.isEmpty()) {
+                return;
+            }
+            due = takeBatch();
+        }
+        send(due);
+    }
+
+    private List<Pending> takeBatch() {
+        List<Pending> taken = batch;
+        batch = new ArrayList<>();
+        batchGeneration++;
+        return taken;
+    }
+
+    private void send(List<Pending> due) {
+        long start = System.nanoTime();
+        long lingerNanos = start - due.get(0).enqueuedNanos();
+        // Callers that gave up while the batch lingered are left out.
+        List<Pending> live = due.stream().filter(pending -> !pending.result().isDone()).toList();
+        if (live.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture<List<String>> call;
+        try {
+            call = live.size() == 1
+                    ? delegate.getResponseAsync(live.get(0).prompt()).thenApply(List::of)
+                    : delegate.getResponsesAsync(live.stream().map(Pending::prompt).toList());
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((responses, error) -> {
+            listener.batchCompleted(delegate.name(), live.size(), lingerNanos, System.nanoTime() - start, error != null);
+            for (int i = 0; i < live.size(); i++) {
+                CompletableFuture<String> result = live.get(i).result();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else if (responses.get(i) == null) {
+                    result.completeExceptionally(new IOException("The batched response had no completion for this prompt."));
+                } else {
+                    result.complete(responses.get(i));
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<String>> getResponsesAsync(List<String> prompts) {
+        return delegate.getResponsesAsync(prompts);
+    }
+
+    @Override
+    public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+        return delegate.streamResponse(prompt, onToken);
+    }
+}
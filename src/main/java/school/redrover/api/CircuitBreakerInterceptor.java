@@ -0,0 +1,47 @@
+package school.redrover.api;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private final CircuitBreaker circuitBreaker;
+
+    public CircuitBreakerInterceptor(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        if (!circuitBreaker.tryAcquire()) {
+            throw new CircuitBreakerOpenException(circuitBreaker.remainingOpenTime());
+        }
+
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException | RuntimeException e) {
+            // Any exit must settle the call, or a half-open probe would hold the breaker forever.
+            recordError(chain);
+            throw e;
+        }
+
+        if (response.code() == 429 || response.code() >= 500) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordSuccess();
+        }
+        return response;
+    }
+
+    private void recordError(Chain chain) {
+        // A call we cancelled (e.g. the losing side of a hedge) says nothing about upstream health.
+        if (chain.call().isCanceled()) {
+            circuitBreaker.recordCancelled();
+        } else {
+            circuitBreaker.recordFailure();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package school.redrover.api;
+
+import java.io.IOException;
+import java.time.Duration;
+
+public class CircuitBreakerOpenException extends IOException {
+
+    private final Duration retryAfter;
+
+    public CircuitBreakerOpenException(Duration retryAfter) {
+        super("Upstream is unavailable, circuit breaker is open. Retry in " + retryAfter.toSeconds() + "s.");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
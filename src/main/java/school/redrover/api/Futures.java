@@ -0,0 +1,34 @@
+package school.redrover.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Blocks for an asynchronous completion, rethrowing its failure as the checked exception
+     * the blocking {@link LlmClient} methods declare.
+     */
+    static String await(CompletableFuture<String> completion) throws IOException {
+        try {
+            return completion.get();
+        } catch (InterruptedException e) {
+            completion.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a completion");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
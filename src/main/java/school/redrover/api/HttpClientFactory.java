@@ -0,0 +1,79 @@
+package school.redrover.api;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public final class HttpClientFactory {
+
+    private HttpClientFactory() {
+    }
+
+    /**
+     * Builds the one OkHttpClient a process should share: pooled keep-alive connections, HTTP/2
+     * when the server offers it, and circuit breaking around retried calls.
+     */
+    public static OkHttpClient create(OpenAIConfig config) {
+        return create(config, call -> EventListener.NONE);
+    }
+
+    public static OkHttpClient create(OpenAIConfig config, EventListener.Factory eventListenerFactory) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(config.maxRequests());
+        dispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost());
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(
+                        config.maxIdleConnections(), config.keepAlive().toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(config.http2()
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(config.connectTimeout())
+                .readTimeout(config.readTimeout())
+                .writeTimeout(config.writeTimeout())
+                .callTimeout(config.callTimeout())
+                .retryOnConnectionFailure(true)
+                .eventListenerFactory(eventListenerFactory)
+                .addInterceptor(circuitBreaker(config))
+                .addInterceptor(retry(config))
+                .build();
+    }
+
+    /**
+     * A client for one more backend on the shared client's dispatcher and connection pool, with
+     * that backend's timeouts and its own circuit breaker, so one failing backend does not open
+     * the circuit for the others.
+     */
+    public static OkHttpClient forBackend(OkHttpClient shared, OpenAIConfig config) {
+        OkHttpClient.Builder builder = shared.newBuilder()
+                .connectTimeout(config.connectTimeout())
+                .readTimeout(config.readTimeout())
+                .writeTimeout(config.writeTimeout())
+                .callTimeout(config.callTimeout());
+        builder.interceptors().clear();
+        return builder
+                .addInterceptor(circuitBreaker(config))
+                .addInterceptor(retry(config))
+                .build();
+    }
+
+    private static CircuitBreakerInterceptor circuitBreaker(OpenAIConfig config) {
+        return new CircuitBreakerInterceptor(
+                new CircuitBreaker(config.circuitFailureThreshold(), config.circuitOpenDuration()));
+    }
+
+    private static RetryInterceptor retry(OpenAIConfig config) {
+        return new RetryInterceptor(config.retryMaxAttempts(), config.retryInitialBackoff(), config.retryMaxBackoff());
+    }
+
+    public static void shutdown(OkHttpClient client) {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+}
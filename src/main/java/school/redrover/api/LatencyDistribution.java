@@ -0,0 +1,55 @@
+package school.redrover.api;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Upstream response times for {@link StubOpenAIServer}, parsed from a spec such as
+ * {@code fixed:50}, {@code uniform:20-200}, {@code exponential:100} (mean) or
+ * {@code lognormal:200,1500} (median and 99th percentile). All values are milliseconds.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    LatencyDistribution NONE = () -> Duration.ZERO;
+
+    Duration sample();
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.strip().split(":", 2);
+        String kind = parts[0].toLowerCase(Locale.ROOT);
+        String[] args = parts.length > 1 ? parts[1].split("[,-]") : new String[0];
+        try {
+            return switch (kind) {
+                case "none" -> NONE;
+                case "fixed" -> {
+                    Duration fixed = Duration.ofMillis(Long.parseLong(args[0].strip()));
+                    yield () -> fixed;
+                }
+                case "uniform" -> {
+                    long min = Long.parseLong(args[0].strip());
+                    long max = Long.parseLong(args[1].strip());
+                    yield () -> Duration.ofMillis(ThreadLocalRandom.current().nextLong(min, max + 1));
+                }
+                case "exponential" -> {
+                    double mean = Double.parseDouble(args[0].strip());
+                    yield () -> millis(-mean * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+                }
+                case "lognormal" -> {
+                    double mu = Math.log(Double.parseDouble(args[0].strip()));
+                    // 2.3263 is the z-score of the 99th percentile of the standard normal distribution.
+                    double sigma = (Math.log(Double.parseDouble(args[1].strip())) - mu) / 2.3263;
+                    yield () -> millis(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+                }
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+    }
+
+    private static Duration millis(double millis) {
+        return Duration.ofNanos((long) (millis * 1_000_000));
+    }
+}
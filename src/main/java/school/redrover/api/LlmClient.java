@@ -0,0 +1,45 @@
+package school.redrover.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A model backend: something that turns a prompt into a completion. Implementations are
+ * thread-safe and shared by every caller.
+ */
+public interface LlmClient {
+
+    /**
+     * Backend name used in logs and metrics.
+     */
+    String name();
+
+    /**
+     * Completion limit sent with each request, used to estimate what a call will spend.
+     */
+    int getMaxTokens();
+
+    String getResponse(String prompt) throws IOException;
+
+    /**
+     * Non-blocking {@link #getResponse}; cancelling the returned future should abandon the call.
+     */
+    CompletableFuture<String> getResponseAsync(String prompt);
+
+    /**
+     * Completions for several prompts, in prompt order. Backends that accept a batch per request
+     * send one; the default sends one request per prompt.
+     */
+    default CompletableFuture<List<String>> getResponsesAsync(List<String> prompts) {
+        List<CompletableFuture<String>> calls = prompts.stream().map(this::getResponseAsync).toList();
+        return CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> calls.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Hands text deltas to {@code onToken} as they arrive and returns the full completion.
+     */
+    String streamResponse(String prompt, Consumer<String> onToken) throws IOException;
+}
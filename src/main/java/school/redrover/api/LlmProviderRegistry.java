@@ -0,0 +1,131 @@
+package school.redrover.api;
+
+import okhttp3.OkHttpClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Builds backends from configuration. {@code bender.llm.backends} lists backend names. Each name is
+ * configured under {@code bender.llm.<name>.*}:
+ * <ul>
+ *     <li>{@code provider} picks the implementation and defaults to the name itself.</li>
+ *     <li>Other keys override the matching {@code openai.*} setting for that backend only.</li>
+ *     <li>{@code cost-per-1k-tokens} feeds the cost routing policy.</li>
+ *     <li>{@code batch.max-size} above 1 puts a {@link BatchingLlmClient} in front of the backend,
+ *     lingering up to {@code batch.linger-ms} for more prompts.</li>
+ * </ul>
+ * Built in:
+ * <ul>
+ *     <li>{@code openai}: requires an API key.</li>
+ *     <li>{@code openai-compatible}: a local or self-hosted server; needs an {@code api-url}, the
+ *     key is optional.</li>
+ *     <li>{@code stub}: the in-process {@link StubLlmClient}, with an optional {@code latency-ms}.</li>
+ * </ul>
+ */
+public class LlmProviderRegistry {
+
+    public static final String BACKENDS_KEY = "bender.llm.backends";
+
+    /**
+     * Creates a backend named {@code name}; {@code lookup} resolves the backend's own keys first.
+     */
+    @FunctionalInterface
+    public interface Provider {
+        LlmClient create(String name, Function<String, String> lookup, OkHttpClient http);
+    }
+
+    private final Map<String, Provider> providers = new LinkedHashMap<>();
+    private BatchingLlmClient.Listener batchListener = (backend, size, lingerNanos, latencyNanos, failed) -> {
+    };
+
+    public static LlmProviderRegistry withDefaults() {
+        return new LlmProviderRegistry()
+                .register("openai", (name, lookup, http) -> {
+                    OpenAIConfig config = OpenAIConfig.from(lookup);
+                    return new OpenAIClient(name, config, HttpClientFactory.forBackend(http, config), true);
+                })
+                .register("openai-compatible", (name, lookup, http) -> {
+                    if (lookup.apply(prefix(name) + "api-url") == null) {
+                        throw new IllegalStateException(prefix(name) + "api-url must be set for an OpenAI-compatible backend.");
+                    }
+                    OpenAIConfig config = OpenAIConfig.from(lookup);
+                    return new OpenAIClient(name, config, HttpClientFactory.forBackend(http, config), false);
+                })
+                .register("stub", (name, lookup, http) -> new StubLlmClient(name,
+                        OpenAIConfig.from(lookup).maxTokens(),
+                        Duration.ofMillis(Long.parseLong(valueOr(lookup.apply(prefix(name) + "latency-ms"), "0")))));
+    }
+
+    public LlmProviderRegistry register(String provider, Provider factory) {
+        providers.put(provider, factory);
+        return this;
+    }
+
+    public LlmProviderRegistry batchListener(BatchingLlmClient.Listener listener) {
+        this.batchListener = listener;
+        return this;
+    }
+
+    public LlmClient create(String name, Function<String, String> lookup, OkHttpClient http) {
+        String provider = valueOr(lookup.apply(prefix(name) + "provider"), name);
+        Provider factory = providers.get(provider);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown LLM provider '" + provider + "' for backend '" + name
+                    + "'; known providers: " + providers.keySet());
+        }
+        LlmClient client = factory.create(name, backendLookup(name, lookup), http);
+        int maxBatchSize = Integer.parseInt(valueOr(lookup.apply(prefix(name) + "batch.max-size"), "1"));
+        if (maxBatchSize <= 1) {
+            return client;
+        }
+        Duration linger = Duration.ofMillis(Long.parseLong(valueOr(lookup.apply(prefix(name) + "batch.linger-ms"), "5")));
+        return new BatchingLlmClient(client, maxBatchSize, linger, batchListener);
+    }
+
+    /**
+     * The router over every configured backend, with settings from {@code bender.llm.routing.*}.
+     */
+    public LlmRouter createRouter(Function<String, String> lookup, OkHttpClient http) {
+        List<LlmClient> clients = new ArrayList<>();
+        List<Double> costs = new ArrayList<>();
+        for (String name : valueOr(lookup.apply(BACKENDS_KEY), "openai").split(",")) {
+            if (!name.isBlank()) {
+                clients.add(create(name.strip(), lookup, http));
+                costs.add(Double.parseDouble(valueOr(lookup.apply(prefix(name.strip()) + "cost-per-1k-tokens"), "0")));
+            }
+        }
+        return new LlmRouter(clients, costs,
+                LlmRouter.Policy.valueOf(valueOr(lookup.apply("bender.llm.routing.policy"), "latency").toUpperCase(Locale.ROOT)),
+                Duration.ofMillis(Long.parseLong(valueOr(lookup.apply("bender.llm.routing.hedge-delay-ms"), "0"))),
+                Duration.ofMillis(Long.parseLong(valueOr(lookup.apply("bender.llm.routing.failure-cooldown-ms"), "10000"))));
+    }
+
+    /**
+     * Resolves {@code openai.x} as {@code bender.llm.<name>.x} when that is set.
+     */
+    static Function<String, String> backendLookup(String name, Function<String, String> lookup) {
+        return key -> {
+            if (key.startsWith("openai.")) {
+                String override = lookup.apply(prefix(name) + key.substring("openai.".length()));
+                if (override != null && !override.isBlank()) {
+                    return override;
+                }
+            }
+            return lookup.apply(key);
+        };
+    }
+
+    private static String prefix(String name) {
+        return "bender.llm." + name + ".";
+    }
+
+    private static String valueOr(String value, String defaultValue) {
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+}
@@ -0,0 +1,308 @@
+package school.redrover.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Spreads calls over several backends. Each call tries the backends in policy order: fastest
+ * observed first, or cheapest first. A backend that failed recently moves to the back of the line
+ * for a cooldown. Errors fail over to the next backend. A non-streaming call that has not answered
+ * within the hedge delay is also sent to the next backend, and the first answer wins. Streams fail
+ * over only until their first token, since tokens already shown cannot be taken back.
+ */
+public class LlmRouter implements LlmClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmRouter.class);
+
+    /**
+     * Weight of the newest sample in a backend's moving average latency.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    public enum Policy {
+        LATENCY, COST
+    }
+
+    /**
+     * One backend and what the router has observed of it.
+     */
+    public static final class Route {
+
+        private final LlmClient client;
+        private final double costPerThousandTokens;
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private double averageLatencyNanos;
+        private long unhealthyUntilNanos;
+
+        Route(LlmClient client, double costPerThousandTokens) {
+            this.client = client;
+            this.costPerThousandTokens = costPerThousandTokens;
+        }
+
+        public String name() {
+            return client.name();
+        }
+
+        public double costPerThousandTokens() {
+            return costPerThousandTokens;
+        }
+
+        public synchronized Duration averageLatency() {
+            return Duration.ofNanos((long) averageLatencyNanos);
+        }
+
+        public synchronized boolean isHealthy() {
+            return System.nanoTime() - unhealthyUntilNanos >= 0;
+        }
+
+        public long successCount() {
+            return successes.get();
+        }
+
+        public long failureCount() {
+            return failures.get();
+        }
+
+        private synchronized void recordSuccess(long latencyNanos) {
+            successes.incrementAndGet();
+            averageLatencyNanos = averageLatencyNanos == 0
+                    ? latencyNanos
+                    : averageLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - averageLatencyNanos);
+        }
+
+        private synchronized void recordFailure(Duration cooldown) {
+            failures.incrementAndGet();
+            unhealthyUntilNanos = System.nanoTime() + cooldown.toNanos();
+        }
+    }
+
+    private final List<Route> routes;
+    private final Policy policy;
+    private final Duration hedgeDelay;
+    private final Duration failureCooldown;
+    private final int maxTokens;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    /**
+     * @param costsPerThousandTokens price of each backend, in the same order as {@code clients}
+     * @param hedgeDelay             zero disables hedging
+     */
+    public LlmRouter(List<LlmClient> clients, List<Double> costsPerThousandTokens, Policy policy,
+                     Duration hedgeDelay, Duration failureCooldown) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend is required.");
+        }
+        List<Route> routes = new ArrayList<>();
+        for (int i = 0; i < clients.size(); i++) {
+            routes.add(new Route(clients.get(i), costsPerThousandTokens.get(i)));
+        }
+        this.routes = List.copyOf(routes);
+        this.policy = policy;
+        this.hedgeDelay = hedgeDelay;
+        this.failureCooldown = failureCooldown;
+        this.maxTokens = clients.stream().mapToInt(LlmClient::getMaxTokens).max().orElse(0);
+        logger.info("LLM router over {} with policy={} hedgeDelay={}ms",
+                clients.stream().map(LlmClient::name).toList(), policy, hedgeDelay.toMillis());
+    }
+
+    @Override
+    public String name() {
+        return routes.size() == 1 ? routes.get(0).name() : "router";
+    }
+
+    @Override
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public long hedgedCount() {
+        return hedged.get();
+    }
+
+    public long failoverCount() {
+        return failovers.get();
+    }
+
+    /**
+     * Healthy backends in policy order, then the ones cooling down, as a last resort.
+     */
+    List<Route> ordered() {
+        Comparator<Route> byLatency = Comparator.comparing(Route::averageLatency);
+        Comparator<Route> order = policy == Policy.COST
+                ? Comparator.comparingDouble(Route::costPerThousandTokens).thenComparing(byLatency)
+                : byLatency.thenComparingDouble(Route::costPerThousandTokens);
+        List<Route> ordered = new ArrayList<>(routes);
+        ordered.sort(Comparator.comparing((Route route) -> !route.isHealthy()).thenComparing(order));
+        return ordered;
+    }
+
+    @Override
+    public String getResponse(String prompt) throws IOException {
+        return Futures.await(getResponseAsync(prompt));
+    }
+
+    @Override
+    public CompletableFuture<String> getResponseAsync(String prompt) {
+        List<Route> order = ordered();
+        if (order.size() == 1) {
+            return call(order.get(0), prompt);
+        }
+
+        Attempt attempt = new Attempt(prompt, order);
+        attempt.launchNext(null);
+        if (!hedgeDelay.isZero()) {
+            CompletableFuture.delayedExecutor(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS).execute(() -> {
+                if (!attempt.result.isDone() && attempt.launchNext(hedged)) {
+                    logger.debug("No answer after {} ms, hedging to a second backend", hedgeDelay.toMillis());
+                }
+            });
+        }
+        return attempt.result;
+    }
+
+    private CompletableFuture<String> call(Route route, String prompt) {
+        long start = System.nanoTime();
+        CompletableFuture<String> call;
+        try {
+            call = route.client.getResponseAsync(prompt);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        // Hand back the backend's own future, so that cancelling it abandons the call.
+        CompletableFuture<String> backendCall = call;
+        backendCall.whenComplete((response, error) -> {
+            if (error == null) {
+                route.recordSuccess(System.nanoTime() - start);
+            } else if (!backendCall.isCancelled()) {
+                route.recordFailure(failureCooldown);
+            }
+        });
+        return backendCall;
+    }
+
+    /**
+     * One routed call: launches backends in order, on failure or when hedging, until one answers.
+     */
+    private final class Attempt {
+
+        final String prompt;
+        final List<Route> order;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        final List<CompletableFuture<String>> calls = new ArrayList<>();
+        final AtomicInteger next = new AtomicInteger();
+        int running;
+        Throwable lastError;
+
+        Attempt(String prompt, List<Route> order) {
+            this.prompt = prompt;
+            this.order = order;
+            result.whenComplete((response, error) -> cancelAll());
+        }
+
+        /**
+         * Starts the next backend in line, if any is left. {@code counter}, when given, is bumped
+         * before the call goes out, so it is already counted by the time the call can answer.
+         */
+        boolean launchNext(AtomicLong counter) {
+            int index = next.getAndIncrement();
+            if (index >= order.size()) {
+                return false;
+            }
+            if (counter != null) {
+                counter.incrementAndGet();
+            }
+            Route route = order.get(index);
+            CompletableFuture<String> call = call(route, prompt);
+            synchronized (this) {
+                running++;
+                calls.add(call);
+            }
+            call.whenComplete((response, error) -> {
+                if (error == null) {
+                    result.complete(response);
+                    return;
+                }
+                boolean exhausted;
+                synchronized (this) {
+                    running--;
+                    lastError = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                }
+                if (result.isDone()) {
+                    return;
+                }
+                if (launchNext(failovers)) {
+                    logger.warn("Backend '{}' failed ({}), failed over", route.name(), error.getMessage());
+                    return;
+                }
+                synchronized (this) {
+                    exhausted = running == 0;
+                }
+                if (exhausted) {
+                    result.completeExceptionally(lastError);
+                }
+            });
+            if (result.isDone()) {
+                call.cancel(true);
+            }
+            return true;
+        }
+
+        private void cancelAll() {
+            List<CompletableFuture<String>> outstanding;
+            synchronized (this) {
+                outstanding = List.copyOf(calls);
+            }
+            outstanding.forEach(call -> call.cancel(true));
+        }
+    }
+
+    @Override
+    public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+        List<Route> order = ordered();
+        IOException lastError = null;
+        for (int i = 0; i < order.size(); i++) {
+            Route route = order.get(i);
+            AtomicBoolean started = new AtomicBoolean();
+            long start = System.nanoTime();
+            try {
+                String response = route.client.streamResponse(prompt, token -> {
+                    started.set(true);
+                    onToken.accept(token);
+                });
+                route.recordSuccess(System.nanoTime() - start);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                route.recordFailure(failureCooldown);
+                if (started.get()) {
+                    throw e;
+                }
+                lastError = e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+                if (i + 1 < order.size()) {
+                    failovers.incrementAndGet();
+                    logger.warn("Backend '{}' failed before streaming ({}), failing over", route.name(), e.getMessage());
+                }
+            }
+        }
+        throw lastError;
+    }
+}
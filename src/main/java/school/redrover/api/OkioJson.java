@@ -0,0 +1,165 @@
+package school.redrover.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gson's streaming reader and writer directly over Okio sources and sinks, without the 8 KiB
+ * buffers {@code InputStreamReader}/{@code OutputStreamWriter} allocate per stream.
+ */
+final class OkioJson {
+
+    private OkioJson() {
+    }
+
+    static JsonReader reader(BufferedSource source) {
+        return new JsonReader(new Utf8SourceReader(source));
+    }
+
+    static JsonWriter writer(BufferedSink sink) {
+        return new JsonWriter(new Utf8SinkWriter(sink));
+    }
+
+    /**
+     * Decodes through a 1 KiB byte window: {@code InputStreamReader} would allocate an 8 KiB one
+     * per response, and decoding a code point at a time is several times slower.
+     */
+    private static final class Utf8SourceReader extends Reader {
+
+        private final BufferedSource source;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(1024).flip();
+        private CharBuffer surrogatePair;
+        private boolean endOfInput;
+        private boolean flushed;
+
+        Utf8SourceReader(BufferedSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (surrogatePair != null && surrogatePair.hasRemaining()) {
+                buffer[offset] = surrogatePair.get();
+                return 1;
+            }
+            CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+            while (true) {
+                CoderResult result = decoder.decode(bytes, out, endOfInput);
+                if (result.isOverflow()) {
+                    if (out.position() == offset) {
+                        // A single free slot and a supplementary character next: hand it over in halves.
+                        return readSurrogatePair(buffer, offset);
+                    }
+                    break;
+                }
+                if (endOfInput) {
+                    if (!flushed) {
+                        decoder.flush(out);
+                        flushed = true;
+                    }
+                    break;
+                }
+                if (out.position() > offset) {
+                    break;
+                }
+                bytes.compact();
+                int read = source.read(bytes);
+                bytes.flip();
+                endOfInput = read < 0;
+            }
+            int count = out.position() - offset;
+            return count == 0 && endOfInput ? -1 : count;
+        }
+
+        private int readSurrogatePair(char[] buffer, int offset) {
+            if (surrogatePair == null) {
+                surrogatePair = CharBuffer.allocate(2);
+            }
+            surrogatePair.clear();
+            decoder.decode(bytes, surrogatePair, endOfInput);
+            surrogatePair.flip();
+            buffer[offset] = surrogatePair.get();
+            return 1;
+        }
+
+        @Override
+        public void close() {
+            // The response body owns the source.
+        }
+    }
+
+    private static final class Utf8SinkWriter extends Writer {
+
+        private final BufferedSink sink;
+        private int pendingHighSurrogate = -1;
+
+        Utf8SinkWriter(BufferedSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            char ch = (char) c;
+            if (Character.isHighSurrogate(ch)) {
+                pendingHighSurrogate = ch;
+                return;
+            }
+            if (pendingHighSurrogate >= 0) {
+                int high = pendingHighSurrogate;
+                pendingHighSurrogate = -1;
+                if (Character.isLowSurrogate(ch)) {
+                    sink.writeUtf8CodePoint(Character.toCodePoint((char) high, ch));
+                    return;
+                }
+                sink.writeUtf8CodePoint('?');
+            }
+            sink.writeUtf8CodePoint(ch);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            if (pendingHighSurrogate >= 0 || (length > 0 && Character.isHighSurrogate(text.charAt(offset + length - 1)))) {
+                for (int i = offset; i < offset + length; i++) {
+                    write(text.charAt(i));
+                }
+                return;
+            }
+            sink.writeUtf8(text, offset, offset + length);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(buffer[i]);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sink.flush();
+        }
+
+        @Override
+        public void close() {
+            // The caller owns the sink.
+        }
+    }
+}
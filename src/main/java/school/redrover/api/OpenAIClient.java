@@ -1,18 +1,36 @@
 package school.redrover.api;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import okhttp3.*;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.concurrent.TimeUnit;
+
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class OpenAIClient {
+/**
+ * Client for OpenAI's {@code /v1/completions} and {@code /v1/chat/completions} endpoints, and for
+ * local servers that speak the same protocol. The schema follows the configured URL.
+ */
+public class OpenAIClient implements LlmClient {
 
     private static final Logger logger = LoggerFactory.getLogger(OpenAIClient.class);
 
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final String name;
     private final String apiUrl;
+    private final boolean chat;
     private final String apiKey;
     private final String model;
     private final int maxTokens;
@@ -20,58 +38,372 @@ public class OpenAIClient {
 
     private final OkHttpClient client;
 
-    public OpenAIClient(String apiUrl, String apiKey, String model, int maxTokens, double temperature) {
-        this.apiUrl = apiUrl;
-        this.apiKey = apiKey;
-        this.model = model;
-        this.maxTokens = maxTokens;
-        this.temperature = temperature;
+    // Request bodies only differ in the prompt, so everything around it is serialized once.
+    private final ByteString bodyPrefix;
+    private final ByteString bodySuffix;
+    private final ByteString streamBodySuffix;
+    private final ByteString batchBodyPrefix;
+
+    public OpenAIClient(OpenAIConfig config, OkHttpClient client) {
+        this("openai", config, client, true);
+    }
+
+    /**
+     * @param requireApiKey false for local OpenAI-compatible servers, which are called without an
+     *                      Authorization header when no key is configured
+     */
+    public OpenAIClient(String name, OpenAIConfig config, OkHttpClient client, boolean requireApiKey) {
+        this.name = name;
+        this.apiUrl = config.apiUrl();
+        this.chat = apiUrl.endsWith("/chat/completions");
+        this.apiKey = config.apiKey();
+        this.model = config.model();
+        this.maxTokens = config.maxTokens();
+        this.temperature = config.temperature();
 
-        if (apiKey == null || apiKey.isEmpty()) {
+        if (requireApiKey && (apiKey == null || apiKey.isEmpty())) {
             throw new IllegalStateException("API key must be provided.");
         }
 
-        this.client = new OkHttpClient.Builder()
-                .readTimeout(30, TimeUnit.SECONDS)
-                .build();
-        logger.info("OpenAIClient initialized with model={} maxTokens={} temperature={}", model, maxTokens, temperature);
+        this.client = client;
+        String header = requestHeader(model, maxTokens, temperature);
+        String promptClose = chat ? "}]" : "";
+        this.bodyPrefix = ByteString.encodeUtf8(header
+                + (chat ? ",\"messages\":[{\"role\":\"user\",\"content\":" : ",\"prompt\":"));
+        this.bodySuffix = ByteString.encodeUtf8(promptClose + "}");
+        this.streamBodySuffix = ByteString.encodeUtf8(promptClose + ",\"stream\":true}");
+        this.batchBodyPrefix = ByteString.encodeUtf8(header + ",\"prompt\":[");
+        logger.info("OpenAIClient '{}' initialized with url={} model={} maxTokens={} temperature={}",
+                name, apiUrl, model, maxTokens, temperature);
     }
 
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    @Override
     public String getResponse(String prompt) throws IOException {
-        String requestBody = buildRequestBody(prompt);
-        Request request = new Request.Builder()
+        logger.debug("Sending prompt to OpenAI: {}", prompt);
+
+        try (Response response = client.newCall(buildRequest(prompt)).execute()) {
+            return parseResponse(response);
+        }
+    }
+
+    /**
+     * Sends the request on OkHttp's dispatcher instead of the calling thread. The returned future
+     * completes on a dispatcher thread; cancelling it cancels the HTTP call.
+     */
+    @Override
+    public CompletableFuture<String> getResponseAsync(String prompt) {
+        logger.debug("Sending prompt to OpenAI asynchronously: {}", prompt);
+
+        Call call = client.newCall(buildRequest(prompt));
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(parseResponse(response));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends all prompts in one completions request (the {@code prompt} array form) and maps each
+     * choice back to its prompt by {@code index}. The chat endpoint takes one conversation per
+     * request, so there the prompts are sent separately.
+     */
+    @Override
+    public CompletableFuture<List<String>> getResponsesAsync(List<String> prompts) {
+        if (chat || prompts.size() == 1) {
+            return LlmClient.super.getResponsesAsync(prompts);
+        }
+        logger.debug("Sending {} prompts to OpenAI in one request", prompts.size());
+
+        Buffer body = new Buffer().write(batchBodyPrefix);
+        for (int i = 0; i < prompts.size(); i++) {
+            if (i > 0) {
+                body.writeByte(',');
+            }
+            writeString(body, prompts.get(i));
+        }
+        body.writeUtf8("]}");
+        Call call = client.newCall(requestBuilder(RequestBody.create(body.readByteString(), JSON)).build());
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    checkSuccessful(response);
+                    future.complete(parseCompletions(OkioJson.reader(response.body().source()), prompts.size()));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Completion text per prompt index; {@code null} where the response has no choice for it.
+     */
+    static List<String> parseCompletions(JsonReader json, int count) throws IOException {
+        String[] completions = new String[count];
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("choices")) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            while (json.hasNext()) {
+                int index = -1;
+                String text = null;
+                json.beginObject();
+                while (json.hasNext()) {
+                    switch (json.nextName()) {
+                        case "index" -> index = json.nextInt();
+                        case "text" -> text = nextText(json);
+                        default -> json.skipValue();
+                    }
+                }
+                json.endObject();
+                if (index >= 0 && index < count && text != null) {
+                    completions[index] = text.trim();
+                }
+            }
+            json.endArray();
+        }
+        return Arrays.asList(completions);
+    }
+
+    private Request buildRequest(String prompt) {
+        return requestBuilder(buildRequestBody(prompt, false)).build();
+    }
+
+    private Request.Builder requestBuilder(RequestBody body) {
+        Request.Builder builder = new Request.Builder()
                 .url(apiUrl)
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .build();
+                .post(body)
+                .addHeader("Content-Type", "application/json");
+        if (apiKey != null && !apiKey.isEmpty()) {
+            builder.addHeader("Authorization", "Bearer " + apiKey);
+        }
+        return builder;
+    }
 
-        logger.debug("Sending prompt to OpenAI: {}", prompt);
+    private String parseResponse(Response response) throws IOException {
+        checkSuccessful(response);
+        String result = parseCompletion(OkioJson.reader(response.body().source()));
+        logger.debug("OpenAI Response: {}", result);
+        return result;
+    }
 
-        try (Response response = client.newCall(request).execute()) {
+    private static void checkSuccessful(Response response) throws IOException {
+        if (!response.isSuccessful()) {
             String responseBody = response.body().string();
-            if (!response.isSuccessful()) {
-                logger.error("OpenAI API Error. HTTP {} - Body: {}", response.code(), responseBody);
-                throw new IOException("OpenAI API Error: " + responseBody);
+            logger.error("OpenAI API Error. HTTP {} - Body: {}", response.code(), responseBody);
+            throw new IOException("OpenAI API Error: " + responseBody);
+        }
+    }
+
+    static String parseCompletion(String responseBody) throws IOException {
+        return parseCompletion(new JsonReader(new StringReader(responseBody)));
+    }
+
+    /**
+     * Text of the first choice: {@code text} for completions, {@code message.content} for chat.
+     * Reads the response as it streams in, skipping everything else without materializing it.
+     */
+    static String parseCompletion(JsonReader json) throws IOException {
+        String text = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("choices")) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            if (json.hasNext()) {
+                text = readChoice(json, "message", "content");
             }
+            while (json.hasNext()) {
+                json.skipValue();
+            }
+            json.endArray();
+        }
+        json.endObject();
+        if (text == null) {
+            throw new IOException("OpenAI response has no completion");
+        }
+        return text.trim();
+    }
+
+    /**
+     * {@code text} of a completion choice, or {@code content} of its nested {@code messageField}
+     * object ({@code message} for chat responses, {@code delta} for chat stream chunks).
+     */
+    private static String readChoice(JsonReader json, String messageField, String contentField) throws IOException {
+        String text = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (name.equals("text")) {
+                text = nextText(json);
+            } else if (name.equals(messageField) && json.peek() == JsonToken.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals(contentField)) {
+                        text = nextText(json);
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return text;
+    }
+
+    private static String nextText(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    /**
+     * Requests a streamed completion and hands each text delta to {@code onToken} as soon as its
+     * server-sent event arrives. Returns the full completion once the stream ends.
+     */
+    @Override
+    public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+        Request request = requestBuilder(buildRequestBody(prompt, true))
+                .addHeader("Accept", "text/event-stream")
+                .build();
+
+        logger.debug("Streaming prompt to OpenAI: {}", prompt);
+
+        try (Response response = client.newCall(request).execute()) {
+            checkSuccessful(response);
 
-            JsonObject jsonObject = JsonParser.parseString(responseBody).getAsJsonObject();
-            String result = jsonObject.getAsJsonArray("choices")
-                    .get(0).getAsJsonObject()
-                    .get("text").getAsString().trim();
+            StringBuilder completion = new StringBuilder();
+            BufferedSource source = response.body().source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                String token = parseStreamChunk(data);
+                if (!token.isEmpty()) {
+                    completion.append(token);
+                    onToken.accept(token);
+                }
+            }
 
-            logger.debug("OpenAI Response: {}", result);
+            String result = completion.toString().trim();
+            logger.debug("OpenAI streamed response: {}", result);
             return result;
         }
     }
 
-    private String buildRequestBody(String prompt) {
-        JsonObject json = new JsonObject();
-        json.addProperty("model", model);
-        json.addProperty("prompt", prompt);
-        json.addProperty("max_tokens", maxTokens);
-        json.addProperty("temperature", temperature);
-        return json.toString();
+    private static String parseStreamChunk(String data) throws IOException {
+        String text = null;
+        JsonReader json = new JsonReader(new StringReader(data));
+        json.beginObject();
+        while (json.hasNext()) {
+            if (!json.nextName().equals("choices") || json.peek() != JsonToken.BEGIN_ARRAY) {
+                json.skipValue();
+                continue;
+            }
+            json.beginArray();
+            if (json.hasNext()) {
+                text = readChoice(json, "delta", "content");
+            }
+            while (json.hasNext()) {
+                json.skipValue();
+            }
+            json.endArray();
+        }
+        return text == null ? "" : text;
+    }
+
+    /**
+     * The precomputed prefix and suffix around the JSON-escaped prompt. The body is assembled in
+     * an Okio buffer, whose segments go back to Okio's pool once the bytes are read out.
+     */
+    RequestBody buildRequestBody(String prompt, boolean stream) {
+        Buffer body = new Buffer().write(bodyPrefix);
+        writeString(body, prompt);
+        body.write(stream ? streamBodySuffix : bodySuffix);
+        return RequestBody.create(body.readByteString(), JSON);
+    }
+
+    private static void writeString(BufferedSink sink, String value) {
+        try {
+            JsonWriter json = OkioJson.writer(sink);
+            json.value(value);
+            json.flush();
+        } catch (IOException e) {
+            // Writing to an in-memory buffer does not fail.
+            throw new IllegalStateException(e);
+        }
     }
-}
 
+    /**
+     * {@code {"model":...,"max_tokens":...,"temperature":...} without the closing brace.
+     */
+    private static String requestHeader(String model, int maxTokens, double temperature) {
+        Buffer header = new Buffer();
+        JsonWriter json = OkioJson.writer(header);
+        try {
+            json.beginObject();
+            json.name("model").value(model);
+            json.name("max_tokens").value(maxTokens);
+            json.name("temperature").value(temperature);
+            json.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return header.readUtf8();
+    }
+}
@@ -0,0 +1,77 @@
+package school.redrover.api;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.function.Function;
+
+/**
+ * Upstream and HTTP client settings, read from the {@code openai.*} keys of application.properties
+ * (or local.properties) so the CLI and the web app are tuned from one place.
+ */
+public record OpenAIConfig(
+        String apiUrl,
+        String apiKey,
+        String model,
+        int maxTokens,
+        double temperature,
+        Duration connectTimeout,
+        Duration readTimeout,
+        Duration writeTimeout,
+        Duration callTimeout,
+        int maxIdleConnections,
+        Duration keepAlive,
+        int maxRequests,
+        int maxRequestsPerHost,
+        boolean http2,
+        int retryMaxAttempts,
+        Duration retryInitialBackoff,
+        Duration retryMaxBackoff,
+        int circuitFailureThreshold,
+        Duration circuitOpenDuration
+) {
+
+    public static OpenAIConfig from(Function<String, String> lookup) {
+        PropertyReader props = new PropertyReader(lookup);
+        return new OpenAIConfig(
+                props.string("openai.api-url", "https://api.openai.com/v1/completions"),
+                props.string("openai.api-key", ""),
+                props.string("openai.model", "text-davinci-003"),
+                props.integer("openai.max-tokens", 100),
+                Double.parseDouble(props.string("openai.temperature", "0.7")),
+                props.millis("openai.http.connect-timeout-ms", 5_000),
+                props.millis("openai.http.read-timeout-ms", 30_000),
+                props.millis("openai.http.write-timeout-ms", 10_000),
+                props.millis("openai.http.call-timeout-ms", 60_000),
+                props.integer("openai.http.max-idle-connections", 16),
+                props.millis("openai.http.keep-alive-ms", 300_000),
+                props.integer("openai.http.max-requests", 128),
+                props.integer("openai.http.max-requests-per-host", 64),
+                Boolean.parseBoolean(props.string("openai.http.http2", "true")),
+                props.integer("openai.retry.max-attempts", 3),
+                props.millis("openai.retry.initial-backoff-ms", 500),
+                props.millis("openai.retry.max-backoff-ms", 10_000),
+                props.integer("openai.circuit-breaker.failure-threshold", 5),
+                props.millis("openai.circuit-breaker.open-duration-ms", 30_000)
+        );
+    }
+
+    public static OpenAIConfig from(Properties properties) {
+        return from(properties::getProperty);
+    }
+
+    private record PropertyReader(Function<String, String> lookup) {
+
+        String string(String key, String defaultValue) {
+            String value = lookup.apply(key);
+            return value == null || value.isBlank() ? defaultValue : value.trim();
+        }
+
+        int integer(String key, int defaultValue) {
+            return Integer.parseInt(string(key, Integer.toString(defaultValue)));
+        }
+
+        Duration millis(String key, long defaultValue) {
+            return Duration.ofMillis(Long.parseLong(string(key, Long.toString(defaultValue))));
+        }
+    }
+}
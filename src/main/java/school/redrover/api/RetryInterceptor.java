@@ -0,0 +1,124 @@
+package school.redrover.api;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries 429 and 5xx responses and connection failures with full-jitter exponential backoff.
+ * A {@code Retry-After} header overrides the computed delay; if the server asks for longer than
+ * the maximum backoff the response is returned to the caller instead.
+ */
+public class RetryInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryInterceptor.class);
+
+    private static final long CANCEL_CHECK_MILLIS = 50L;
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public RetryInterceptor(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException e) {
+                // Connect and read timeouts (SocketTimeoutException) are retried like other
+                // connection failures; a cancelled call or an interrupted thread is not.
+                if (attempt >= maxAttempts || chain.call().isCanceled() || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                Duration delay = jitteredBackoff(attempt);
+                logger.warn("Upstream call failed ({}), retrying in {} ms (attempt {}/{})",
+                        e.getMessage(), delay.toMillis(), attempt, maxAttempts);
+                backOff(chain.call(), delay);
+                continue;
+            }
+
+            if (!isRetryable(response.code()) || attempt >= maxAttempts) {
+                return response;
+            }
+
+            Duration retryAfter = parseRetryAfter(response.header("Retry-After"));
+            Duration delay = retryAfter != null ? retryAfter : jitteredBackoff(attempt);
+            if (delay.compareTo(maxBackoff) > 0) {
+                logger.warn("Upstream asked to retry after {} ms, longer than max backoff; giving up", delay.toMillis());
+                return response;
+            }
+
+            logger.warn("Upstream returned HTTP {}, retrying in {} ms (attempt {}/{})",
+                    response.code(), delay.toMillis(), attempt, maxAttempts);
+            response.close();
+            backOff(chain.call(), delay);
+        }
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private Duration jitteredBackoff(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    static Duration parseRetryAfter(String header) {
+        if (header == null || header.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0L, Long.parseLong(header.trim())));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Waits out the delay, checking for cancellation every {@value #CANCEL_CHECK_MILLIS} ms. Async
+     * calls back off on an OkHttp dispatcher thread, so a cancelled one (the losing side of a
+     * hedge, or a caller that gave up) must release it at once rather than sleep out the delay.
+     */
+    private static void backOff(Call call, Duration delay) throws IOException {
+        long deadline = System.nanoTime() + delay.toNanos();
+        try {
+            for (long left = delay.toNanos(); left > 0; left = deadline - System.nanoTime()) {
+                if (call.isCanceled()) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(left, TimeUnit.MILLISECONDS.toNanos(CANCEL_CHECK_MILLIS)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off before retry");
+        }
+        if (call.isCanceled()) {
+            throw new IOException("Canceled");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package school.redrover.api;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-process backend that answers every prompt with one of a fixed set of lines, chosen by the
+ * prompt's hash, after an optional simulated latency. Same prompt, same answer: useful for tests,
+ * load tests and running without an API key.
+ */
+public class StubLlmClient implements LlmClient {
+
+    private static final List<String> ANSWERS = List.of(
+            "The ice is cracking, gentlemen of the jury! The ice is cracking!",
+            "I know four hundred relatively honest ways to take money.",
+            "The rescue of the drowning is the business of the drowning themselves.",
+            "Maybe I should also give you the key to the apartment where the money lies?",
+            "Don't make my brains boil over. Let's talk business.",
+            "Ostap was carried away. The meeting continues!",
+            "Every Soviet citizen should respect the Criminal Code, and so do I.",
+            "The car is not a luxury, but a means of transportation."
+    );
+
+    private final String name;
+    private final int maxTokens;
+    private final Duration latency;
+
+    public StubLlmClient(String name, int maxTokens, Duration latency) {
+        this.name = name;
+        this.maxTokens = maxTokens;
+        this.latency = latency;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    @Override
+    public String getResponse(String prompt) throws IOException {
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while answering", e);
+        }
+        return answer(prompt);
+    }
+
+    @Override
+    public CompletableFuture<String> getResponseAsync(String prompt) {
+        return CompletableFuture.supplyAsync(() -> answer(prompt),
+                CompletableFuture.delayedExecutor(latency.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Emits the answer word by word, spreading the latency across the words.
+     */
+    @Override
+    public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+        String answer = answer(prompt);
+        String[] words = answer.split("(?<= )");
+        long pauseNanos = latency.toNanos() / words.length;
+        for (String word : words) {
+            try {
+                Thread.sleep(Duration.ofNanos(pauseNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while streaming", e);
+            }
+            onToken.accept(word);
+        }
+        return answer;
+    }
+
+    static String answer(String prompt) {
+        return ANSWERS.get(Math.floorMod(prompt.strip().hashCode(), ANSWERS.size()));
+    }
+}
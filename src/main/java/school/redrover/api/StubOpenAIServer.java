@@ -0,0 +1,86 @@
+package school.redrover.api;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal stand-in for the completions endpoint so request paths can be measured without the
+ * network or an API key. Each answer is held back for a delay drawn from the latency distribution.
+ */
+public class StubOpenAIServer implements AutoCloseable {
+
+    public static final String COMPLETION = "{\"id\":\"cmpl-bench\",\"object\":\"text_completion\",\"model\":\"text-davinci-003\","
+            + "\"choices\":[{\"text\":\"\\n\\nIce will be broken, gentlemen of the jury! Four hundred relatively honest ways"
+            + " to take money, and every one of them starts with a plan.\",\"index\":0,\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+            + "\"usage\":{\"prompt_tokens\":9,\"completion_tokens\":28,\"total_tokens\":37}}";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    public StubOpenAIServer() throws IOException {
+        this(LatencyDistribution.NONE);
+    }
+
+    public StubOpenAIServer(LatencyDistribution latency) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Delayed answers park a thread each, so give every exchange its own virtual thread.
+        executor = latency == LatencyDistribution.NONE
+                ? Executors.newFixedThreadPool(8)
+                : Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        byte[] body = COMPLETION.getBytes(StandardCharsets.UTF_8);
+        server.createContext("/v1/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            requests.incrementAndGet();
+            Duration delay = latency.sample();
+            if (!delay.isZero()) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/completions";
+    }
+
+    /**
+     * Completion requests received so far.
+     */
+    public long requestCount() {
+        return requests.get();
+    }
+
+    public OpenAIConfig config() {
+        Properties properties = new Properties();
+        properties.setProperty("openai.api-url", url());
+        properties.setProperty("openai.api-key", "bench-key");
+        properties.setProperty("openai.http.http2", "false");
+        return OpenAIConfig.from(properties);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
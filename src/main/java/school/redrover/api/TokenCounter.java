@@ -0,0 +1,47 @@
+package school.redrover.api;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Offline approximation of the model tokenizer. Text is pre-split the way GPT byte-pair encoders
+ * split it (contractions, words with their leading space, digit runs, punctuation runs,
+ * whitespace) and each piece is charged by length: short words are one token, longer ones roughly
+ * one per four characters, digits one per three. Within a few percent of the real count for
+ * English prose, which is enough for budgeting.
+ */
+public final class TokenCounter {
+
+    private static final Pattern PIECES = Pattern.compile(
+            "'(?:s|t|re|ve|m|ll|d)| ?\\p{L}+| ?\\p{N}+| ?[^\\s\\p{L}\\p{N}]+|\\s+");
+
+    private TokenCounter() {
+    }
+
+    public static int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        Matcher matcher = PIECES.matcher(text);
+        while (matcher.find()) {
+            tokens += piece(text, matcher.start(), matcher.end());
+        }
+        return tokens;
+    }
+
+    private static int piece(String text, int start, int end) {
+        char first = text.charAt(start) == ' ' && end - start > 1 ? text.charAt(start + 1) : text.charAt(start);
+        int length = end - start;
+        if (Character.isLetter(first)) {
+            return length <= 7 ? 1 : (length + 3) / 4;
+        }
+        if (Character.isDigit(first)) {
+            return (length + 2) / 3;
+        }
+        if (Character.isWhitespace(first)) {
+            return 1;
+        }
+        return (length + 1) / 2;
+    }
+}
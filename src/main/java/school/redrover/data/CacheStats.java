@@ -0,0 +1,9 @@
+package school.redrover.data;
+
+public record CacheStats(long hits, long misses, long similarHits, long evictions, int entries, long bytes) {
+
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) (hits + similarHits) / lookups;
+    }
+}
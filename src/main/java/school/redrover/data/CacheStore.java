@@ -0,0 +1,40 @@
+package school.redrover.data;
+
+import java.util.function.Consumer;
+
+/**
+ * Where {@link ResponseCache} persists responses and reads back prompts that are not on-heap.
+ * Implementations are thread-safe; {@link #append} may return before the record is durable.
+ */
+public interface CacheStore extends AutoCloseable {
+
+    /**
+     * Up to {@code limit} newest responses for exactly this prompt, oldest first, or {@code null}
+     * if the store has none.
+     */
+    StoredResponses load(String prompt, int limit);
+
+    void append(ConversationRecord record);
+
+    /**
+     * Visits every stored prompt once; used to rebuild derived indexes.
+     */
+    void forEachPrompt(Consumer<String> action);
+
+    /**
+     * Records accepted but not yet written through.
+     */
+    default int pendingWrites() {
+        return 0;
+    }
+
+    default LogWriterStats getWriterStats() {
+        return LogWriterStats.EMPTY;
+    }
+
+    /**
+     * Flushes pending writes and releases the store.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,8 @@
+package school.redrover.data;
+
+/**
+ * The newest cached response for a prompt, when it was saved, and until when it counts as fresh
+ * ({@code Long.MAX_VALUE} when the cache never marks it stale).
+ */
+public record CachedAnswer(String prompt, String response, long updatedAt, long freshUntil) {
+}
@@ -0,0 +1,264 @@
+package school.redrover.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Maps prompt hashes to line positions in the conversation log. Positions up to the last snapshot
+ * live in a memory-mapped file sorted by hash; lines appended since then are kept in a small
+ * on-heap tail until the next snapshot folds them in.
+ *
+ * <p>Snapshot layout: magic, version, covered log length, log fingerprint, entry count, then
+ * fixed-size entries of (prompt hash, line offset, line length) sorted by hash and offset. The
+ * fingerprint is a hash of the start of the log, so a snapshot of a rotated log is not trusted
+ * even once the new log has grown past the covered length.
+ */
+public class ConversationIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationIndex.class);
+
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int FINGERPRINT_BYTES = 4096;
+    private static final int ENTRY_BYTES = 8 + 8 + 4;
+
+    public record LogPosition(long offset, int length) {
+    }
+
+    private record Snapshot(ByteBuffer entries, int entryCount, long coveredLength, long fingerprint) {
+
+        static final Snapshot EMPTY = new Snapshot(ByteBuffer.allocate(0), 0, 0L, 0L);
+
+        long hashAt(int i) {
+            return entries.getLong(i * ENTRY_BYTES);
+        }
+
+        LogPosition positionAt(int i) {
+            int base = i * ENTRY_BYTES;
+            return new LogPosition(entries.getLong(base + 8), entries.getInt(base + 16));
+        }
+    }
+
+    private final Path indexFile;
+    private final Path logFile;
+    private final Map<Long, List<LogPosition>> tail = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
+    private int tailSize;
+
+    private ConversationIndex(Path indexFile, Path logFile, Snapshot snapshot) {
+        this.indexFile = indexFile;
+        this.logFile = logFile;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Opens the snapshot of {@code logFile}, or starts empty if it is missing, corrupt, describes
+     * more bytes than the log has, or was taken of a different log (it was rotated or truncated).
+     */
+    public static ConversationIndex open(Path indexFile, Path logFile) {
+        if (!Files.exists(indexFile)) {
+            return new ConversationIndex(indexFile, logFile, Snapshot.EMPTY);
+        }
+        try {
+            Snapshot snapshot = map(indexFile);
+            long logLength = Files.exists(logFile) ? Files.size(logFile) : 0L;
+            if (snapshot.coveredLength() > logLength) {
+                logger.warn("Index {} covers {} bytes but log has {}; rebuilding", indexFile, snapshot.coveredLength(), logLength);
+                return new ConversationIndex(indexFile, logFile, Snapshot.EMPTY);
+            }
+            if (snapshot.fingerprint() != fingerprint(logFile, snapshot.coveredLength())) {
+                logger.warn("Index {} was taken of a different log than {}; rebuilding", indexFile, logFile);
+                return new ConversationIndex(indexFile, logFile, Snapshot.EMPTY);
+            }
+            logger.info("Mapped conversation index {} with {} entries", indexFile, snapshot.entryCount());
+            return new ConversationIndex(indexFile, logFile, snapshot);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable conversation index {}: {}", indexFile, e.getMessage());
+            return new ConversationIndex(indexFile, logFile, Snapshot.EMPTY);
+        }
+    }
+
+    /**
+     * Hash of the log's first bytes, up to {@value #FINGERPRINT_BYTES} but never past
+     * {@code coveredLength}, which is the part a snapshot vouches for.
+     */
+    static long fingerprint(Path logFile, long coveredLength) throws IOException {
+        long hash = 0xcbf29ce484222325L;
+        int length = (int) Math.min(FINGERPRINT_BYTES, coveredLength);
+        if (length == 0) {
+            return hash;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            hash ^= buffer.get() & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static Snapshot map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("unrecognized header");
+            }
+            long coveredLength = buffer.getLong(8);
+            long fingerprint = buffer.getLong(16);
+            int entryCount = buffer.getInt(24);
+            if ((long) HEADER_BYTES + (long) entryCount * ENTRY_BYTES != buffer.capacity()) {
+                throw new IOException("truncated entries");
+            }
+            ByteBuffer entries = buffer.position(HEADER_BYTES).slice();
+            return new Snapshot(entries, entryCount, coveredLength, fingerprint);
+        }
+    }
+
+    /**
+     * Log offset up to which the snapshot is complete; replay starts here.
+     */
+    public long coveredLength() {
+        return snapshot.coveredLength();
+    }
+
+    public int tailSize() {
+        return tailSize;
+    }
+
+    /**
+     * Records a newly appended line. Only called from one thread at a time (startup replay, then
+     * the log writer).
+     */
+    public void add(long promptHash, LogPosition position) {
+        tail.computeIfAbsent(promptHash, k -> new CopyOnWriteArrayList<>()).add(position);
+        tailSize++;
+    }
+
+    /**
+     * All known line positions for the hash, oldest first. Callers must verify the prompt on the
+     * line since different prompts can share a hash.
+     */
+    public List<LogPosition> positions(long promptHash) {
+        Snapshot current = snapshot;
+        List<LogPosition> result = new ArrayList<>();
+
+        int i = firstIndexOf(current, promptHash);
+        for (; i >= 0 && i < current.entryCount() && current.hashAt(i) == promptHash; i++) {
+            result.add(current.positionAt(i));
+        }
+
+        List<LogPosition> recent = tail.get(promptHash);
+        if (recent != null) {
+            for (LogPosition position : recent) {
+                // Lines already folded into the snapshot may linger in the tail briefly during a swap.
+                if (position.offset() >= current.coveredLength()) {
+                    result.add(position);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int firstIndexOf(Snapshot snapshot, long promptHash) {
+        int low = 0;
+        int high = snapshot.entryCount() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long hash = snapshot.hashAt(mid);
+            if (hash < promptHash) {
+                low = mid + 1;
+            } else {
+                if (hash == promptHash) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Folds the tail into a new sorted snapshot covering the log up to {@code coveredLength},
+     * replaces the file atomically and remaps it. Must not run concurrently with {@link #add}.
+     */
+    public void writeSnapshot(long coveredLength) throws IOException {
+        Snapshot current = snapshot;
+        List<long[]> entries = new ArrayList<>(current.entryCount() + tailSize);
+        for (int i = 0; i < current.entryCount(); i++) {
+            LogPosition position = current.positionAt(i);
+            entries.add(new long[]{current.hashAt(i), position.offset(), position.length()});
+        }
+        for (Map.Entry<Long, List<LogPosition>> entry : tail.entrySet()) {
+            for (LogPosition position : entry.getValue()) {
+                if (position.offset() >= current.coveredLength() && position.offset() < coveredLength) {
+                    entries.add(new long[]{entry.getKey(), position.offset(), position.length()});
+                }
+            }
+        }
+        entries.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+        long fingerprint = fingerprint(logFile, coveredLength);
+
+        if (indexFile.getParent() != null) {
+            Files.createDirectories(indexFile.getParent());
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(coveredLength);
+            out.writeLong(fingerprint);
+            out.writeInt(entries.size());
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeInt((int) entry[2]);
+            }
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        snapshot = map(indexFile);
+        tail.values().forEach(positions -> positions.removeIf(p -> p.offset() < coveredLength));
+        tail.values().removeIf(List::isEmpty);
+        tailSize = tail.values().stream().mapToInt(List::size).sum();
+        logger.info("Wrote conversation index snapshot {} with {} entries covering {} bytes",
+                indexFile, entries.size(), coveredLength);
+    }
+
+    /**
+     * Stable 64-bit FNV-1a hash of the prompt, used as the on-disk key.
+     */
+    public static long hash(String prompt) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < prompt.length(); i++) {
+            hash ^= prompt.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
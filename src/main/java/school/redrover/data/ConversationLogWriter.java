@@ -0,0 +1,399 @@
+package school.redrover.data;
+
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single background appender for the conversation log. Callers only pay for a queue offer;
+ * the writer thread serializes whatever has queued up and group-commits it in one channel write.
+ * Each batch is written under an exclusive {@link FileLock}, and its offsets are taken from the file
+ * size under that lock, so processes sharing the log never interleave or miscount each other's lines.
+ */
+public class ConversationLogWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationLogWriter.class);
+
+    public enum FsyncPolicy {
+        NONE, INTERVAL, EVERY_BATCH
+    }
+
+    /**
+     * Notified on the writer thread after each batch reaches the file.
+     */
+    public interface Listener {
+        void appended(ConversationRecord record, long offset, int length);
+
+        default void batchWritten(long logLength) {
+        }
+
+        /**
+         * Another process (e.g. the CLI next to the server) appended the bytes from {@code from} to
+         * {@code to} since this writer's last batch. Called with the file locked, before the
+         * records of the batch that follows them.
+         */
+        default void appendedElsewhere(long from, long to) {
+        }
+    }
+
+    private static final ConversationRecord POISON = new ConversationRecord("", "", 0L);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+    // File locks are held per JVM, so writers on the same log in one process take turns here first.
+    private static final ConcurrentHashMap<Path, Object> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockingQueue<ConversationRecord> queue;
+    private final Duration flushInterval;
+    private final int maxBatchBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final Duration fsyncInterval;
+    private final Duration offerTimeout;
+    private final Thread writerThread;
+    private final Thread shutdownHook;
+    private final Listener listener;
+    private final Object processLock;
+    private static final byte[] SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    // Reused by the writer thread for every batch, so serializing allocates no line strings or byte arrays.
+    private final LineBuffer lines = new LineBuffer();
+    private final Writer lineWriter = new OutputStreamWriter(lines, StandardCharsets.UTF_8);
+
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong recordsDropped = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    private volatile boolean closed;
+    private long lastFsyncNanos = System.nanoTime();
+    private long position;
+
+    public ConversationLogWriter(Path file, int queueCapacity, Duration flushInterval, int maxBatchBytes,
+                                 FsyncPolicy fsyncPolicy, Duration fsyncInterval, Duration offerTimeout,
+                                 Listener listener) throws IOException {
+        this.file = file;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.flushInterval = flushInterval;
+        this.maxBatchBytes = maxBatchBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.offerTimeout = offerTimeout;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.processLock = PROCESS_LOCKS.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new Object());
+        this.position = channel.size();
+
+        this.writerThread = new Thread(this::runLoop, "conversation-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        this.shutdownHook = new Thread(this::close, "conversation-log-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        logger.info("ConversationLogWriter started for {} with queueCapacity={} flushInterval={} maxBatchBytes={} fsync={}",
+                file, queueCapacity, flushInterval, maxBatchBytes, fsyncPolicy);
+    }
+
+    public static ConversationLogWriter open(Path file, Listener listener) throws IOException {
+        return new ConversationLogWriter(
+                file,
+                Integer.getInteger("response.cache.writer.queue-capacity", 10_000),
+                Duration.ofMillis(Long.getLong("response.cache.writer.flush-interval-ms", 50L)),
+                Integer.getInteger("response.cache.writer.batch-bytes", 64 * 1024),
+                FsyncPolicy.valueOf(System.getProperty("response.cache.writer.fsync", "interval").toUpperCase(Locale.ROOT)),
+                Duration.ofMillis(Long.getLong("response.cache.writer.fsync-interval-ms", 1000L)),
+                Duration.ofMillis(Long.getLong("response.cache.writer.offer-timeout-ms", 100L)),
+                listener
+        );
+    }
+
+    /**
+     * Queues a record for the next batch. Blocks for up to the offer timeout when the queue is
+     * full, and returns {@code false} if the record had to be dropped.
+     */
+    public boolean append(ConversationRecord record) {
+        if (closed) {
+            recordsDropped.incrementAndGet();
+            logger.warn("Conversation log writer is closed, dropping record for prompt: {}", record.prompt());
+            return false;
+        }
+        try {
+            if (queue.offer(record, offerTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            logger.warn("Conversation log queue is full ({} pending), dropping record for prompt: {}",
+                    queue.size(), record.prompt());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while queueing record for prompt: {}", record.prompt());
+        }
+        recordsDropped.incrementAndGet();
+        return false;
+    }
+
+    public int pendingRecords() {
+        return queue.size();
+    }
+
+    public LogWriterStats getStats() {
+        return new LogWriterStats(batchesWritten.get(), recordsWritten.get(), recordsDropped.get(),
+                writeNanos.get(), queue.size());
+    }
+
+    private void runLoop() {
+        List<ConversationRecord> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                ConversationRecord first = queue.take();
+                if (first == POISON) {
+                    break;
+                }
+                batch.add(first);
+                running = fillBatch(batch);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                // Keep the thread alive: a dead writer would silently drop everything after this batch.
+                logger.error("Conversation log writer failed on a batch of {} record(s) for {}", batch.size(), file, e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        List<ConversationRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.remove(POISON);
+        try {
+            writeBatch(remaining);
+        } catch (RuntimeException e) {
+            logger.error("Conversation log writer failed on the final {} record(s) for {}", remaining.size(), file, e);
+        }
+    }
+
+    /**
+     * Lingers for up to one flush interval collecting more records, stopping early once the batch
+     * reaches the size threshold. Returns {@code false} if shutdown was requested meanwhile.
+     */
+    private boolean fillBatch(List<ConversationRecord> batch) throws InterruptedException {
+        long estimatedBytes = estimateBytes(batch.get(0));
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (estimatedBytes < maxBatchBytes) {
+            long remaining = deadline - System.nanoTime();
+            ConversationRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return true;
+            }
+            if (next == POISON) {
+                return false;
+            }
+            batch.add(next);
+            estimatedBytes += estimateBytes(next);
+        }
+        return true;
+    }
+
+    private void writeBatch(List<ConversationRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lines.reset();
+        int[] lengths = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            int lineStart = lines.size();
+            try {
+                writeJson(batch.get(i), lineWriter);
+                lineWriter.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lengths[i] = lines.size() - lineStart;
+            lines.writeBytes(SEPARATOR);
+        }
+
+        long start = System.nanoTime();
+        long batchStart;
+        try {
+            batchStart = appendLocked(lines.asByteBuffer());
+            writeNanos.addAndGet(System.nanoTime() - start);
+            batchesWritten.incrementAndGet();
+            recordsWritten.addAndGet(batch.size());
+            logger.debug("Appended {} conversation(s) to file: {}", batch.size(), file);
+        } catch (IOException e) {
+            logger.error("Failed to append {} conversation(s) to file: {}", batch.size(), e.getMessage());
+            recordsDropped.addAndGet(batch.size());
+            resyncPosition();
+            return;
+        }
+
+        position = batchStart;
+        for (int i = 0; i < batch.size(); i++) {
+            listener.appended(batch.get(i), position, lengths[i]);
+            position += lengths[i] + SEPARATOR.length;
+        }
+        listener.batchWritten(position);
+    }
+
+    /**
+     * Appends the buffer at the current end of the file with the file locked, and returns the
+     * offset it was written at.
+     */
+    private long appendLocked(ByteBuffer buffer) throws IOException {
+        synchronized (processLock) {
+            try (FileLock ignored = channel.lock()) {
+                long batchStart = channel.size();
+                catchUp(batchStart);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsyncPolicy == FsyncPolicy.EVERY_BATCH
+                        || (fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastFsyncNanos >= fsyncInterval.toNanos())) {
+                    channel.force(false);
+                    lastFsyncNanos = System.nanoTime();
+                }
+                return batchStart;
+            }
+        }
+    }
+
+    /**
+     * Accounts for whatever other writers appended since our last batch ended.
+     */
+    private void catchUp(long size) {
+        if (size > position) {
+            logger.debug("Conversation log {} grew by {} bytes from another writer", file, size - position);
+            listener.appendedElsewhere(position, size);
+        } else if (size < position) {
+            logger.warn("Conversation log {} shrank from {} to {} bytes; index entries past the end are stale",
+                    file, position, size);
+        }
+        position = size;
+    }
+
+    private void resyncPosition() {
+        try {
+            position = channel.size();
+        } catch (IOException e) {
+            logger.error("Failed to read size of conversation log {}: {}", file, e.getMessage());
+        }
+    }
+
+    static String toJsonLine(ConversationRecord record) {
+        StringWriter line = new StringWriter();
+        try {
+            writeJson(record, line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Streams one log line, without the separator. HTML-safe escaping keeps the bytes identical to
+     * the lines {@code Gson.toJson} used to write.
+     */
+    private static void writeJson(ConversationRecord record, Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setHtmlSafe(true);
+        json.beginObject();
+        json.name("prompt").value(record.prompt());
+        json.name("response").value(record.response());
+        json.name("timestamp").value(Instant.ofEpochMilli(record.timestamp()).toString());
+        json.endObject();
+        json.flush();
+    }
+
+    private static final class LineBuffer extends ByteArrayOutputStream {
+
+        LineBuffer() {
+            super(8 * 1024);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private static long estimateBytes(ConversationRecord record) {
+        return record.prompt().length() + record.response().length() + 64L;
+    }
+
+    /**
+     * Stops accepting records, drains everything already queued to disk and closes the file.
+     */
+    @Override
+    public void close() {
+        drainAndClose();
+    }
+
+    /**
+     * Like {@link #close()}, but reports whether the writer thread finished. When it did not, its
+     * listener may still be called, so callers must not touch state that listener updates.
+     */
+    public synchronized boolean drainAndClose() {
+        if (closed) {
+            return !writerThread.isAlive();
+        }
+        closed = true;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already running as part of JVM shutdown.
+        }
+        try {
+            // Bounded waits: if the writer thread died or is stuck, shutdown must not hang on it.
+            if (writerThread.isAlive()) {
+                if (!queue.offer(POISON, CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                    logger.warn("Conversation log writer for {} is not draining, closing with {} record(s) unwritten",
+                            file, queue.size());
+                }
+                writerThread.join(CLOSE_TIMEOUT.toMillis());
+            }
+            if (writerThread.isAlive()) {
+                logger.warn("Conversation log writer for {} did not finish within {}", file, CLOSE_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(false);
+            }
+            channel.close();
+            logger.info("ConversationLogWriter closed for {}", file);
+        } catch (IOException e) {
+            logger.error("Failed to close conversation log {}: {}", file, e.getMessage());
+        }
+        return !writerThread.isAlive();
+    }
+}
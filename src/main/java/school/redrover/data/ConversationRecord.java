@@ -0,0 +1,4 @@
+package school.redrover.data;
+
+public record ConversationRecord(String prompt, String response, long timestamp) {
+}
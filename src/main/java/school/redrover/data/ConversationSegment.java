@@ -0,0 +1,430 @@
+package school.redrover.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, compressed, columnar file of conversation records, written once when the log rolls.
+ * Prompts are dictionary-encoded and timestamps are stored as epoch-millis deltas, so neither
+ * field names nor repeated prompts are stored per record. Records are grouped into blocks that
+ * are deflated independently, so a lookup decompresses only the blocks it needs.
+ *
+ * <p>Layout:
+ * <ul>
+ *     <li>Deflated blocks of up to {@link #BLOCK_RECORDS} records. Each block holds four columns:
+ *     timestamp deltas, prompt ids, response lengths, then the response bytes.</li>
+ *     <li>The deflated prompt dictionary.</li>
+ *     <li>An uncompressed footer: the block directory, the dictionary location, and a
+ *     prompt-hash index sorted by hash that points into postings lists of record numbers.</li>
+ *     <li>A fixed trailer: footer offset, version, magic.</li>
+ * </ul>
+ * The footer is memory-mapped, so an open segment costs almost no heap.
+ */
+public final class ConversationSegment implements AutoCloseable {
+
+    static final int BLOCK_RECORDS = 256;
+
+    private static final int MAGIC = 0x42534547; // "BSEG"
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = 8 + 4 + 4;
+    private static final int BLOCK_ENTRY_BYTES = 8 + 4 + 4;
+    private static final int INDEX_ENTRY_BYTES = 8 + 4 + 4;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer footer;
+    private final int blockCount;
+    private final int recordCount;
+    private final int promptCount;
+    private final long dictionaryOffset;
+    private final int dictionaryLength;
+    private final int dictionaryRawLength;
+    private final int indexStart;
+    private final int postingsStart;
+
+    private ConversationSegment(Path file, FileChannel channel, MappedByteBuffer footer) {
+        this.file = file;
+        this.channel = channel;
+        this.footer = footer;
+        this.blockCount = footer.getInt(0);
+        int position = 4 + blockCount * BLOCK_ENTRY_BYTES;
+        this.dictionaryOffset = footer.getLong(position);
+        this.dictionaryLength = footer.getInt(position + 8);
+        this.dictionaryRawLength = footer.getInt(position + 12);
+        this.recordCount = footer.getInt(position + 16);
+        this.promptCount = footer.getInt(position + 20);
+        this.indexStart = position + 24;
+        this.postingsStart = indexStart + promptCount * INDEX_ENTRY_BYTES;
+    }
+
+    /**
+     * Writes {@code records}, oldest first, to {@code file} through a temporary file, so a crash
+     * never leaves a partial segment under the final name.
+     */
+    public static void write(Path file, List<ConversationRecord> records) throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] promptIds = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            promptIds[i] = dictionary.computeIfAbsent(records.get(i).prompt(), prompt -> dictionary.size());
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int blocks = (records.size() + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+            ByteBuffer directory = ByteBuffer.allocate(blocks * BLOCK_ENTRY_BYTES).order(ByteOrder.BIG_ENDIAN);
+            Deflater deflater = new Deflater();
+            try {
+                for (int block = 0; block < blocks; block++) {
+                    int from = block * BLOCK_RECORDS;
+                    int to = Math.min(records.size(), from + BLOCK_RECORDS);
+                    byte[] raw = encodeBlock(records, promptIds, from, to);
+                    byte[] compressed = deflate(deflater, raw);
+                    directory.putLong(out.position()).putInt(compressed.length).putInt(raw.length);
+                    writeFully(out, ByteBuffer.wrap(compressed));
+                }
+
+                ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+                writeVarint(dictionaryBytes, dictionary.size());
+                for (String prompt : dictionary.keySet()) {
+                    byte[] utf8 = prompt.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(dictionaryBytes, utf8.length);
+                    dictionaryBytes.write(utf8);
+                }
+                byte[] rawDictionary = dictionaryBytes.toByteArray();
+                byte[] compressedDictionary = deflate(deflater, rawDictionary);
+                long dictionaryOffset = out.position();
+                writeFully(out, ByteBuffer.wrap(compressedDictionary));
+
+                long footerOffset = out.position();
+                writeFully(out, encodeFooter(directory, blocks, dictionaryOffset, compressedDictionary.length,
+                        rawDictionary.length, dictionary, promptIds));
+                writeFully(out, ByteBuffer.allocate(TRAILER_BYTES).putLong(footerOffset).putInt(VERSION).putInt(MAGIC).flip());
+            } finally {
+                deflater.end();
+            }
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encodeBlock(List<ConversationRecord> records, int[] promptIds, int from, int to) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        writeVarint(block, to - from);
+        long previous = 0L;
+        for (int i = from; i < to; i++) {
+            long timestamp = records.get(i).timestamp();
+            writeVarint(block, zigzag(timestamp - previous));
+            previous = timestamp;
+        }
+        for (int i = from; i < to; i++) {
+            writeVarint(block, promptIds[i]);
+        }
+        byte[][] responses = new byte[to - from][];
+        for (int i = from; i < to; i++) {
+            responses[i - from] = records.get(i).response().getBytes(StandardCharsets.UTF_8);
+            writeVarint(block, responses[i - from].length);
+        }
+        for (byte[] response : responses) {
+            block.writeBytes(response);
+        }
+        return block.toByteArray();
+    }
+
+    private static ByteBuffer encodeFooter(ByteBuffer directory, int blocks, long dictionaryOffset,
+                                           int dictionaryLength, int dictionaryRawLength,
+                                           Map<String, Integer> dictionary, int[] promptIds) {
+        // Postings: record numbers grouped by prompt id, ascending within a prompt.
+        int[] counts = new int[dictionary.size()];
+        for (int id : promptIds) {
+            counts[id]++;
+        }
+        int[] starts = new int[dictionary.size()];
+        for (int id = 1; id < starts.length; id++) {
+            starts[id] = starts[id - 1] + counts[id - 1];
+        }
+        int[] postings = new int[promptIds.length];
+        int[] fill = starts.clone();
+        for (int record = 0; record < promptIds.length; record++) {
+            postings[fill[promptIds[record]]++] = record;
+        }
+
+        List<long[]> index = new ArrayList<>(dictionary.size());
+        dictionary.forEach((prompt, id) -> index.add(new long[]{ConversationIndex.hash(prompt), id}));
+        index.sort(Comparator.comparingLong(entry -> entry[0]));
+
+        ByteBuffer footer = ByteBuffer.allocate(4 + directory.capacity() + 24
+                + index.size() * INDEX_ENTRY_BYTES + postings.length * 4);
+        footer.putInt(blocks).put(directory.flip());
+        footer.putLong(dictionaryOffset).putInt(dictionaryLength).putInt(dictionaryRawLength)
+                .putInt(promptIds.length).putInt(dictionary.size());
+        for (long[] entry : index) {
+            int id = (int) entry[1];
+            footer.putLong(entry[0]).putInt(starts[id]).putInt(counts[id]);
+        }
+        for (int record : postings) {
+            footer.putInt(record);
+        }
+        return footer.flip();
+    }
+
+    public static ConversationSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            if (size < TRAILER_BYTES) {
+                throw new IOException("Not a conversation segment: " + file);
+            }
+            readFully(channel, trailer, size - TRAILER_BYTES);
+            long footerOffset = trailer.getLong(0);
+            if (trailer.getInt(12) != MAGIC || trailer.getInt(8) != VERSION || footerOffset < 0 || footerOffset > size) {
+                throw new IOException("Not a conversation segment: " + file);
+            }
+            MappedByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+                    size - TRAILER_BYTES - footerOffset);
+            return new ConversationSegment(file, channel, footer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int recordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Up to {@code limit} newest responses for the prompt, oldest first, or {@code null}.
+     * Prompts are matched by their 64-bit hash.
+     */
+    public StoredResponses find(String prompt, int limit) {
+        int entry = findIndexEntry(ConversationIndex.hash(prompt));
+        if (entry < 0) {
+            return null;
+        }
+        int base = indexStart + entry * INDEX_ENTRY_BYTES;
+        int start = footer.getInt(base + 8);
+        int count = footer.getInt(base + 12);
+
+        Deque<String> responses = new ArrayDeque<>();
+        long updatedAt = 0L;
+        Block block = null;
+        for (int i = count - 1; i >= 0 && responses.size() < limit; i--) {
+            int record = footer.getInt(postingsStart + (start + i) * 4);
+            int blockIndex = record / BLOCK_RECORDS;
+            if (block == null || block.index() != blockIndex) {
+                block = readBlock(blockIndex);
+            }
+            int row = record - blockIndex * BLOCK_RECORDS;
+            responses.addFirst(block.response(row));
+            updatedAt = Math.max(updatedAt, block.timestamps()[row]);
+        }
+        return new StoredResponses(List.copyOf(responses), updatedAt);
+    }
+
+    private int findIndexEntry(long hash) {
+        int low = 0;
+        int high = promptCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = footer.getLong(indexStart + mid * INDEX_ENTRY_BYTES);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Visits every record, oldest first.
+     */
+    public void forEach(Consumer<ConversationRecord> action) {
+        String[] prompts = readDictionary();
+        for (int b = 0; b < blockCount; b++) {
+            Block block = readBlock(b);
+            for (int row = 0; row < block.timestamps().length; row++) {
+                action.accept(new ConversationRecord(prompts[block.promptIds()[row]], block.response(row),
+                        block.timestamps()[row]));
+            }
+        }
+    }
+
+    /**
+     * Visits each distinct prompt once, reading only the dictionary.
+     */
+    public void forEachPrompt(Consumer<String> action) {
+        for (String prompt : readDictionary()) {
+            action.accept(prompt);
+        }
+    }
+
+    private String[] readDictionary() {
+        ByteBuffer raw = ByteBuffer.wrap(inflate(read(dictionaryOffset, dictionaryLength), dictionaryRawLength));
+        String[] prompts = new String[readVarint(raw)];
+        for (int i = 0; i < prompts.length; i++) {
+            int length = readVarint(raw);
+            prompts[i] = new String(raw.array(), raw.position(), length, StandardCharsets.UTF_8);
+            raw.position(raw.position() + length);
+        }
+        return prompts;
+    }
+
+    private record Block(int index, long[] timestamps, int[] promptIds, byte[] data, int[] responseOffsets) {
+
+        String response(int row) {
+            int from = responseOffsets[row];
+            return new String(data, from, responseOffsets[row + 1] - from, StandardCharsets.UTF_8);
+        }
+    }
+
+    private Block readBlock(int index) {
+        int base = 4 + index * BLOCK_ENTRY_BYTES;
+        byte[] data = inflate(read(footer.getLong(base), footer.getInt(base + 8)), footer.getInt(base + 12));
+        ByteBuffer raw = ByteBuffer.wrap(data);
+        int rows = readVarint(raw);
+        long[] timestamps = new long[rows];
+        long previous = 0L;
+        for (int row = 0; row < rows; row++) {
+            previous += unzigzag(readVarintLong(raw));
+            timestamps[row] = previous;
+        }
+        int[] promptIds = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            promptIds[row] = readVarint(raw);
+        }
+        int[] responseOffsets = new int[rows + 1];
+        int[] lengths = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            lengths[row] = readVarint(raw);
+        }
+        responseOffsets[0] = raw.position();
+        for (int row = 0; row < rows; row++) {
+            responseOffsets[row + 1] = responseOffsets[row] + lengths[row];
+        }
+        return new Block(index, timestamps, promptIds, data, responseOffsets);
+    }
+
+    private byte[] read(long offset, int length) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            readFully(channel, buffer, offset);
+            return buffer.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read segment " + file, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength && !inflater.finished()) {
+                filled += inflater.inflate(raw, filled, rawLength - filled);
+            }
+            return filled == rawLength ? raw : Arrays.copyOf(raw, filled);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt segment block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarintLong(ByteBuffer in) {
+        long value = 0L;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        return (int) readVarintLong(in);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package school.redrover.data;
+
+/**
+ * Approximate counts for an unbounded set of keys in fixed memory: {@code depth} rows of
+ * {@code width} counters, each key hashed to one counter per row, estimated as the row minimum.
+ * Estimates never undercount. Updates are conservative (only counters at the minimum grow), which
+ * keeps overcounting from hash collisions low. Not thread-safe.
+ */
+final class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final int[] counters;
+
+    CountMinSketch(int width, int depth) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("width must be a power of two: " + width);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new int[width * depth];
+    }
+
+    /**
+     * Counts one occurrence of the key and returns its new estimate.
+     */
+    int add(long hash) {
+        int estimate = estimate(hash) + 1;
+        for (int row = 0; row < depth; row++) {
+            int slot = slot(hash, row);
+            if (counters[slot] < estimate) {
+                counters[slot] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+    int estimate(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[slot(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Halves every counter, so counts decay by half per call.
+     */
+    void halve() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * The backing counters, row by row, for persisting and restoring.
+     */
+    int[] counters() {
+        return counters;
+    }
+
+    // Row hashes are derived from the two halves of one 64-bit hash (Kirsch-Mitzenmacher).
+    private int slot(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+}
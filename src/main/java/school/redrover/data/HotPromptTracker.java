@@ -0,0 +1,349 @@
+package school.redrover.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most requested prompts in constant memory. Every lookup is counted in a
+ * {@link CountMinSketch}; the {@code capacity} prompts with the highest estimates are kept in a
+ * min-heap together with their cache hits, misses and upstream latency. All counts halve every
+ * {@code halfLife}, so the ranking follows current traffic rather than all-time totals. The state
+ * is loaded from and saved to {@code file}, so rankings survive restarts. Only one process should
+ * persist to a given file: each save replaces it with that process's view.
+ */
+public class HotPromptTracker implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotPromptTracker.class);
+
+    private static final int CAPACITY = Integer.getInteger("response.cache.hot.capacity", 100);
+    private static final int SKETCH_WIDTH = Integer.getInteger("response.cache.hot.sketch-width", 1 << 14);
+    private static final long HALF_LIFE_MINUTES = Long.getLong("response.cache.hot.half-life-minutes", 60L);
+
+    private static final int MAGIC = 0x42484f54; // "BHOT"
+    private static final int VERSION = 1;
+    private static final int SKETCH_DEPTH = 4;
+    // After this many half-lives every counter has decayed to zero anyway.
+    private static final int MAX_HALVINGS = 32;
+
+    private final Path file;
+    private final int capacity;
+    private final long halfLifeMillis;
+    private final CountMinSketch sketch;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Entry[] heap;
+    private int size;
+    private long lookups;
+    private long nextDecayAt;
+
+    public HotPromptTracker(Path file) {
+        this(file, CAPACITY, SKETCH_WIDTH, Duration.ofMinutes(HALF_LIFE_MINUTES));
+    }
+
+    /**
+     * A tracker that is neither loaded nor saved, for processes that share the cache store with the
+     * server and must not overwrite its stats.
+     */
+    public static HotPromptTracker inMemory() {
+        return new HotPromptTracker(null);
+    }
+
+    /**
+     * @param file        where the stats are loaded from and saved to; {@code null} keeps them in memory only
+     * @param sketchWidth counters per sketch row, a power of two; wider sketches overcount less
+     * @param halfLife    how long until every count halves; zero or negative never decays
+     */
+    public HotPromptTracker(Path file, int capacity, int sketchWidth, Duration halfLife) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.halfLifeMillis = halfLife.toMillis();
+        this.sketch = new CountMinSketch(sketchWidth, SKETCH_DEPTH);
+        this.heap = new Entry[capacity];
+        this.nextDecayAt = decays() ? System.currentTimeMillis() + halfLifeMillis : Long.MAX_VALUE;
+        load();
+    }
+
+    /**
+     * Counts a cache lookup for the prompt.
+     */
+    public void recordLookup(String prompt, boolean hit) {
+        long hash = ConversationIndex.hash(prompt);
+        synchronized (this) {
+            decay(System.currentTimeMillis());
+            lookups++;
+            int estimate = sketch.add(hash);
+            Entry entry = entries.get(prompt);
+            if (entry == null) {
+                if (size == capacity && estimate <= heap[0].count) {
+                    return;
+                }
+                entry = admit(prompt);
+            }
+            entry.count = estimate;
+            if (hit) {
+                entry.hits++;
+            } else {
+                entry.misses++;
+            }
+            siftDown(entry.index);
+        }
+    }
+
+    /**
+     * Adds an upstream call for the prompt to its stats, if the prompt is currently hot.
+     */
+    public synchronized void recordUpstream(String prompt, long millis) {
+        decay(System.currentTimeMillis());
+        Entry entry = entries.get(prompt);
+        if (entry != null) {
+            entry.upstreamCalls++;
+            entry.upstreamMillis += millis;
+        }
+    }
+
+    /**
+     * Up to {@code limit} hot prompts, most requested first.
+     */
+    public synchronized List<PromptStats> top(int limit) {
+        decay(System.currentTimeMillis());
+        List<Entry> ranked = new ArrayList<>(entries.values());
+        ranked.sort(Comparator.comparingLong((Entry e) -> e.count).reversed());
+        List<PromptStats> top = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (Entry entry : ranked) {
+            if (top.size() == limit || entry.count == 0) {
+                break;
+            }
+            top.add(entry.toStats());
+        }
+        return top;
+    }
+
+    /**
+     * Decayed estimate of how often the prompt was looked up; never an undercount.
+     */
+    public synchronized long estimate(String prompt) {
+        decay(System.currentTimeMillis());
+        return sketch.estimate(ConversationIndex.hash(prompt));
+    }
+
+    /**
+     * Decayed number of lookups across all prompts.
+     */
+    public synchronized long totalLookups() {
+        decay(System.currentTimeMillis());
+        return lookups;
+    }
+
+    public Duration getHalfLife() {
+        return Duration.ofMillis(halfLifeMillis);
+    }
+
+    private boolean decays() {
+        return halfLifeMillis > 0;
+    }
+
+    private void decay(long now) {
+        if (now < nextDecayAt) {
+            return;
+        }
+        long halvings = (now - nextDecayAt) / halfLifeMillis + 1;
+        nextDecayAt += halvings * halfLifeMillis;
+        for (int i = 0; i < Math.min(halvings, MAX_HALVINGS); i++) {
+            sketch.halve();
+        }
+        int shift = (int) Math.min(halvings, 63);
+        lookups >>>= shift;
+        // Halving keeps the heap order, so no re-heapify is needed.
+        for (int i = 0; i < size; i++) {
+            heap[i].halve(shift);
+        }
+    }
+
+    /**
+     * Adds the prompt to the heap, evicting the least requested entry when full.
+     */
+    private Entry admit(String prompt) {
+        Entry entry = new Entry(prompt);
+        if (size == capacity) {
+            entries.remove(heap[0].prompt);
+            entry.index = 0;
+        } else {
+            entry.index = size++;
+        }
+        heap[entry.index] = entry;
+        entries.put(prompt, entry);
+        siftUp(entry.index);
+        return entry;
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (entry.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    private void place(Entry entry, int index) {
+        heap[index] = entry;
+        entry.index = index;
+    }
+
+    private void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring hot prompt stats {} with an unknown format", file);
+                return;
+            }
+            if (in.readInt() != sketch.width() || in.readInt() != sketch.depth()) {
+                logger.info("Sketch size changed, starting hot prompt stats {} afresh", file);
+                return;
+            }
+            long savedDecayAt = in.readLong();
+            lookups = in.readLong();
+            int[] counters = sketch.counters();
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = in.readInt();
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count && size < capacity; i++) {
+                byte[] prompt = new byte[in.readInt()];
+                in.readFully(prompt);
+                Entry entry = admit(new String(prompt, StandardCharsets.UTF_8));
+                entry.count = in.readLong();
+                entry.hits = in.readLong();
+                entry.misses = in.readLong();
+                entry.upstreamCalls = in.readLong();
+                entry.upstreamMillis = in.readLong();
+                siftDown(entry.index);
+            }
+            if (decays()) {
+                // Time passed while we were down decays the counts like any other.
+                nextDecayAt = savedDecayAt;
+                decay(System.currentTimeMillis());
+            }
+            logger.info("Loaded hot prompt stats {} with {} prompts", file, size);
+        } catch (IOException e) {
+            logger.error("Failed to load hot prompt stats {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the current state to the file, replacing it atomically.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sketch.width());
+            out.writeInt(sketch.depth());
+            out.writeLong(nextDecayAt);
+            out.writeLong(lookups);
+            for (int counter : sketch.counters()) {
+                out.writeInt(counter);
+            }
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                Entry entry = heap[i];
+                byte[] prompt = entry.prompt.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(prompt.length);
+                out.write(prompt);
+                out.writeLong(entry.count);
+                out.writeLong(entry.hits);
+                out.writeLong(entry.misses);
+                out.writeLong(entry.upstreamCalls);
+                out.writeLong(entry.upstreamMillis);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() {
+        try {
+            save();
+        } catch (IOException e) {
+            logger.warn("Failed to save hot prompt stats {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class Entry {
+
+        final String prompt;
+        int index;
+        long count;
+        long hits;
+        long misses;
+        long upstreamCalls;
+        long upstreamMillis;
+
+        Entry(String prompt) {
+            this.prompt = prompt;
+        }
+
+        void halve(int shift) {
+            count >>>= shift;
+            hits >>>= shift;
+            misses >>>= shift;
+            upstreamCalls >>>= shift;
+            upstreamMillis >>>= shift;
+        }
+
+        PromptStats toStats() {
+            double meanUpstreamMillis = upstreamCalls > 0 ? (double) upstreamMillis / upstreamCalls : 0.0;
+            return new PromptStats(prompt, count, hits, misses, upstreamCalls, meanUpstreamMillis);
+        }
+    }
+}
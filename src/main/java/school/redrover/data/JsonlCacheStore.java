@@ -0,0 +1,451 @@
+package school.redrover.data;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The append-only JSONL conversation log. Lookups go through a {@link ConversationIndex} of line
+ * positions by prompt hash, snapshotted next to the log so a restart only replays lines written
+ * since the last snapshot. Appends are group-committed by a {@link ConversationLogWriter}.
+ */
+public class JsonlCacheStore implements CacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonlCacheStore.class);
+
+    private static final int SNAPSHOT_EVERY = Integer.getInteger("response.cache.index.snapshot-every", 10_000);
+    private static final int REPLAY_BUFFER_BYTES = 1 << 16;
+
+    private final Path conversationFile;
+    private final ConversationIndex index;
+    private final ConversationLogWriter logWriter;
+    private final FileChannel logReader;
+
+    private volatile long indexedLength;
+
+    public JsonlCacheStore(Path conversationFile) {
+        this.conversationFile = conversationFile;
+        this.index = ConversationIndex.open(siblingFile(conversationFile, ".idx"), conversationFile);
+        indexTail();
+        this.logWriter = openLogWriter(conversationFile);
+        this.logReader = openLogReader(conversationFile);
+    }
+
+    /**
+     * Indexes only the part of the log written after the last index snapshot; everything older is
+     * found through the snapshot.
+     */
+    private void indexTail() {
+        indexedLength = index.coveredLength();
+        if (!Files.exists(conversationFile)) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        LineParser parser = new LineParser();
+        try (FileChannel channel = FileChannel.open(conversationFile, StandardOpenOption.READ)) {
+            indexedLength = replayLog(channel, index.coveredLength(), Long.MAX_VALUE, (line, length, offset) -> {
+                ConversationRecord record = parser.parse(line, length, false);
+                if (record != null) {
+                    index.add(ConversationIndex.hash(record.prompt()), new ConversationIndex.LogPosition(offset, length));
+                }
+            });
+            logger.info("Indexed conversation log: {} (replayed {} lines from offset {} in {} ms)",
+                    conversationFile, index.tailSize(), index.coveredLength(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Failed to load conversations from file: {}", e.getMessage());
+            return;
+        }
+
+        if (index.tailSize() >= SNAPSHOT_EVERY) {
+            writeIndexSnapshot(indexedLength);
+        }
+    }
+
+    /**
+     * Scans complete lines from {@code offset} up to {@code end} (or the end of the log) and returns
+     * the offset just past the last complete line.
+     */
+    private static long replayLog(FileChannel channel, long offset, long end, LineHandler handler) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(REPLAY_BUFFER_BYTES);
+        byte[] line = new byte[1024];
+        int lineLength = 0;
+        long lineStart = offset;
+        long position = offset;
+
+        while (position < end && channel.read(buffer, position) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining() && position < end) {
+                byte b = buffer.get();
+                position++;
+                if (b == '\n') {
+                    handler.line(line, lineLength, lineStart);
+                    lineLength = 0;
+                    lineStart = position;
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            buffer.clear();
+        }
+        return lineStart;
+    }
+
+    @FunctionalInterface
+    private interface LineHandler {
+        void line(byte[] line, int length, long offset);
+    }
+
+    /**
+     * Parses log lines with Gson's streaming reader, decoding each line into a reused char buffer
+     * instead of building a {@code String} and a JSON tree per line. Not thread-safe; use one per scan.
+     */
+    private static final class LineParser {
+
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private CharBuffer chars = CharBuffer.allocate(1024);
+
+        /**
+         * The line's record, or {@code null} for blank and invalid lines. Without
+         * {@code withResponse} only the prompt is kept: the response is skipped unread and the
+         * record has an empty response and no timestamp.
+         */
+        ConversationRecord parse(byte[] line, int length, boolean withResponse) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                return null;
+            }
+            if (chars.capacity() < length) {
+                chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(ByteBuffer.wrap(line, 0, length), chars, true);
+            decoder.flush(chars);
+
+            String prompt = null;
+            String response = null;
+            String timestamp = null;
+            boolean hasResponse = false;
+            try {
+                JsonReader json = new JsonReader(new CharArrayReader(chars.array(), 0, chars.position()));
+                json.setLenient(true);
+                json.beginObject();
+                while (json.hasNext()) {
+                    switch (json.nextName()) {
+                        case "prompt" -> prompt = nextString(json);
+                        case "response" -> {
+                            hasResponse = json.peek() != JsonToken.NULL;
+                            if (withResponse) {
+                                response = nextString(json);
+                            } else {
+                                json.skipValue();
+                            }
+                        }
+                        case "timestamp" -> {
+                            if (withResponse) {
+                                timestamp = nextString(json);
+                            } else {
+                                json.skipValue();
+                            }
+                        }
+                        default -> json.skipValue();
+                    }
+                }
+                json.endObject();
+                if (json.peek() != JsonToken.END_DOCUMENT) {
+                    throw new IOException("Trailing data after JSON object");
+                }
+                if (prompt == null || !hasResponse) {
+                    logger.warn("Skipping invalid JSON line (missing prompt/response): {}", lineText(line, length));
+                    return null;
+                }
+                if (!withResponse) {
+                    return new ConversationRecord(prompt, "", 0L);
+                }
+                long updatedAt = timestamp != null ? parseTimestamp(timestamp) : System.currentTimeMillis();
+                return new ConversationRecord(prompt, response, updatedAt);
+            } catch (IOException | IllegalStateException | NumberFormatException | DateTimeParseException e) {
+                logger.warn("Skipping invalid JSON line in cache: {}", lineText(line, length), e);
+                return null;
+            }
+        }
+
+        private static String nextString(JsonReader json) throws IOException {
+            if (json.peek() == JsonToken.NULL) {
+                json.nextNull();
+                return null;
+            }
+            return json.nextString();
+        }
+
+        private static String lineText(byte[] line, int length) {
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Epoch millis of an ISO-8601 instant. The {@link Instant#toString} form the log writer uses,
+     * such as {@code 2024-05-01T12:30:00.123Z}, is decoded by hand because going through a
+     * {@code DateTimeFormatter} for every line dominated the cost of loading a log.
+     */
+    static long parseTimestamp(String text) {
+        int length = text.length();
+        if (length >= 20 && text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == 'T'
+                && text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(length - 1) == 'Z'
+                && (length == 20 || (length > 21 && text.charAt(19) == '.'))) {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            int second = digits(text, 17, 19);
+            // Millisecond part of the fraction; finer digits only need to be digits.
+            int millis = length > 21 ? digits(text, 20, Math.min(23, length - 1)) : 0;
+            for (int scale = Math.min(23, length - 1) - 20; length > 21 && scale < 3; scale++) {
+                millis *= 10;
+            }
+            boolean validFraction = length <= 24 || digits(text, 23, length - 1) >= 0;
+            if (year >= 0 && month >= 0 && day >= 0 && hour >= 0 && hour < 24 && minute >= 0 && minute < 60
+                    && second >= 0 && second < 60 && millis >= 0 && validFraction) {
+                try {
+                    long epochDay = LocalDate.of(year, month, day).toEpochDay();
+                    return epochDay * 86_400_000L + ((hour * 60L + minute) * 60L + second) * 1_000L + millis;
+                } catch (DateTimeException e) {
+                    // Not a real date; let Instant.parse report it.
+                }
+            }
+        }
+        return Instant.parse(text).toEpochMilli();
+    }
+
+    /**
+     * The decimal value of {@code text[from, to)}, or -1 if it is empty or not all ASCII digits.
+     * Only the sign matters past nine digits.
+     */
+    private static int digits(String text, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = (value * 10 + (c - '0')) % 1_000_000_000;
+        }
+        return value;
+    }
+
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        if (logReader == null) {
+            return null;
+        }
+        List<ConversationIndex.LogPosition> positions = index.positions(ConversationIndex.hash(prompt));
+        Deque<String> responses = new ArrayDeque<>();
+        long updatedAt = 0L;
+        LineParser parser = new LineParser();
+        for (int i = positions.size() - 1; i >= 0 && responses.size() < limit; i--) {
+            ConversationRecord record = readRecord(positions.get(i), parser);
+            if (record != null && record.prompt().equals(prompt)) {
+                responses.addFirst(record.response());
+                updatedAt = Math.max(updatedAt, record.timestamp());
+            }
+        }
+        return responses.isEmpty() ? null : new StoredResponses(List.copyOf(responses), updatedAt);
+    }
+
+    private ConversationRecord readRecord(ConversationIndex.LogPosition position, LineParser parser) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(position.length());
+            long offset = position.offset();
+            while (buffer.hasRemaining()) {
+                int read = logReader.read(buffer, offset + buffer.position());
+                if (read < 0) {
+                    return null;
+                }
+            }
+            return parser.parse(buffer.array(), position.length(), true);
+        } catch (IOException e) {
+            logger.error("Failed to read conversation at offset {}: {}", position.offset(), e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        if (logWriter != null) {
+            logWriter.append(record);
+        }
+    }
+
+    /**
+     * Scans the whole log, so prompts asked repeatedly are visited once per line. Responses are
+     * skipped without being decoded.
+     */
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        scan(conversationFile, false, record -> action.accept(record.prompt()));
+    }
+
+    /**
+     * Visits every complete, valid line of the log in order.
+     */
+    public void forEachRecord(Consumer<ConversationRecord> action) {
+        readRecords(conversationFile, action);
+    }
+
+    /**
+     * Reads a conversation log without opening it as a store, so nothing is indexed or created.
+     */
+    public static void readRecords(Path conversationFile, Consumer<ConversationRecord> action) {
+        scan(conversationFile, true, action);
+    }
+
+    private static void scan(Path conversationFile, boolean withResponses, Consumer<ConversationRecord> action) {
+        if (!Files.exists(conversationFile)) {
+            return;
+        }
+        LineParser parser = new LineParser();
+        try (FileChannel channel = FileChannel.open(conversationFile, StandardOpenOption.READ)) {
+            replayLog(channel, 0L, Long.MAX_VALUE, (line, length, offset) -> {
+                ConversationRecord record = parser.parse(line, length, withResponses);
+                if (record != null) {
+                    action.accept(record);
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to scan conversation log {}: {}", conversationFile, e.getMessage());
+        }
+    }
+
+    private ConversationLogWriter openLogWriter(Path conversationFile) {
+        try {
+            return ConversationLogWriter.open(conversationFile, new ConversationLogWriter.Listener() {
+                @Override
+                public void appended(ConversationRecord record, long offset, int length) {
+                    index.add(ConversationIndex.hash(record.prompt()), new ConversationIndex.LogPosition(offset, length));
+                }
+
+                @Override
+                public void appendedElsewhere(long from, long to) {
+                    indexRange(from, to);
+                }
+
+                @Override
+                public void batchWritten(long logLength) {
+                    indexedLength = logLength;
+                    if (index.tailSize() >= SNAPSHOT_EVERY) {
+                        writeIndexSnapshot(logLength);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            logger.error("Failed to open conversation log {}, responses will not be persisted: {}",
+                    conversationFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Indexes lines another process appended, so our offsets and snapshots stay in step with the file.
+     */
+    private void indexRange(long from, long to) {
+        LineParser parser = new LineParser();
+        try (FileChannel channel = FileChannel.open(conversationFile, StandardOpenOption.READ)) {
+            long end = replayLog(channel, from, to, (line, length, offset) -> {
+                ConversationRecord record = parser.parse(line, length, false);
+                if (record != null) {
+                    index.add(ConversationIndex.hash(record.prompt()), new ConversationIndex.LogPosition(offset, length));
+                }
+            });
+            logger.info("Indexed {} bytes appended to {} by another writer", end - from, conversationFile);
+        } catch (IOException e) {
+            logger.error("Failed to index lines appended to {} by another writer: {}", conversationFile, e.getMessage());
+        }
+    }
+
+    private static FileChannel openLogReader(Path conversationFile) {
+        try {
+            return Files.exists(conversationFile) ? FileChannel.open(conversationFile, StandardOpenOption.READ) : null;
+        } catch (IOException e) {
+            logger.error("Failed to open conversation log {} for reading: {}", conversationFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeIndexSnapshot(long coveredLength) {
+        try {
+            index.writeSnapshot(coveredLength);
+        } catch (IOException e) {
+            logger.error("Failed to write conversation index snapshot: {}", e.getMessage());
+        }
+    }
+
+    static Path siblingFile(Path file, String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    @Override
+    public int pendingWrites() {
+        return logWriter != null ? logWriter.pendingRecords() : 0;
+    }
+
+    @Override
+    public LogWriterStats getWriterStats() {
+        return logWriter != null ? logWriter.getStats() : LogWriterStats.EMPTY;
+    }
+
+    /**
+     * Drains pending log writes and snapshots the index so the next start only replays new lines.
+     */
+    @Override
+    public void close() {
+        boolean drained = logWriter == null || logWriter.drainAndClose();
+        if (!drained) {
+            // Its listener may still be adding to the index, which a snapshot must not race with.
+            logger.warn("Conversation log writer is still running, not snapshotting the index; "
+                    + "the next start replays the log instead");
+        } else if (index.tailSize() > 0) {
+            writeIndexSnapshot(indexedLength);
+        }
+        if (logReader != null) {
+            try {
+                logReader.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close conversation log reader: {}", e.getMessage());
+            }
+        }
+    }
+}
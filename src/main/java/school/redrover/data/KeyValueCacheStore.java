@@ -0,0 +1,101 @@
+package school.redrover.data;
+
+import com.google.gson.Gson;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Embedded on-disk key-value store (H2 MVStore), one entry per prompt holding its newest
+ * responses. Pages are compressed on disk, only a bounded page cache stays on-heap, and changes
+ * are committed in the background, so appends cost a map update. Unlike the log, it keeps no
+ * history beyond the response limit and needs no replay on start.
+ */
+public class KeyValueCacheStore implements CacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyValueCacheStore.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private record Value(long t, List<String> r) {
+    }
+
+    private final MVStore store;
+    private final MVMap<String, String> responses;
+    private final int maxResponsesPerPrompt;
+    private final Object[] appendLocks = new Object[LOCK_STRIPES];
+    private final Gson gson = new Gson();
+
+    /**
+     * @param cacheMegabytes on-heap page cache size
+     */
+    public KeyValueCacheStore(Path file, int maxResponsesPerPrompt, int cacheMegabytes) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.store = new MVStore.Builder()
+                .fileName(file.toString())
+                .compress()
+                .cacheSize(cacheMegabytes)
+                .open();
+        this.store.setAutoCommitDelay(1_000);
+        this.responses = store.openMap("responses");
+        this.maxResponsesPerPrompt = maxResponsesPerPrompt;
+        for (int i = 0; i < appendLocks.length; i++) {
+            appendLocks[i] = new Object();
+        }
+        logger.info("KeyValueCacheStore opened {} with {} prompts", file, responses.sizeAsLong());
+    }
+
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        String encoded = responses.get(prompt);
+        if (encoded == null) {
+            return null;
+        }
+        Value value = gson.fromJson(encoded, Value.class);
+        List<String> stored = value.r();
+        if (stored.size() > limit) {
+            stored = stored.subList(stored.size() - limit, stored.size());
+        }
+        return new StoredResponses(List.copyOf(stored), value.t());
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        synchronized (appendLocks[Math.floorMod(record.prompt().hashCode(), LOCK_STRIPES)]) {
+            String encoded = responses.get(record.prompt());
+            Value existing = encoded != null ? gson.fromJson(encoded, Value.class) : null;
+            List<String> updated = new ArrayList<>(existing != null ? existing.r() : List.of());
+            updated.add(record.response());
+            if (updated.size() > maxResponsesPerPrompt) {
+                updated = updated.subList(updated.size() - maxResponsesPerPrompt, updated.size());
+            }
+            long updatedAt = Math.max(record.timestamp(), existing != null ? existing.t() : 0L);
+            responses.put(record.prompt(), gson.toJson(new Value(updatedAt, updated)));
+        }
+    }
+
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        responses.keySet().forEach(action);
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
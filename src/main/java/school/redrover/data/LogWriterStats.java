@@ -0,0 +1,10 @@
+package school.redrover.data;
+
+/**
+ * Cumulative conversation-log writer counters; {@code writeNanos} is the time spent in channel
+ * writes and fsyncs across all batches.
+ */
+public record LogWriterStats(long batches, long records, long dropped, long writeNanos, int pending) {
+
+    public static final LogWriterStats EMPTY = new LogWriterStats(0L, 0L, 0L, 0L, 0);
+}
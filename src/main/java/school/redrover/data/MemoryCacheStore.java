@@ -0,0 +1,53 @@
+package school.redrover.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-process store that keeps the newest responses per prompt in a map. It has the networked
+ * store's semantics without the network, and stands in for it in local runs and benchmarks.
+ * Nothing survives a restart.
+ */
+public class MemoryCacheStore implements CacheStore {
+
+    private final int maxResponsesPerPrompt;
+    private final ConcurrentHashMap<String, StoredResponses> entries = new ConcurrentHashMap<>();
+
+    public MemoryCacheStore(int maxResponsesPerPrompt) {
+        this.maxResponsesPerPrompt = maxResponsesPerPrompt;
+    }
+
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        StoredResponses stored = entries.get(prompt);
+        if (stored == null || stored.responses().size() <= limit) {
+            return stored;
+        }
+        List<String> responses = stored.responses();
+        return new StoredResponses(responses.subList(responses.size() - limit, responses.size()), stored.updatedAt());
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        entries.compute(record.prompt(), (prompt, stored) -> {
+            List<String> responses = new ArrayList<>(stored != null ? stored.responses() : List.of());
+            responses.add(record.response());
+            if (responses.size() > maxResponsesPerPrompt) {
+                responses = responses.subList(responses.size() - maxResponsesPerPrompt, responses.size());
+            }
+            long updatedAt = Math.max(record.timestamp(), stored != null ? stored.updatedAt() : 0L);
+            return new StoredResponses(List.copyOf(responses), updatedAt);
+        });
+    }
+
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        entries.keySet().forEach(action);
+    }
+
+    @Override
+    public void close() {
+    }
+}
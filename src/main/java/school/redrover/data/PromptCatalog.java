@@ -0,0 +1,182 @@
+package school.redrover.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the prompt catalog in display order. Keys, 1-based numbers and prompt
+ * texts all resolve in constant time, and a trigram index over the lowercased prompts narrows
+ * substring and fuzzy searches to the prompts that share the query's trigrams.
+ */
+public final class PromptCatalog {
+
+    private static final int GRAM = 3;
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final Map<String, String> prompts;
+    private final String[] keys;
+    private final String[] values;
+    private final String[] lowerCaseValues;
+    private final Set<String> promptTexts;
+    private final Map<String, int[]> postings;
+    private final int[] gramCounts;
+
+    public PromptCatalog(Map<String, String> prompts) {
+        this.prompts = Collections.unmodifiableMap(new LinkedHashMap<>(prompts));
+        this.keys = this.prompts.keySet().toArray(String[]::new);
+        this.values = this.prompts.values().toArray(String[]::new);
+        this.lowerCaseValues = new String[values.length];
+        this.promptTexts = Set.copyOf(this.prompts.values());
+        this.gramCounts = new int[values.length];
+
+        Map<String, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            lowerCaseValues[i] = values[i].toLowerCase(Locale.ROOT);
+            Set<String> grams = grams(lowerCaseValues[i]);
+            gramCounts[i] = grams.size();
+            for (String gram : grams) {
+                index.computeIfAbsent(gram, g -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, int[]> packed = new HashMap<>(index.size() * 2);
+        index.forEach((gram, ids) -> packed.put(gram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        this.postings = packed;
+    }
+
+    /**
+     * Key to prompt, in catalog order.
+     */
+    public Map<String, String> asMap() {
+        return prompts;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public String get(String key) {
+        return prompts.get(key);
+    }
+
+    /**
+     * The prompt numbered {@code number} in display order, counting from 1, or {@code null}.
+     */
+    public String byNumber(int number) {
+        return number >= 1 && number <= values.length ? values[number - 1] : null;
+    }
+
+    public boolean containsPrompt(String text) {
+        return promptTexts.contains(text);
+    }
+
+    /**
+     * A catalog number or key resolves to its prompt; anything else is a free-form question and is
+     * returned unchanged.
+     */
+    public String resolve(String input) {
+        String byKey = prompts.get(input);
+        if (byKey != null) {
+            return byKey;
+        }
+        if (!input.isEmpty() && input.length() <= 9 && input.chars().allMatch(Character::isDigit)) {
+            String byNumber = byNumber(Integer.parseInt(input));
+            if (byNumber != null) {
+                return byNumber;
+            }
+        }
+        return input;
+    }
+
+    /**
+     * Prompts containing {@code keyword}, ignoring case, in catalog order.
+     */
+    public Map<String, String> search(String keyword) {
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        Map<String, String> results = new LinkedHashMap<>();
+        if (needle.length() < GRAM) {
+            for (int i = 0; i < values.length; i++) {
+                if (lowerCaseValues[i].contains(needle)) {
+                    results.put(keys[i], values[i]);
+                }
+            }
+            return results;
+        }
+
+        // Every trigram of the needle must occur in a match, so start from the rarest one.
+        int[] candidates = null;
+        for (int start = 0; start + GRAM <= needle.length(); start++) {
+            String gram = needle.substring(start, start + GRAM);
+            int[] ids = postings.getOrDefault(gram, NO_POSTINGS);
+            if (candidates == null || ids.length < candidates.length) {
+                candidates = ids;
+            }
+        }
+        for (int i : candidates) {
+            if (lowerCaseValues[i].contains(needle)) {
+                results.put(keys[i], values[i]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Up to {@code limit} prompts most similar to {@code query}, best first, scored by the share of
+     * trigrams they have in common (Dice coefficient). Prompts scoring below {@code minScore} are left out.
+     */
+    public Map<String, String> fuzzySearch(String query, int limit, double minScore) {
+        Set<String> queryGrams = grams(query.strip().toLowerCase(Locale.ROOT));
+        Map<String, String> results = new LinkedHashMap<>();
+        if (queryGrams.isEmpty() || limit <= 0) {
+            return results;
+        }
+
+        int[] shared = new int[values.length];
+        List<Integer> touched = new ArrayList<>();
+        for (String gram : queryGrams) {
+            for (int i : postings.getOrDefault(gram, NO_POSTINGS)) {
+                if (shared[i]++ == 0) {
+                    touched.add(i);
+                }
+            }
+        }
+
+        double[] scores = new double[values.length];
+        List<Integer> ranked = new ArrayList<>();
+        for (int i : touched) {
+            scores[i] = 2.0 * shared[i] / (queryGrams.size() + gramCounts[i]);
+            if (scores[i] >= minScore) {
+                ranked.add(i);
+            }
+        }
+        ranked.sort(Comparator.comparingDouble((Integer i) -> -scores[i]).thenComparingInt(i -> i));
+        for (int i : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            results.put(keys[i], values[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Distinct trigrams of {@code text}, padded so that short words and word edges still count.
+     * Leading and trailing whitespace is kept: {@link #search} needs every trigram a substring of
+     * the prompt can have.
+     */
+    static Set<String> grams(String text) {
+        String padded = " " + text + " ";
+        if (padded.length() < GRAM + 1) {
+            return Set.of();
+        }
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
@@ -5,21 +5,71 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashMap;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
-public class PromptManager {
+/**
+ * Holds the prompt catalog as an immutable {@link PromptCatalog} that is replaced, never modified:
+ * readers take the current snapshot without locking, and edits or reloads build a new one.
+ *
+ * <p>The catalog is the bundled defaults, then every {@code *.properties} file in the prompts
+ * directory ({@code prompts.dir}, default {@code prompts}) in file-name order, then prompts added,
+ * updated or removed at runtime. Prompts keep the order they appear in their file. The directory is
+ * watched and reloaded when its files change, unless {@code prompts.watch=false}.
+ */
+public class PromptManager implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(PromptManager.class);
-    private final Map<String, String> prompts = new HashMap<>();
+
+    private static final long RELOAD_SETTLE_MILLIS = 200;
+
+    private final Path promptsDirectory;
+    // Runtime edits replayed over every reload; a null value removes the key.
+    private final Map<String, String> edits = new LinkedHashMap<>();
+    private final Thread watcher;
+    private volatile PromptCatalog catalog;
+    private volatile WatchService watchService;
 
     public PromptManager() {
-        loadDefaultPrompts();
+        this(Path.of(System.getProperty("prompts.dir", "prompts")),
+                Boolean.parseBoolean(System.getProperty("prompts.watch", "true")));
+    }
+
+    public PromptManager(Path promptsDirectory, boolean watch) {
+        this.promptsDirectory = promptsDirectory;
+        this.catalog = new PromptCatalog(loadPrompts());
+        this.watcher = watch && Files.isDirectory(promptsDirectory) ? startWatcher() : null;
     }
 
-    private void loadDefaultPrompts() {
+    private Map<String, String> loadPrompts() {
+        Map<String, String> prompts = new LinkedHashMap<>();
+        loadDefaultPrompts(prompts);
+        loadPromptFiles(prompts);
+        synchronized (edits) {
+            edits.forEach((key, prompt) -> {
+                if (prompt == null) {
+                    prompts.remove(key);
+                } else {
+                    prompts.put(key, prompt);
+                }
+            });
+        }
+        return prompts;
+    }
+
+    private void loadDefaultPrompts(Map<String, String> prompts) {
         try (InputStream input = getClass().getResourceAsStream("/prompts_default.properties")) {
             if (input == null) {
                 logger.warn("prompts_default.properties not found in resources. Using fallback prompts.");
@@ -32,34 +82,120 @@ public class PromptManager {
                 return;
             }
 
-            Properties properties = new Properties();
-            properties.load(input);
-
-            for (String key : properties.stringPropertyNames()) {
-                prompts.put(key, properties.getProperty(key));
-            }
+            orderedProperties(prompts).load(input);
             logger.info("Loaded default prompts from prompts_default.properties");
         } catch (IOException e) {
             logger.error("Error reading prompts_default.properties", e);
         }
     }
 
+    private void loadPromptFiles(Map<String, String> prompts) {
+        if (!Files.isDirectory(promptsDirectory)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(promptsDirectory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(".properties")).sorted().toList();
+        } catch (IOException e) {
+            logger.error("Error listing prompt files in {}: {}", promptsDirectory, e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                orderedProperties(prompts).load(reader);
+            } catch (IOException e) {
+                logger.error("Error reading prompt file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Properties that store straight into {@code target}, so prompts keep their order in the file.
+     */
+    private static Properties orderedProperties(Map<String, String> target) {
+        return new Properties() {
+            @Override
+            public synchronized Object put(Object key, Object value) {
+                return target.put((String) key, (String) value);
+            }
+        };
+    }
+
+    private Thread startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            promptsDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.warn("Not watching {} for prompt changes: {}", promptsDirectory, e.getMessage());
+            return null;
+        }
+        Thread thread = new Thread(this::watchLoop, "prompt-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Watching {} for prompt changes", promptsDirectory);
+        return thread;
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                // Editors write in several steps; wait for the burst to settle before reloading once.
+                do {
+                    key.pollEvents();
+                    if (!key.reset()) {
+                        logger.warn("Prompt directory {} is no longer accessible, stopped watching", promptsDirectory);
+                        return;
+                    }
+                    key = watchService.poll(RELOAD_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+    /**
+     * Rebuilds the catalog from its sources; readers keep the old snapshot until the new one is ready.
+     */
+    public void reload() {
+        PromptCatalog reloaded;
+        synchronized (edits) {
+            reloaded = new PromptCatalog(loadPrompts());
+            catalog = reloaded;
+        }
+        logger.info("Reloaded {} prompts", reloaded.size());
+    }
+
+    public PromptCatalog getCatalog() {
+        return catalog;
+    }
+
     public Map<String, String> getPrompts() {
-        return Collections.unmodifiableMap(prompts);
+        return catalog.asMap();
     }
 
     public String getPrompt(String key) {
-        return prompts.get(key);
+        return catalog.get(key);
+    }
+
+    /**
+     * Resolves a catalog number or key to its prompt; other input is returned as is.
+     */
+    public String resolve(String input) {
+        return catalog.resolve(input);
     }
 
     public void addPrompt(String key, String prompt) {
-        prompts.put(key, prompt);
+        edit(key, prompt);
         logger.info("Prompt added: {} - {}", key, prompt);
     }
 
     public void updatePrompt(String key, String newPrompt) {
-        if (prompts.containsKey(key)) {
-            prompts.put(key, newPrompt);
+        if (catalog.get(key) != null) {
+            edit(key, newPrompt);
             logger.info("Prompt updated: {} - {}", key, newPrompt);
         } else {
             logger.warn("Prompt key not found: {}", key);
@@ -67,22 +203,49 @@ public class PromptManager {
     }
 
     public void removePrompt(String key) {
-        if (prompts.containsKey(key)) {
-            prompts.remove(key);
+        if (catalog.get(key) != null) {
+            edit(key, null);
             logger.info("Prompt removed: {}", key);
         } else {
             logger.warn("Prompt key not found: {}", key);
         }
     }
 
+    private void edit(String key, String prompt) {
+        synchronized (edits) {
+            edits.put(key, prompt);
+            Map<String, String> prompts = new LinkedHashMap<>(catalog.asMap());
+            if (prompt == null) {
+                prompts.remove(key);
+            } else {
+                prompts.put(key, prompt);
+            }
+            catalog = new PromptCatalog(prompts);
+        }
+    }
+
     public Map<String, String> searchPrompts(String keyword) {
-        Map<String, String> results = new HashMap<>();
-        String lowerCaseKeyword = keyword.toLowerCase();
-        for (Map.Entry<String, String> entry : prompts.entrySet()) {
-            if (entry.getValue().toLowerCase().contains(lowerCaseKeyword)) {
-                results.put(entry.getKey(), entry.getValue());
+        return catalog.search(keyword);
+    }
+
+    /**
+     * Up to {@code limit} prompts closest to {@code query}, best first, tolerating typos and word order.
+     */
+    public Map<String, String> fuzzySearch(String query, int limit) {
+        return catalog.fuzzySearch(query, limit, 0.3);
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close prompt watcher: {}", e.getMessage());
             }
         }
-        return results;
+        if (watcher != null) {
+            watcher.interrupt();
+        }
     }
 }
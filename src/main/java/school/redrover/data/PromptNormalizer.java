@@ -0,0 +1,31 @@
+package school.redrover.data;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Folds away differences that do not change what is being asked: case, contractions,
+ * ampersands, punctuation and whitespace. "What's the key to success?" and "what is the key to success"
+ * canonicalize to the same string.
+ */
+public final class PromptNormalizer {
+
+    private static final String[][] CONTRACTIONS = {
+            {"won't", "will not"}, {"can't", "cannot"}, {"n't", " not"}, {"'re", " are"}, {"'ll", " will"},
+            {"'ve", " have"}, {"'d", " would"}, {"'m", " am"}, {"it's", "it is"}, {"what's", "what is"},
+            {"that's", "that is"}, {"there's", "there is"}, {"he's", "he is"}, {"she's", "she is"},
+            {"who's", "who is"}, {"where's", "where is"}, {"how's", "how is"}, {"let's", "let us"}
+    };
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private PromptNormalizer() {
+    }
+
+    public static String canonicalize(String prompt) {
+        String text = prompt.toLowerCase(Locale.ROOT).replace('’', '\'').replace("&", " and ");
+        for (String[] contraction : CONTRACTIONS) {
+            text = text.replace(contraction[0], contraction[1]);
+        }
+        return NON_WORD.matcher(text).replaceAll(" ").strip();
+    }
+}
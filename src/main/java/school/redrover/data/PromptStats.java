@@ -0,0 +1,9 @@
+package school.redrover.data;
+
+/**
+ * Decayed traffic for one hot prompt. {@code lookups} is the count-min estimate; hits, misses and
+ * upstream calls are counted from when the prompt entered the top-K.
+ */
+public record PromptStats(String prompt, long lookups, long hits, long misses, long upstreamCalls,
+                          double meanUpstreamMillis) {
+}
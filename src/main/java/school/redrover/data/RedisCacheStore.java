@@ -0,0 +1,91 @@
+package school.redrover.data;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Redis-backed store shared by every server instance pointed at the same Redis: one list per
+ * prompt, trimmed to the newest responses and optionally expiring with the cache TTL. Calls go
+ * over the network, so {@link ResponseCache} fronts it with a {@link WriteBehindCacheStore}.
+ */
+public class RedisCacheStore implements CacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCacheStore.class);
+
+    private static final String KEY_PREFIX = "bender:responses:";
+
+    private record Entry(String response, long timestamp) {
+    }
+
+    private final JedisPooled redis;
+    private final int maxResponsesPerPrompt;
+    private final Duration ttl;
+    private final Gson gson = new Gson();
+
+    /**
+     * @param ttl zero or negative keeps entries until Redis evicts them
+     */
+    public RedisCacheStore(String url, int maxResponsesPerPrompt, Duration ttl) {
+        this.redis = new JedisPooled(url);
+        this.maxResponsesPerPrompt = maxResponsesPerPrompt;
+        this.ttl = ttl;
+        logger.info("RedisCacheStore connected to {}", url.replaceAll("//[^@/]*@", "//***@"));
+    }
+
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        List<String> encoded = redis.lrange(KEY_PREFIX + prompt, -limit, -1);
+        if (encoded.isEmpty()) {
+            return null;
+        }
+        List<String> responses = new ArrayList<>(encoded.size());
+        long updatedAt = 0L;
+        for (String json : encoded) {
+            Entry entry = gson.fromJson(json, Entry.class);
+            responses.add(entry.response());
+            updatedAt = Math.max(updatedAt, entry.timestamp());
+        }
+        return new StoredResponses(List.copyOf(responses), updatedAt);
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        String key = KEY_PREFIX + record.prompt();
+        try (Connection connection = redis.getPool().getResource()) {
+            Pipeline pipeline = new Pipeline(connection);
+            pipeline.rpush(key, gson.toJson(new Entry(record.response(), record.timestamp())));
+            pipeline.ltrim(key, -maxResponsesPerPrompt, -1);
+            if (!ttl.isZero() && !ttl.isNegative()) {
+                pipeline.pexpire(key, ttl.toMillis());
+            }
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        ScanParams params = new ScanParams().match(KEY_PREFIX + "*").count(1_000);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> page = redis.scan(cursor, params);
+            page.getResult().forEach(key -> action.accept(key.substring(KEY_PREFIX.length())));
+            cursor = page.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    @Override
+    public void close() {
+        redis.close();
+    }
+}
@@ -1,95 +1,403 @@
 package school.redrover.data;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.nio.file.*;
-import java.time.Instant;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class ResponseCache {
+/**
+ * Two-level response cache: a bounded on-heap segmented LRU holds the hot set, and a
+ * {@link CacheStore} holds everything else. Misses read through to the store and saves are handed
+ * to it (write-behind for stores that need it), so heap use does not grow with history size.
+ */
+public class ResponseCache implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
 
     private static final Path CONVERSATION_FILE = Path.of(
             System.getProperty("response.cache.path", "logs/conversations.jsonl")
     );
+    private static final Path SEGMENTS_DIRECTORY = Path.of(
+            System.getProperty("response.cache.segments.path", "logs/segments")
+    );
+    private static final String STORE = System.getProperty("response.cache.store", "jsonl");
+    private static final int MAX_ENTRIES = Integer.getInteger("response.cache.max-entries", 10_000);
+    private static final long MAX_BYTES = Long.getLong("response.cache.max-bytes", 64L * 1024 * 1024);
+    private static final long TTL_SECONDS = Long.getLong("response.cache.ttl-seconds", 0L);
+    private static final long SOFT_TTL_SECONDS = Long.getLong("response.cache.soft-ttl-seconds", 86_400L);
+    private static final int MAX_RESPONSES_PER_PROMPT = Integer.getInteger("response.cache.max-responses-per-prompt", 5);
+    private static final double SIMILARITY_THRESHOLD = Double.parseDouble(
+            System.getProperty("response.cache.similarity.threshold", "0.8"));
+
+    // Rough per-entry bookkeeping cost (map nodes, list, record) on top of the UTF-16 payload.
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final int LOCK_STRIPES = 64;
 
-    private final Map<String, List<String>> cache = new ConcurrentHashMap<>();
+    private final CacheStore store;
+    private final Duration ttl;
+    private final Duration softTtl;
+    private final int maxResponsesPerPrompt;
+    private final SegmentedLruCache<String, CachedEntry> cache;
+    private final Object[] appendLocks = new Object[LOCK_STRIPES];
+    private final SimilarityIndex similarityIndex;
+    private final HotPromptTracker hotPrompts;
+    // Hot prompts by key, for lookups that only carry the prompt's hash.
+    private final Map<Long, String> hotPromptsByHash = new ConcurrentHashMap<>();
 
-    private final Gson gson = new Gson();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong similarHits = new AtomicLong();
 
     public ResponseCache() {
-        loadCachedConversations();
+        this(true);
     }
 
-    private void loadCachedConversations() {
-        if (!Files.exists(CONVERSATION_FILE)) {
-            return;
-        }
+    /**
+     * @param persistHotPrompts whether hot prompt stats are loaded from and saved next to the store;
+     *                          only the server should, so other processes sharing the store (the CLI)
+     *                          do not overwrite its ranking with their own
+     */
+    public ResponseCache(boolean persistHotPrompts) {
+        this(createStore(Duration.ofSeconds(TTL_SECONDS)), storeFileFor(STORE, ".sig"),
+                persistHotPrompts ? new HotPromptTracker(storeFileFor(STORE, ".hot")) : HotPromptTracker.inMemory(),
+                MAX_ENTRIES, MAX_BYTES,
+                Duration.ofSeconds(TTL_SECONDS), Duration.ofSeconds(SOFT_TTL_SECONDS), MAX_RESPONSES_PER_PROMPT,
+                SIMILARITY_THRESHOLD);
+    }
 
-        try {
-            Files.lines(CONVERSATION_FILE).forEach(this::parseAndLoadLine);
-            logger.info("Loaded cached conversations from file: {}", CONVERSATION_FILE);
-        } catch (IOException e) {
-            logger.error("Failed to load conversations from file: {}", e.getMessage());
+    public ResponseCache(Path conversationFile, int maxEntries, long maxBytes, Duration ttl, int maxResponsesPerPrompt) {
+        this(conversationFile, maxEntries, maxBytes, ttl, maxResponsesPerPrompt, SIMILARITY_THRESHOLD);
+    }
+
+    public ResponseCache(Path conversationFile, int maxEntries, long maxBytes, Duration ttl, int maxResponsesPerPrompt,
+                         double similarityThreshold) {
+        this(new JsonlCacheStore(conversationFile), JsonlCacheStore.siblingFile(conversationFile, ".sig"),
+                HotPromptTracker.inMemory(), maxEntries, maxBytes, ttl, Duration.ZERO, maxResponsesPerPrompt,
+                similarityThreshold);
+    }
+
+    /**
+     * @param ttl how long a prompt stays cached after its last saved response; zero or negative disables expiry
+     * @param softTtl after this long an entry is still served but reported by {@link #isStale} so it can
+     *                be refreshed in the background; zero or negative never marks entries stale
+     * @param similarityThreshold minimum estimated similarity for {@link #findSimilar}; 1.0 matches only
+     *                            canonically equal prompts, above 1.0 disables the similarity tier
+     */
+    public ResponseCache(CacheStore store, Path similarityFile, HotPromptTracker hotPrompts, int maxEntries, long maxBytes, Duration ttl,
+                         Duration softTtl, int maxResponsesPerPrompt, double similarityThreshold) {
+        if (maxResponsesPerPrompt < 1) {
+            throw new IllegalArgumentException("maxResponsesPerPrompt must be positive: " + maxResponsesPerPrompt);
         }
+        this.store = store;
+        this.hotPrompts = hotPrompts;
+        this.ttl = ttl;
+        this.softTtl = softTtl;
+        this.maxResponsesPerPrompt = maxResponsesPerPrompt;
+        for (int i = 0; i < appendLocks.length; i++) {
+            appendLocks[i] = new Object();
+        }
+        this.cache = new SegmentedLruCache<>(maxEntries, maxBytes, CachedEntry::bytes, (prompt, entry) -> {
+            forgetHot(prompt);
+            evictions.incrementAndGet();
+            logger.debug("Evicted cached prompt: {}", prompt);
+        });
+        this.similarityIndex = similarityThreshold <= 1.0
+                ? new SimilarityIndex(similarityFile, similarityThreshold)
+                : null;
+        loadSimilarityIndex();
+        logger.info("ResponseCache initialized with store={} maxEntries={} maxBytes={} ttl={} softTtl={} maxResponsesPerPrompt={} similarityThreshold={}",
+                store.getClass().getSimpleName(), maxEntries, maxBytes, ttl, softTtl, maxResponsesPerPrompt, similarityThreshold);
     }
 
-    private void parseAndLoadLine(String line) {
-        try {
-            JsonObject obj = gson.fromJson(line, JsonObject.class);
-            if (obj == null || !obj.has("prompt") || !obj.has("response")) {
-                logger.warn("Skipping invalid JSON line (missing prompt/response): {}", line);
-                return;
-            }
+    /**
+     * The store selected by {@code response.cache.store}: {@code jsonl} (the conversation log),
+     * {@code kv} (embedded key-value file), {@code segments} (a log that is sealed into compressed
+     * segments as it grows), {@code redis}, or {@code memory} (an in-process stand-in for Redis). The networked and stand-in stores are written behind.
+     */
+    static CacheStore createStore(Duration ttl) {
+        int writeBehindCapacity = Integer.getInteger("response.cache.write-behind.queue-capacity", 10_000);
+        return switch (STORE.toLowerCase(Locale.ROOT)) {
+            case "jsonl" -> new JsonlCacheStore(CONVERSATION_FILE);
+            case "kv" -> new KeyValueCacheStore(
+                    Path.of(System.getProperty("response.cache.kv.path", "logs/conversations.mv")),
+                    MAX_RESPONSES_PER_PROMPT,
+                    Integer.getInteger("response.cache.kv.cache-mb", 16));
+            case "redis" -> new WriteBehindCacheStore(new RedisCacheStore(
+                    System.getProperty("response.cache.redis.url", "redis://localhost:6379"),
+                    MAX_RESPONSES_PER_PROMPT, ttl), writeBehindCapacity);
+            case "segments" -> new SegmentCacheStore(SEGMENTS_DIRECTORY,
+                    Integer.getInteger("response.cache.segments.records", 100_000));
+            case "memory" -> new WriteBehindCacheStore(new MemoryCacheStore(MAX_RESPONSES_PER_PROMPT), writeBehindCapacity);
+            default -> throw new IllegalArgumentException("Unknown response.cache.store: " + STORE);
+        };
+    }
 
-            String prompt = obj.get("prompt").getAsString();
-            String response = obj.get("response").getAsString();
+    private static Path storeFileFor(String store, String suffix) {
+        Path base = switch (store.toLowerCase(Locale.ROOT)) {
+            case "kv" -> Path.of(System.getProperty("response.cache.kv.path", "logs/conversations.mv"));
+            case "segments" -> SEGMENTS_DIRECTORY;
+            default -> CONVERSATION_FILE;
+        };
+        return JsonlCacheStore.siblingFile(base, suffix);
+    }
 
-            cache.computeIfAbsent(prompt, k -> new ArrayList<>()).add(response);
+    /**
+     * Loads persisted prompt signatures, or rebuilds them once from the store when there are none.
+     */
+    private void loadSimilarityIndex() {
+        if (similarityIndex == null) {
+            return;
+        }
+        if (similarityIndex.exists()) {
+            similarityIndex.load();
+            return;
+        }
 
-        } catch (JsonSyntaxException e) {
-            logger.warn("Skipping invalid JSON line in cache: {}", line, e);
+        long start = System.nanoTime();
+        store.forEachPrompt(similarityIndex::add);
+        if (similarityIndex.size() > 0) {
+            logger.info("Rebuilt similarity index with {} prompts in {} ms",
+                    similarityIndex.size(), (System.nanoTime() - start) / 1_000_000);
         }
     }
 
     public void saveResponse(String prompt, String response) {
-        cache.computeIfAbsent(prompt, k -> new ArrayList<>()).add(response);
-
-        saveConversationToFile(prompt, response);
+        long now = System.currentTimeMillis();
+        addToCache(prompt, response, now);
+        store.append(new ConversationRecord(prompt, response, now));
+        if (similarityIndex != null) {
+            similarityIndex.add(prompt);
+        }
     }
 
     public List<String> getResponse(String prompt) {
-        return cache.getOrDefault(prompt, Collections.emptyList());
+        CachedEntry entry = liveEntry(prompt);
+        return entry != null ? entry.responses() : Collections.emptyList();
+    }
+
+    /**
+     * One of the prompt's stored responses, rotating newest first so repeated askers see the
+     * variety, or {@code null} when the prompt is not cached.
+     */
+    public String nextResponse(String prompt) {
+        CachedEntry entry = liveEntry(prompt);
+        if (entry == null) {
+            return null;
+        }
+        List<String> responses = entry.responses();
+        int turn = Math.floorMod(entry.served().getAndIncrement(), responses.size());
+        return responses.get(responses.size() - 1 - turn);
+    }
+
+    /**
+     * Whether the prompt's hot entry is past the soft TTL. Prompts that are not hot are not stale.
+     */
+    public boolean isStale(String prompt) {
+        if (softTtl.isZero() || softTtl.isNegative()) {
+            return false;
+        }
+        CachedEntry entry = cache.peek(prompt);
+        return entry != null && System.currentTimeMillis() - entry.updatedAt() > softTtl.toMillis();
     }
 
     public boolean isCached(String prompt) {
-        return cache.containsKey(prompt);
+        if (liveEntry(prompt) != null) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Second-tier lookup for a prompt that missed exactly: returns a different cached prompt that is
+     * canonically equal or similar above the threshold, or {@code null}.
+     */
+    public SimilarityIndex.Match findSimilar(String prompt) {
+        if (similarityIndex == null) {
+            return null;
+        }
+        SimilarityIndex.Match match = similarityIndex.findSimilar(prompt);
+        if (match == null || match.prompt().equals(prompt) || liveEntry(match.prompt()) == null) {
+            return null;
+        }
+        similarHits.incrementAndGet();
+        return match;
+    }
+
+    /**
+     * Stable key of a prompt for {@link #findByKey}: its 64-bit FNV-1a hash as 16 hex digits.
+     */
+    public static String keyOf(String prompt) {
+        return String.format("%016x", ConversationIndex.hash(prompt));
+    }
+
+    /**
+     * The newest response of the hot prompt with this key, or {@code null} if the key is malformed
+     * or its prompt is not in the in-memory cache. Does not count as a cache hit or miss.
+     */
+    public CachedAnswer findByKey(String key) {
+        long hash;
+        try {
+            hash = Long.parseUnsignedLong(key, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String prompt = hotPromptsByHash.get(hash);
+        CachedEntry entry = prompt != null ? liveEntry(prompt) : null;
+        if (entry == null) {
+            return null;
+        }
+        List<String> responses = entry.responses();
+        long freshUntil = Long.MAX_VALUE;
+        if (!softTtl.isZero() && !softTtl.isNegative()) {
+            freshUntil = entry.updatedAt() + softTtl.toMillis();
+        } else if (!ttl.isZero() && !ttl.isNegative()) {
+            freshUntil = entry.updatedAt() + ttl.toMillis();
+        }
+        return new CachedAnswer(prompt, responses.get(responses.size() - 1), entry.updatedAt(), freshUntil);
+    }
+
+    /**
+     * Counts a lookup of the prompt towards {@link #getHotPrompts}; {@code hit} says whether it was
+     * answered from the cache.
+     */
+    public void recordLookup(String prompt, boolean hit) {
+        hotPrompts.recordLookup(prompt, hit);
+    }
+
+    /**
+     * Records how long an upstream call for the prompt took.
+     */
+    public void recordUpstream(String prompt, long millis) {
+        hotPrompts.recordUpstream(prompt, millis);
+    }
+
+    public HotPromptTracker getHotPrompts() {
+        return hotPrompts;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), similarHits.get(), evictions.get(), cache.size(), cache.weight());
+    }
+
+    private CachedEntry liveEntry(String prompt) {
+        CachedEntry entry = cache.get(prompt);
+        if (entry == null) {
+            entry = loadFromStore(prompt);
+        }
+        if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+            cache.remove(prompt);
+            forgetHot(prompt);
+            evictions.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Reads an evicted or not-yet-loaded entry through from the store. A store failure counts as a
+     * miss rather than failing the request.
+     */
+    private CachedEntry loadFromStore(String prompt) {
+        synchronized (lockFor(prompt)) {
+            CachedEntry current = cache.peek(prompt);
+            if (current != null) {
+                return current;
+            }
+
+            StoredResponses stored = loadStored(prompt);
+            if (stored == null) {
+                return null;
+            }
+
+            CachedEntry entry = CachedEntry.of(prompt, stored.responses(), stored.updatedAt());
+            cache.put(prompt, entry);
+            hotPromptsByHash.put(ConversationIndex.hash(prompt), prompt);
+            logger.debug("Loaded {} response(s) from store for prompt: {}", stored.responses().size(), prompt);
+            return entry;
+        }
     }
 
-    private void saveConversationToFile(String prompt, String response) {
+    private StoredResponses loadStored(String prompt) {
         try {
-            if (CONVERSATION_FILE.getParent() != null && !Files.exists(CONVERSATION_FILE.getParent())) {
-                Files.createDirectories(CONVERSATION_FILE.getParent());
+            StoredResponses stored = store.load(prompt, maxResponsesPerPrompt);
+            return stored == null || stored.responses().isEmpty() ? null : stored;
+        } catch (RuntimeException e) {
+            logger.warn("Cache store lookup failed for prompt {}: {}", prompt, e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean isExpired(CachedEntry entry, long now) {
+        return !ttl.isZero() && !ttl.isNegative() && now - entry.updatedAt() > ttl.toMillis();
+    }
+
+    private void addToCache(String prompt, String response, long timestamp) {
+        // The cache lock is held per call only, so read-modify-write under a striped lock to keep concurrent appends.
+        synchronized (lockFor(prompt)) {
+            CachedEntry existing = cache.peek(prompt);
+            List<String> responses = new ArrayList<>();
+            if (existing != null) {
+                responses.addAll(existing.responses());
+            } else {
+                // Not hot: start from what the store already holds for the prompt.
+                StoredResponses stored = loadStored(prompt);
+                if (stored != null) {
+                    responses.addAll(stored.responses());
+                }
             }
+            responses.add(response);
+            if (responses.size() > maxResponsesPerPrompt) {
+                responses = responses.subList(responses.size() - maxResponsesPerPrompt, responses.size());
+            }
+            cache.put(prompt, CachedEntry.of(prompt, responses, timestamp));
+            hotPromptsByHash.put(ConversationIndex.hash(prompt), prompt);
+        }
+    }
 
-            JsonObject obj = new JsonObject();
-            obj.addProperty("prompt", prompt);
-            obj.addProperty("response", response);
-            obj.addProperty("timestamp", Instant.now().toString());
+    private void forgetHot(String prompt) {
+        hotPromptsByHash.remove(ConversationIndex.hash(prompt), prompt);
+    }
 
-            String jsonLine = gson.toJson(obj) + System.lineSeparator();
+    private Object lockFor(String prompt) {
+        return appendLocks[Math.floorMod(prompt.hashCode(), LOCK_STRIPES)];
+    }
 
-            Files.writeString(CONVERSATION_FILE, jsonLine, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-            logger.debug("Saved conversation to file: {}", CONVERSATION_FILE);
-        } catch (IOException e) {
-            logger.error("Failed to save conversation to file: {}", e.getMessage());
+    public int pendingWrites() {
+        return store.pendingWrites();
+    }
+
+    public LogWriterStats getWriterStats() {
+        return store.getWriterStats();
+    }
+
+    /**
+     * Flushes pending store writes and persists what the store needs for a fast restart.
+     */
+    @Override
+    public void close() {
+        store.close();
+        if (similarityIndex != null) {
+            similarityIndex.close();
+        }
+        hotPrompts.close();
+    }
+
+    private record CachedEntry(List<String> responses, long updatedAt, long bytes, AtomicInteger served) {
+
+        static CachedEntry of(String prompt, List<String> responses, long updatedAt) {
+            long bytes = ENTRY_OVERHEAD_BYTES + 2L * prompt.length();
+            for (String response : responses) {
+                bytes += 2L * response.length();
+            }
+            return new CachedEntry(List.copyOf(responses), updatedAt, bytes, new AtomicInteger());
         }
     }
 }
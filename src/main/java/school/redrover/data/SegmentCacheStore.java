@@ -0,0 +1,340 @@
+package school.redrover.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The conversation log as a directory of generations: the newest is an ordinary JSONL log taking
+ * appends, every older one is a sealed {@link ConversationSegment}. Once the head log reaches the
+ * segment size it is sealed in the background and a new head is started. Loads read the head
+ * first, then segments from newest to oldest until they have enough responses.
+ */
+public class SegmentCacheStore implements CacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentCacheStore.class);
+
+    private static final Pattern GENERATION_FILE = Pattern.compile("segment-(\\d+)\\.(jsonl|seg)");
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean sealing = new AtomicBoolean();
+    private final AtomicInteger headRecords = new AtomicInteger();
+    private final ExecutorService sealer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-sealer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Oldest first; replaced, never modified, under the write lock.
+     */
+    private volatile List<ConversationSegment> segments = List.of();
+    private JsonlCacheStore head;
+    private long headGeneration;
+
+    public SegmentCacheStore(Path directory, int segmentRecords) {
+        if (segmentRecords < 1) {
+            throw new IllegalArgumentException("segmentRecords must be positive: " + segmentRecords);
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open segment directory " + directory, e);
+        }
+    }
+
+    private void open() throws IOException {
+        TreeSet<Long> sealed = new TreeSet<>();
+        TreeSet<Long> logs = new TreeSet<>();
+        listGenerations(directory, sealed, logs);
+
+        // A log whose segment exists was sealed but not yet deleted when the process stopped.
+        for (Long generation : logs) {
+            if (sealed.contains(generation)) {
+                deleteLog(generation);
+            }
+        }
+        logs.removeAll(sealed);
+
+        long last = Math.max(sealed.isEmpty() ? 0L : sealed.last(), logs.isEmpty() ? 0L : logs.last());
+        for (Long generation : logs.headSet(last)) {
+            seal(new JsonlCacheStore(logFile(generation)), generation);
+            sealed.add(generation);
+        }
+
+        List<ConversationSegment> opened = new ArrayList<>();
+        for (Long generation : sealed) {
+            opened.add(ConversationSegment.open(segmentFile(generation)));
+        }
+        segments = List.copyOf(opened);
+
+        headGeneration = logs.contains(last) ? last : last + 1;
+        head = new JsonlCacheStore(logFile(headGeneration));
+        head.forEachRecord(record -> headRecords.incrementAndGet());
+        logger.info("Opened segmented conversation log {}: {} segment(s), {} record(s) in head generation {}",
+                directory, segments.size(), headRecords.get(), headGeneration);
+    }
+
+    /**
+     * Converts a JSONL conversation log into sealed segments of {@code segmentRecords} records,
+     * numbered after any generation already in {@code directory}. The log itself is left alone.
+     *
+     * @return the number of records converted
+     */
+    public static long importLog(Path conversationFile, Path directory, int segmentRecords) throws IOException {
+        Files.createDirectories(directory);
+        long[] generation = {lastGeneration(directory)};
+        long[] converted = {0L};
+        List<ConversationRecord> batch = new ArrayList<>(segmentRecords);
+        try {
+            JsonlCacheStore.readRecords(conversationFile, record -> {
+                batch.add(record);
+                if (batch.size() == segmentRecords) {
+                    try {
+                        ConversationSegment.write(segmentFile(directory, ++generation[0]), batch);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    converted[0] += batch.size();
+                    batch.clear();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!batch.isEmpty()) {
+            ConversationSegment.write(segmentFile(directory, ++generation[0]), batch);
+            converted[0] += batch.size();
+        }
+        return converted[0];
+    }
+
+    /**
+     * Writes every record in {@code directory}, oldest first, as a JSONL conversation log.
+     *
+     * @return the number of records exported
+     */
+    public static long exportLog(Path directory, Path conversationFile) throws IOException {
+        TreeSet<Long> sealed = new TreeSet<>();
+        TreeSet<Long> logs = new TreeSet<>();
+        listGenerations(directory, sealed, logs);
+        TreeSet<Long> generations = new TreeSet<>(sealed);
+        generations.addAll(logs);
+
+        long[] exported = {0L};
+        try (BufferedWriter out = Files.newBufferedWriter(conversationFile, StandardCharsets.UTF_8)) {
+            Consumer<ConversationRecord> writeLine = record -> {
+                try {
+                    out.write(ConversationLogWriter.toJsonLine(record));
+                    out.newLine();
+                    exported[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            for (Long generation : generations) {
+                if (sealed.contains(generation)) {
+                    try (ConversationSegment segment = ConversationSegment.open(segmentFile(directory, generation))) {
+                        segment.forEach(writeLine);
+                    }
+                } else {
+                    JsonlCacheStore.readRecords(logFile(directory, generation), writeLine);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return exported[0];
+    }
+
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        lock.readLock().lock();
+        try {
+            Deque<String> responses = new ArrayDeque<>();
+            long updatedAt = prepend(responses, head.load(prompt, limit), 0L);
+            List<ConversationSegment> current = segments;
+            for (int i = current.size() - 1; i >= 0 && responses.size() < limit; i--) {
+                updatedAt = prepend(responses, current.get(i).find(prompt, limit - responses.size()), updatedAt);
+            }
+            return responses.isEmpty() ? null : new StoredResponses(List.copyOf(responses), updatedAt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long prepend(Deque<String> responses, StoredResponses older, long updatedAt) {
+        if (older == null) {
+            return updatedAt;
+        }
+        List<String> list = older.responses();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            responses.addFirst(list.get(i));
+        }
+        return Math.max(updatedAt, older.updatedAt());
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        lock.readLock().lock();
+        try {
+            head.append(record);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (headRecords.incrementAndGet() >= segmentRecords && sealing.compareAndSet(false, true)) {
+            sealer.execute(this::rollHead);
+        }
+    }
+
+    /**
+     * Seals the head log into a segment and starts the next generation. Loads and appends wait for
+     * the seal, which is bounded by the segment size.
+     */
+    private void rollHead() {
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            long generation = headGeneration;
+            ConversationSegment segment = seal(head, generation);
+            List<ConversationSegment> next = new ArrayList<>(segments);
+            next.add(segment);
+            segments = List.copyOf(next);
+
+            headGeneration = generation + 1;
+            head = new JsonlCacheStore(logFile(headGeneration));
+            headRecords.set(0);
+            logger.info("Sealed conversation log generation {} ({} records) in {} ms",
+                    generation, segment.recordCount(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to seal conversation log generation {}: {}", headGeneration, e.getMessage());
+        } finally {
+            sealing.set(false);
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drains and closes {@code log}, writes its records as a segment, then deletes the log.
+     */
+    private ConversationSegment seal(JsonlCacheStore log, long generation) throws IOException {
+        log.close();
+        List<ConversationRecord> records = new ArrayList<>();
+        log.forEachRecord(records::add);
+        Path file = segmentFile(generation);
+        ConversationSegment.write(file, records);
+        deleteLog(generation);
+        return ConversationSegment.open(file);
+    }
+
+    private void deleteLog(long generation) throws IOException {
+        Path log = logFile(generation);
+        Files.deleteIfExists(log);
+        Files.deleteIfExists(JsonlCacheStore.siblingFile(log, ".idx"));
+    }
+
+    private Path logFile(long generation) {
+        return logFile(directory, generation);
+    }
+
+    private Path segmentFile(long generation) {
+        return segmentFile(directory, generation);
+    }
+
+    private static Path logFile(Path directory, long generation) {
+        return directory.resolve("segment-" + generation + ".jsonl");
+    }
+
+    private static Path segmentFile(Path directory, long generation) {
+        return directory.resolve("segment-" + generation + ".seg");
+    }
+
+    private static void listGenerations(Path directory, Set<Long> sealed, Set<Long> logs) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = GENERATION_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    (matcher.group(2).equals("seg") ? sealed : logs).add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+    }
+
+    private static long lastGeneration(Path directory) throws IOException {
+        TreeSet<Long> generations = new TreeSet<>();
+        listGenerations(directory, generations, generations);
+        return generations.isEmpty() ? 0L : generations.last();
+    }
+
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        lock.readLock().lock();
+        try {
+            for (ConversationSegment segment : segments) {
+                segment.forEachPrompt(action);
+            }
+            head.forEachPrompt(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int pendingWrites() {
+        return head.pendingWrites();
+    }
+
+    @Override
+    public LogWriterStats getWriterStats() {
+        return head.getWriterStats();
+    }
+
+    @Override
+    public void close() {
+        sealer.shutdown();
+        try {
+            sealer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            head.close();
+            for (ConversationSegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package school.redrover.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Segmented LRU: new keys land in a probation segment and are promoted to the
+ * protected segment on their second access, so one-off prompts cannot flush
+ * the frequently asked ones. Bounded by entry count and by total weight.
+ */
+public class SegmentedLruCache<K, V> {
+
+    private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>();
+
+    private final int maxEntries;
+    private final int maxProtectedEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<K, V> evictionListener;
+
+    private long weight;
+
+    public SegmentedLruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxEntries = maxEntries;
+        this.maxProtectedEntries = Math.max(1, maxEntries * 4 / 5);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+    }
+
+    public synchronized V get(K key) {
+        V value = protectedSegment.remove(key);
+        if (value != null) {
+            protectedSegment.put(key, value);
+            return value;
+        }
+
+        value = probation.remove(key);
+        if (value != null) {
+            protectedSegment.put(key, value);
+            demoteOverflow();
+        }
+        return value;
+    }
+
+    public synchronized V peek(K key) {
+        V value = protectedSegment.get(key);
+        return value != null ? value : probation.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        V previous = protectedSegment.remove(key);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+            protectedSegment.put(key, value);
+        } else {
+            previous = probation.remove(key);
+            if (previous != null) {
+                weight -= weigher.applyAsLong(previous);
+                protectedSegment.put(key, value);
+                demoteOverflow();
+            } else {
+                probation.put(key, value);
+            }
+        }
+        weight += weigher.applyAsLong(value);
+        evictOverflow();
+    }
+
+    public synchronized V remove(K key) {
+        V value = protectedSegment.remove(key);
+        if (value == null) {
+            value = probation.remove(key);
+        }
+        if (value != null) {
+            weight -= weigher.applyAsLong(value);
+        }
+        return value;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private void demoteOverflow() {
+        while (protectedSegment.size() > maxProtectedEntries) {
+            Iterator<Map.Entry<K, V>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<K, V> entry = eldest.next();
+            eldest.remove();
+            probation.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void evictOverflow() {
+        while (size() > maxEntries || (weight > maxWeight && size() > 1)) {
+            LinkedHashMap<K, V> victimSegment = probation.isEmpty() ? protectedSegment : probation;
+            Iterator<Map.Entry<K, V>> eldest = victimSegment.entrySet().iterator();
+            Map.Entry<K, V> entry = eldest.next();
+            eldest.remove();
+            weight -= weigher.applyAsLong(entry.getValue());
+            evictionListener.accept(entry.getKey(), entry.getValue());
+        }
+    }
+}
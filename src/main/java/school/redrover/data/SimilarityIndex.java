@@ -0,0 +1,259 @@
+package school.redrover.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Near-duplicate prompt lookup. Each distinct canonical prompt gets a MinHash signature over
+ * character 4-grams, bucketed with LSH (16 bands of 4 rows) so a query only compares against
+ * prompts that collide in at least one band. Signatures are appended to a file next to the
+ * conversation log and reloaded at startup.
+ */
+public class SimilarityIndex implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityIndex.class);
+
+    private static final int SIGNATURE_SIZE = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = SIGNATURE_SIZE / BANDS;
+    private static final int SHINGLE = 4;
+    private static final long[] SEEDS = new long[SIGNATURE_SIZE];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    public record Match(String prompt, double similarity) {
+    }
+
+    private record Entry(String prompt, int[] signature) {
+    }
+
+    private final Path file;
+    private final double threshold;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> byCanonical = new HashMap<>();
+    private final List<Map<Long, List<Integer>>> buckets = new ArrayList<>(BANDS);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private DataOutputStream out;
+
+    public SimilarityIndex(Path file, double threshold) {
+        this.file = file;
+        this.threshold = threshold;
+        for (int i = 0; i < BANDS; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Loads persisted signatures. A truncated trailing record (crash mid-append) is ignored.
+     */
+    public void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] promptBytes = new byte[in.readInt()];
+                in.readFully(promptBytes);
+                int[] signature = new int[SIGNATURE_SIZE];
+                for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                    signature[i] = in.readInt();
+                }
+                String prompt = new String(promptBytes, StandardCharsets.UTF_8);
+                insert(PromptNormalizer.canonicalize(prompt), prompt, signature);
+            }
+        } catch (EOFException ignored) {
+            // End of file.
+        } catch (IOException e) {
+            logger.error("Failed to load similarity index {}: {}", file, e.getMessage());
+        }
+        logger.info("Loaded similarity index {} with {} prompts", file, entries.size());
+    }
+
+    /**
+     * Indexes the prompt unless an equivalent canonical prompt is already present, and persists
+     * the new signature.
+     */
+    public void add(String prompt) {
+        String canonical = PromptNormalizer.canonicalize(prompt);
+        if (canonical.isEmpty()) {
+            return;
+        }
+        int[] signature = signature(canonical);
+        lock.writeLock().lock();
+        try {
+            if (byCanonical.containsKey(canonical)) {
+                return;
+            }
+            insert(canonical, prompt, signature);
+            persist(prompt, signature);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the indexed prompt most similar to {@code prompt} at or above the threshold, or
+     * {@code null}. Canonically equal prompts match with similarity 1.0.
+     */
+    public Match findSimilar(String prompt) {
+        String canonical = PromptNormalizer.canonicalize(prompt);
+        if (canonical.isEmpty()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Integer exact = byCanonical.get(canonical);
+            if (exact != null) {
+                return new Match(entries.get(exact).prompt(), 1.0);
+            }
+            if (threshold >= 1.0) {
+                return null;
+            }
+
+            int[] signature = signature(canonical);
+            Match best = null;
+            for (int band = 0; band < BANDS; band++) {
+                List<Integer> candidates = buckets.get(band).get(bandKey(signature, band));
+                if (candidates == null) {
+                    continue;
+                }
+                for (int id : candidates) {
+                    Entry candidate = entries.get(id);
+                    double similarity = estimateSimilarity(signature, candidate.signature());
+                    if (similarity >= threshold && (best == null || similarity > best.similarity())) {
+                        best = new Match(candidate.prompt(), similarity);
+                    }
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insert(String canonical, String prompt, int[] signature) {
+        if (byCanonical.containsKey(canonical)) {
+            return;
+        }
+        int id = entries.size();
+        entries.add(new Entry(prompt, signature));
+        byCanonical.put(canonical, id);
+        for (int band = 0; band < BANDS; band++) {
+            buckets.get(band).computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>(1)).add(id);
+        }
+    }
+
+    private void persist(String prompt, int[] signature) {
+        try {
+            if (out == null) {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            }
+            byte[] promptBytes = prompt.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(promptBytes.length);
+            out.write(promptBytes);
+            for (int value : signature) {
+                out.writeInt(value);
+            }
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Failed to persist similarity signature to {}: {}", file, e.getMessage());
+        }
+    }
+
+    static int[] signature(String canonical) {
+        int[] signature = new int[SIGNATURE_SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        String text = canonical.length() < SHINGLE ? canonical : null;
+        int shingles = text != null ? 1 : canonical.length() - SHINGLE + 1;
+        for (int s = 0; s < shingles; s++) {
+            long shingleHash = text != null ? text.hashCode() : canonical.substring(s, s + SHINGLE).hashCode();
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                int h = (int) mix(shingleHash ^ SEEDS[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int r = 0; r < ROWS; r++) {
+            key = key * 31 + signature[band * ROWS + r];
+        }
+        return mix(key);
+    }
+
+    private static double estimateSimilarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_SIZE;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb93fe53e87bL;
+        return z ^ (z >>> 33);
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to close similarity index {}: {}", file, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package school.redrover.data;
+
+import java.util.List;
+
+/**
+ * A prompt's newest responses, oldest first, and when the newest was saved.
+ */
+public record StoredResponses(List<String> responses, long updatedAt) {
+}
@@ -0,0 +1,187 @@
+package school.redrover.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Takes appends off the request path for a slow (typically remote) store: records are queued and
+ * written through by one background thread in batches. Loads see queued records for their prompt,
+ * so a response is readable as soon as it is accepted. When the queue is full, records are dropped
+ * rather than blocking callers.
+ */
+public class WriteBehindCacheStore implements CacheStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindCacheStore.class);
+
+    private static final int MAX_BATCH = 256;
+
+    private final CacheStore delegate;
+    private final BlockingQueue<ConversationRecord> queue;
+    private final ConcurrentHashMap<String, List<ConversationRecord>> pendingByPrompt = new ConcurrentHashMap<>();
+    private final Thread writerThread;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public WriteBehindCacheStore(CacheStore delegate, int queueCapacity) {
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writerThread = new Thread(this::runLoop, "cache-write-behind");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Copies the queued records before reading the delegate: a record written through in between
+     * is then seen in one or the other, never missed. Queued records the delegate already returns
+     * are not repeated.
+     */
+    @Override
+    public StoredResponses load(String prompt, int limit) {
+        List<ConversationRecord> pending = pendingSnapshot(prompt);
+        StoredResponses stored = delegate.load(prompt, limit);
+        if (pending.isEmpty()) {
+            return stored;
+        }
+
+        List<String> storedResponses = stored != null ? stored.responses() : List.of();
+        List<String> responses = new ArrayList<>(storedResponses);
+        long updatedAt = stored != null ? stored.updatedAt() : 0L;
+        for (ConversationRecord record : pending) {
+            if (!storedResponses.contains(record.response())) {
+                responses.add(record.response());
+                updatedAt = Math.max(updatedAt, record.timestamp());
+            }
+        }
+        if (responses.isEmpty()) {
+            return stored;
+        }
+        if (responses.size() > limit) {
+            responses = responses.subList(responses.size() - limit, responses.size());
+        }
+        return new StoredResponses(List.copyOf(responses), updatedAt);
+    }
+
+    private List<ConversationRecord> pendingSnapshot(String prompt) {
+        List<ConversationRecord> pending = pendingByPrompt.get(prompt);
+        if (pending == null) {
+            return List.of();
+        }
+        synchronized (pending) {
+            return List.copyOf(pending);
+        }
+    }
+
+    @Override
+    public void append(ConversationRecord record) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        pendingByPrompt.compute(record.prompt(), (prompt, pending) -> {
+            List<ConversationRecord> records = pending != null ? pending : new ArrayList<>();
+            synchronized (records) {
+                records.add(record);
+            }
+            return records;
+        });
+        if (!queue.offer(record)) {
+            forget(record);
+            dropped.incrementAndGet();
+            logger.warn("Cache write-behind queue is full ({} pending), dropping record for prompt: {}",
+                    queue.size(), record.prompt());
+        }
+    }
+
+    private void runLoop() {
+        List<ConversationRecord> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                ConversationRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                writeBatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                if (closed) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<ConversationRecord> batch) {
+        long start = System.nanoTime();
+        for (ConversationRecord record : batch) {
+            try {
+                delegate.append(record);
+                records.incrementAndGet();
+            } catch (RuntimeException e) {
+                dropped.incrementAndGet();
+                logger.warn("Failed to write cached response for prompt {}: {}", record.prompt(), e.getMessage());
+            } finally {
+                forget(record);
+            }
+        }
+        batches.incrementAndGet();
+        writeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void forget(ConversationRecord record) {
+        pendingByPrompt.computeIfPresent(record.prompt(), (prompt, pending) -> {
+            synchronized (pending) {
+                pending.remove(record);
+                return pending.isEmpty() ? null : pending;
+            }
+        });
+    }
+
+    @Override
+    public void forEachPrompt(Consumer<String> action) {
+        delegate.forEachPrompt(action);
+    }
+
+    @Override
+    public int pendingWrites() {
+        return queue.size();
+    }
+
+    @Override
+    public LogWriterStats getWriterStats() {
+        return new LogWriterStats(batches.get(), records.get(), dropped.get(), writeNanos.get(), queue.size());
+    }
+
+    /**
+     * Writes through whatever is still queued, then closes the underlying store.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.warn("Closing cache store with {} unwritten record(s)", queue.size());
+        }
+        delegate.close();
+    }
+}
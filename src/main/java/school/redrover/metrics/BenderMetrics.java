@@ -0,0 +1,172 @@
+package school.redrover.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.EventListener;
+import school.redrover.api.BatchingLlmClient;
+import school.redrover.api.LlmRouter;
+import school.redrover.api.TokenCounter;
+import school.redrover.data.ResponseCache;
+import school.redrover.service.ClientRateLimiter;
+import school.redrover.service.ConcurrencyLimiter;
+import school.redrover.service.ResponseRefresher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters and trace observations for the request path. The web app binds it to the actuator's
+ * registries; the CLI uses a private in-memory registry and no tracing.
+ */
+public class BenderMetrics {
+
+    private final MeterRegistry registry;
+    private final ObservationRegistry observations;
+    private final DistributionSummary promptTokens;
+    private final DistributionSummary responseTokens;
+
+    public BenderMetrics(MeterRegistry registry, ObservationRegistry observations) {
+        this.registry = registry;
+        this.observations = observations;
+        this.promptTokens = DistributionSummary.builder("bender.prompt.tokens")
+                .description("Estimated tokens per prompt sent upstream")
+                .baseUnit("tokens")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.responseTokens = DistributionSummary.builder("bender.response.tokens")
+                .description("Estimated tokens per upstream response")
+                .baseUnit("tokens")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public static BenderMetrics local() {
+        return new BenderMetrics(new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+    }
+
+    public MeterRegistry registry() {
+        return registry;
+    }
+
+    public Observation observation(String name, String contextualName) {
+        return Observation.createNotStarted(name, observations).contextualName(contextualName);
+    }
+
+    public EventListener.Factory upstreamListenerFactory() {
+        return call -> new UpstreamEventListener(registry);
+    }
+
+    /**
+     * Records batch size, how long the first prompt lingered, and upstream latency per backend.
+     */
+    public BatchingLlmClient.Listener batchListener() {
+        return (backend, size, lingerNanos, latencyNanos, failed) -> {
+            DistributionSummary.builder("bender.llm.batch.size")
+                    .description("Prompts per upstream request")
+                    .tag("backend", backend)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(size);
+            Timer.builder("bender.llm.batch.linger")
+                    .description("Time the first prompt of a batch waited for others")
+                    .tag("backend", backend)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(lingerNanos, TimeUnit.NANOSECONDS);
+            Timer.builder("bender.llm.batch.latency")
+                    .description("Upstream latency of a batched request")
+                    .tags("backend", backend, "outcome", failed ? "error" : "success")
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(latencyNanos, TimeUnit.NANOSECONDS);
+        };
+    }
+
+    public void recordTokens(String prompt, String response) {
+        promptTokens.record(TokenCounter.count(prompt));
+        responseTokens.record(TokenCounter.count(response));
+    }
+
+    public void bindCache(ResponseCache cache) {
+        FunctionCounter.builder("bender.cache.requests", cache, c -> c.getStats().hits())
+                .tag("result", "hit").description("Cache lookups").register(registry);
+        FunctionCounter.builder("bender.cache.requests", cache, c -> c.getStats().misses())
+                .tag("result", "miss").description("Cache lookups").register(registry);
+        FunctionCounter.builder("bender.cache.similar.hits", cache, c -> c.getStats().similarHits())
+                .description("Exact misses served from a canonically equal or similar prompt").register(registry);
+        FunctionCounter.builder("bender.cache.evictions", cache, c -> c.getStats().evictions())
+                .description("Entries evicted for size or TTL").register(registry);
+        Gauge.builder("bender.cache.entries", cache, c -> c.getStats().entries())
+                .description("Prompts held on-heap").register(registry);
+        Gauge.builder("bender.cache.size", cache, c -> c.getStats().bytes())
+                .baseUnit("bytes").description("Estimated on-heap size of cached entries").register(registry);
+
+        FunctionTimer.builder("bender.log.append", cache,
+                        c -> c.getWriterStats().batches(), c -> c.getWriterStats().writeNanos(), TimeUnit.NANOSECONDS)
+                .description("Conversation log batch writes").register(registry);
+        FunctionCounter.builder("bender.log.records", cache, c -> c.getWriterStats().records())
+                .tag("result", "written").register(registry);
+        FunctionCounter.builder("bender.log.records", cache, c -> c.getWriterStats().dropped())
+                .tag("result", "dropped").register(registry);
+        Gauge.builder("bender.log.queue.depth", cache, ResponseCache::pendingWrites)
+                .description("Records waiting for the log writer").register(registry);
+    }
+
+    public void bindLimiter(ConcurrencyLimiter limiter) {
+        FunctionTimer.builder("bender.limiter.queue.wait", limiter,
+                        ConcurrencyLimiter::admittedCount, l -> l.totalQueueTime().toNanos(), TimeUnit.NANOSECONDS)
+                .description("Time spent waiting for an upstream slot").register(registry);
+        Gauge.builder("bender.limiter.queue.max.wait", limiter, l -> l.maxObservedQueueTime().toMillis())
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder("bender.limiter.active", limiter, ConcurrencyLimiter::activeCount).register(registry);
+        Gauge.builder("bender.limiter.queued", limiter, ConcurrencyLimiter::queuedCount).register(registry);
+        FunctionCounter.builder("bender.limiter.rejected", limiter, ConcurrencyLimiter::rejectedCount)
+                .register(registry);
+        Gauge.builder("bender.limiter.token.budget", limiter, ConcurrencyLimiter::availableTokenBudget)
+                .description("Model tokens left in the per-minute budget").register(registry);
+    }
+
+    public void bindRefresher(ResponseRefresher refresher) {
+        FunctionCounter.builder("bender.cache.refresh", refresher, ResponseRefresher::refreshedCount)
+                .tag("result", "refreshed").register(registry);
+        FunctionCounter.builder("bender.cache.refresh", refresher, ResponseRefresher::failedCount)
+                .tag("result", "failed").register(registry);
+        FunctionCounter.builder("bender.cache.refresh", refresher, ResponseRefresher::deferredCount)
+                .tag("result", "deferred").description("Refreshes held back while upstream was busy")
+                .register(registry);
+        Gauge.builder("bender.cache.refresh.pending", refresher, ResponseRefresher::pendingCount).register(registry);
+    }
+
+    public void bindRateLimiter(ClientRateLimiter rateLimiter) {
+        FunctionCounter.builder("bender.ratelimit.requests", rateLimiter, ClientRateLimiter::allowedCount)
+                .tag("result", "allowed").description("Per-client admission decisions").register(registry);
+        FunctionCounter.builder("bender.ratelimit.requests", rateLimiter, ClientRateLimiter::rejectedCount)
+                .tag("result", "rejected").description("Per-client admission decisions").register(registry);
+        Gauge.builder("bender.ratelimit.clients", rateLimiter, ClientRateLimiter::clientCount)
+                .description("Clients with a tracked bucket").register(registry);
+    }
+
+    public void bindRouter(LlmRouter router) {
+        for (LlmRouter.Route route : router.getRoutes()) {
+            FunctionCounter.builder("bender.llm.calls", route, LlmRouter.Route::successCount)
+                    .tags("backend", route.name(), "result", "success").description("Calls per backend").register(registry);
+            FunctionCounter.builder("bender.llm.calls", route, LlmRouter.Route::failureCount)
+                    .tags("backend", route.name(), "result", "failure").description("Calls per backend").register(registry);
+            Gauge.builder("bender.llm.latency", route, r -> r.averageLatency().toMillis())
+                    .tag("backend", route.name()).baseUnit("milliseconds")
+                    .description("Moving average latency the router orders backends by").register(registry);
+            Gauge.builder("bender.llm.healthy", route, r -> r.isHealthy() ? 1 : 0)
+                    .tag("backend", route.name()).register(registry);
+        }
+        FunctionCounter.builder("bender.llm.hedges", router, LlmRouter::hedgedCount)
+                .description("Calls also sent to a second backend after the hedge delay").register(registry);
+        FunctionCounter.builder("bender.llm.failovers", router, LlmRouter::failoverCount)
+                .description("Calls retried on another backend after an error").register(registry);
+    }
+}
@@ -0,0 +1,81 @@
+package school.redrover.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call OkHttp listener splitting upstream latency into connect, time to first byte and total,
+ * and counting responses by status class. Pooled connections record no connect phase.
+ */
+class UpstreamEventListener extends EventListener {
+
+    private final MeterRegistry registry;
+
+    private long callStart;
+    private long connectStart;
+    private String status = "IO_ERROR";
+
+    UpstreamEventListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+        record("connect", System.nanoTime() - connectStart);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        record("ttfb", System.nanoTime() - callStart);
+        status = (response.code() / 100) + "xx";
+        registry.counter("bender.upstream.responses", "status", status).increment();
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        recordTotal();
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        registry.counter("bender.upstream.responses", "status", "IO_ERROR").increment();
+        recordTotal();
+    }
+
+    private void recordTotal() {
+        Timer.builder("bender.upstream.latency")
+                .tag("phase", "total")
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - callStart, TimeUnit.NANOSECONDS);
+    }
+
+    private void record(String phase, long nanos) {
+        Timer.builder("bender.upstream.latency")
+                .tag("phase", phase)
+                .tag("status", "n/a")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,17 @@
+package school.redrover.service;
+
+/**
+ * One line of a batch answer. {@code index} is the prompt's position in the request, since results
+ * arrive in completion order.
+ */
+public record BatchResult(int index, String prompt, String status, boolean cached, String response, String error,
+                          long latencyMillis) {
+
+    public static BatchResult ok(int index, String prompt, boolean cached, String response, long latencyMillis) {
+        return new BatchResult(index, prompt, "ok", cached, response, null, latencyMillis);
+    }
+
+    public static BatchResult error(int index, String prompt, String error, long latencyMillis) {
+        return new BatchResult(index, prompt, "error", false, null, error, latencyMillis);
+    }
+}
@@ -0,0 +1,549 @@
+package school.redrover.service;
+
+import io.micrometer.observation.Observation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import school.redrover.api.LlmClient;
+import school.redrover.api.TokenCounter;
+import school.redrover.data.CacheStats;
+import school.redrover.data.CachedAnswer;
+import school.redrover.data.HotPromptTracker;
+import school.redrover.data.PromptNormalizer;
+import school.redrover.data.ResponseCache;
+import school.redrover.data.SimilarityIndex;
+import school.redrover.metrics.BenderMetrics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Cache-first prompt answering shared by the CLI and the web controller. Cache misses for the
+ * same normalized prompt are coalesced so a burst of identical questions costs one upstream
+ * call and one log write.
+ */
+public class BenderService implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenderService.class);
+
+    private static final Duration IN_FLIGHT_TIMEOUT = Duration.ofSeconds(
+            Long.getLong("bender.in-flight.timeout-seconds", 60L)
+    );
+
+    private final LlmClient llm;
+    private final ResponseCache cache;
+    private final SingleFlight<String, String> inFlight = new SingleFlight<>();
+    private final Duration inFlightTimeout;
+    private final ConcurrencyLimiter upstreamLimiter;
+    private final BenderMetrics metrics;
+    private final ConversationStore conversations;
+    private ResponseRefresher refresher;
+    private Predicate<String> refreshable = prompt -> false;
+
+    public BenderService(LlmClient llm, ResponseCache cache) {
+        this(llm, cache, IN_FLIGHT_TIMEOUT, new ConcurrencyLimiter(
+                Integer.getInteger("bender.upstream.max-concurrent", 64),
+                Integer.getInteger("bender.upstream.max-queued", 1_000),
+                Duration.ofMillis(Long.getLong("bender.upstream.max-queue-time-ms", 30_000L))
+        ), BenderMetrics.local(), new ConversationStore());
+    }
+
+    public BenderService(LlmClient llm, ResponseCache cache, Duration inFlightTimeout,
+                         ConcurrencyLimiter upstreamLimiter, BenderMetrics metrics, ConversationStore conversations) {
+        this.llm = llm;
+        this.cache = cache;
+        this.inFlightTimeout = inFlightTimeout;
+        this.upstreamLimiter = upstreamLimiter;
+        this.metrics = metrics;
+        this.conversations = conversations;
+    }
+
+    /**
+     * Keeps {@code refreshable} prompts fresh: once a cached answer passes the cache's soft TTL it
+     * is still served, and a new answer is fetched in the background. At most
+     * {@code maxConcurrent} refreshes run at once, and only while the upstream limiter is idle.
+     */
+    public BenderService withBackgroundRefresh(int maxConcurrent, Predicate<String> refreshable) {
+        this.refresher = new ResponseRefresher(upstreamLimiter, maxConcurrent, 10_000, this::upstreamCost,
+                prompt -> fetchAsync(prompt, null).thenApply(response -> {
+                    cache.saveResponse(prompt, response);
+                    return response;
+                }));
+        this.refreshable = refreshable;
+        return this;
+    }
+
+    /**
+     * Queues background fetches for the prompts that have no cached answer yet, so the first
+     * user to ask them after a restart does not wait on upstream. Requires
+     * {@link #withBackgroundRefresh}.
+     */
+    public void prewarm(Collection<String> prompts) {
+        if (refresher == null) {
+            throw new IllegalStateException("Background refresh is not enabled");
+        }
+        int queued = 0;
+        for (String prompt : prompts) {
+            if (cache.getResponse(prompt).isEmpty()) {
+                refresher.request(prompt);
+                queued++;
+            }
+        }
+        logger.info("Pre-warming {} of {} prompts", queued, prompts.size());
+    }
+
+    public ResponseRefresher getRefresher() {
+        return refresher;
+    }
+
+    public String ask(String prompt) throws IOException {
+        return metrics.observation("bender.ask", "ask").observeChecked(() -> {
+            String cached = cachedResponse(prompt);
+            if (cached != null) {
+                return cached;
+            }
+            String response = inFlight.execute(normalize(prompt), inFlightTimeout, () -> fetchAndCache(prompt));
+            return cacheJoined(prompt, response);
+        });
+    }
+
+    /**
+     * Flights are keyed by the normalized prompt, so a caller may have joined one started for a
+     * different spelling whose answer was cached only under the leader's prompt. Caches it under
+     * the caller's own prompt too, so the next exact ask is a hit.
+     */
+    private String cacheJoined(String prompt, String response) {
+        if (!cache.getResponse(prompt).contains(response)) {
+            cache.saveResponse(prompt, response);
+        }
+        return response;
+    }
+
+    /**
+     * Cache lookup traced as its own span, so cache time shows up between the controller and the
+     * upstream call. Returns {@code null} on a miss.
+     */
+    private String cachedResponse(String prompt) {
+        return metrics.observation("bender.cache.lookup", "cache lookup").observe(() -> {
+            String response = cache.isCached(prompt) ? cache.nextResponse(prompt) : null;
+            if (response == null) {
+                response = similarResponse(prompt);
+                cache.recordLookup(prompt, response != null);
+                return response;
+            }
+            cache.recordLookup(prompt, true);
+            refreshIfStale(prompt);
+            logger.info("Prompt (from cache): {}", prompt);
+            logger.info("Response (from cache): {}", response);
+            return response;
+        });
+    }
+
+    private String cachedAnswer(String prompt) {
+        return cache.isCached(prompt) ? cache.nextResponse(prompt) : null;
+    }
+
+    private void refreshIfStale(String prompt) {
+        if (refresher != null && refreshable.test(prompt) && cache.isStale(prompt)) {
+            refresher.request(prompt);
+        }
+    }
+
+    private String similarResponse(String prompt) {
+        SimilarityIndex.Match match = cache.findSimilar(prompt);
+        if (match == null) {
+            return null;
+        }
+        String response = cache.nextResponse(match.prompt());
+        if (response == null) {
+            return null;
+        }
+        refreshIfStale(match.prompt());
+        logger.info("Prompt (from cache, {} similar to '{}'): {}",
+                String.format(Locale.ROOT, "%.2f", match.similarity()), match.prompt(), prompt);
+        logger.info("Response (from cache): {}", response);
+        return response;
+    }
+
+    /**
+     * Non-blocking {@link #ask}: no thread is held while the upstream call is in flight, and
+     * concurrent misses beyond the upstream limit wait in the limiter's queue.
+     */
+    public CompletableFuture<String> askAsync(String prompt) {
+        return askAsyncFor(ConcurrencyLimiter.DEFAULT_CLIENT, prompt);
+    }
+
+    private CompletableFuture<String> askAsyncFor(String client, String prompt) {
+        Observation observation = metrics.observation("bender.ask", "ask").start();
+        try (Observation.Scope ignored = observation.openScope()) {
+            String cached = cachedResponse(prompt);
+            CompletableFuture<String> result = cached != null
+                    ? CompletableFuture.completedFuture(cached)
+                    : inFlight.executeAsync(normalize(prompt), inFlightTimeout,
+                    () -> upstreamLimiter.submit(client, upstreamCost(prompt),
+                            () -> fetchAndCacheAsync(prompt, observation)))
+                    .thenApply(response -> cacheJoined(prompt, response));
+            return result.whenComplete((response, error) -> {
+                if (error != null) {
+                    observation.error(error);
+                }
+                observation.stop();
+            });
+        }
+    }
+
+    private CompletableFuture<String> fetchAndCacheAsync(String prompt, Observation parent) {
+        String cached = cachedAnswer(prompt);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return fetchAsync(prompt, parent).thenApply(response -> {
+            cache.saveResponse(prompt, response);
+            logger.info("Prompt: {}", prompt);
+            logger.info("Response: {}", response);
+            return response;
+        });
+    }
+
+    private CompletableFuture<String> fetchAsync(String upstreamPrompt, Observation parent) {
+        Observation upstream = metrics.observation("bender.upstream", "upstream completion")
+                .parentObservation(parent)
+                .start();
+        long start = System.nanoTime();
+        CompletableFuture<String> call;
+        try (Observation.Scope ignored = upstream.openScope()) {
+            call = llm.getResponseAsync(upstreamPrompt);
+        }
+        return call.whenComplete((response, error) -> {
+            if (error != null) {
+                upstream.error(error);
+            } else {
+                cache.recordUpstream(upstreamPrompt, elapsedMillis(start));
+            }
+            upstream.stop();
+        }).thenApply(response -> {
+            if (response == null || response.trim().isEmpty()) {
+                logger.warn("Received empty response from OpenAI for prompt: {}", upstreamPrompt);
+                throw new CompletionException(new IOException("Received an empty response from the AI."));
+            }
+            metrics.recordTokens(upstreamPrompt, response);
+            return response;
+        });
+    }
+
+    /**
+     * {@link #askAsync(String)} within a session. The first turn of a session is answered like any
+     * other prompt; later turns send the session's budgeted context upstream and bypass the
+     * response cache, since their answers depend on that context. A {@code null} session id
+     * answers statelessly.
+     */
+    public CompletableFuture<String> askAsync(String sessionId, String prompt) {
+        return askAsync(ConcurrencyLimiter.DEFAULT_CLIENT, sessionId, prompt);
+    }
+
+    /**
+     * {@link #askAsync(String, String)} on behalf of {@code client}, whose upstream calls are fair
+     * queued against other clients' in the upstream limiter.
+     */
+    public CompletableFuture<String> askAsync(String client, String sessionId, String prompt) {
+        if (sessionId == null) {
+            return askAsyncFor(client, prompt);
+        }
+        Conversation conversation = conversations.get(sessionId);
+        CompletableFuture<String> answer;
+        if (conversation.isEmpty()) {
+            answer = askAsyncFor(client, prompt);
+        } else {
+            Observation observation = metrics.observation("bender.ask", "ask in context").start();
+            String context = conversation.assemble(prompt);
+            try (Observation.Scope ignored = observation.openScope()) {
+                answer = upstreamLimiter.submit(client, upstreamCost(context), () -> fetchAsync(context, observation))
+                        .whenComplete((response, error) -> {
+                            if (error != null) {
+                                observation.error(error);
+                            }
+                            observation.stop();
+                        });
+            }
+        }
+        return answer.thenApply(response -> {
+            conversation.record(prompt, response);
+            return response;
+        });
+    }
+
+    /**
+     * Blocking {@link #askAsync(String, String)}.
+     */
+    public String ask(String sessionId, String prompt) throws IOException {
+        if (sessionId == null) {
+            return ask(prompt);
+        }
+        Conversation conversation = conversations.get(sessionId);
+        String response;
+        if (conversation.isEmpty()) {
+            response = ask(prompt);
+        } else {
+            String context = conversation.assemble(prompt);
+            response = metrics.observation("bender.ask", "ask in context").observeChecked(() -> {
+                String answer = metrics.observation("bender.upstream", "upstream completion")
+                        .observeChecked(() -> llm.getResponse(context));
+                if (answer == null || answer.trim().isEmpty()) {
+                    logger.warn("Received empty response from OpenAI for prompt: {}", context);
+                    throw new IOException("Received an empty response from the AI.");
+                }
+                metrics.recordTokens(context, answer);
+                return answer;
+            });
+        }
+        conversation.record(prompt, response);
+        return response;
+    }
+
+    /**
+     * Streaming {@link #ask(String, String)}.
+     */
+    public String askStreaming(String sessionId, String prompt, Consumer<String> onToken) throws IOException {
+        if (sessionId == null) {
+            return askStreaming(prompt, onToken);
+        }
+        Conversation conversation = conversations.get(sessionId);
+        String response;
+        if (conversation.isEmpty()) {
+            response = askStreaming(prompt, onToken);
+        } else {
+            String context = conversation.assemble(prompt);
+            response = metrics.observation("bender.ask", "ask streaming in context").observeChecked(() -> {
+                String answer = metrics.observation("bender.upstream", "upstream completion")
+                        .observeChecked(() -> llm.streamResponse(context, onToken));
+                if (answer.isEmpty()) {
+                    logger.warn("Received empty streamed response from OpenAI for prompt: {}", context);
+                    throw new IOException("Received an empty response from the AI.");
+                }
+                metrics.recordTokens(context, answer);
+                return answer;
+            });
+        }
+        conversation.record(prompt, response);
+        return response;
+    }
+
+    /**
+     * The cached answer for a prompt key ({@link ResponseCache#keyOf}), without calling upstream.
+     * Stale answers are still returned and refreshed like any other cache hit.
+     */
+    public CachedAnswer lookup(String key) {
+        CachedAnswer answer = cache.findByKey(key);
+        if (answer != null) {
+            cache.recordLookup(answer.prompt(), true);
+            refreshIfStale(answer.prompt());
+        }
+        return answer;
+    }
+
+    /**
+     * Whether {@link #lookup} would find an answer for the key, without counting a lookup.
+     */
+    public boolean hasCachedAnswer(String key) {
+        return cache.findByKey(key) != null;
+    }
+
+    /**
+     * Lookup counts of the most requested prompts, with their cache hits and upstream latency.
+     */
+    public HotPromptTracker getHotPromptTracker() {
+        return cache.getHotPrompts();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    public ConversationStore getConversations() {
+        return conversations;
+    }
+
+    /**
+     * Answers every prompt, reporting each result to {@code onResult} as soon as it is ready. Cache
+     * hits are reported first, before any upstream call starts; misses are fanned out with at most
+     * {@code parallelism} of them in flight for this batch. The returned future completes once every
+     * prompt has been reported.
+     */
+    public CompletableFuture<Void> askBatch(List<String> prompts, int parallelism, Consumer<BatchResult> onResult) {
+        return askBatch(ConcurrencyLimiter.DEFAULT_CLIENT, prompts, parallelism, onResult);
+    }
+
+    public CompletableFuture<Void> askBatch(String client, List<String> prompts, int parallelism,
+                                            Consumer<BatchResult> onResult) {
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < prompts.size(); i++) {
+            long start = System.nanoTime();
+            String prompt = prompts.get(i);
+            if (prompt == null || prompt.isBlank()) {
+                onResult.accept(BatchResult.error(i, prompt, "Prompt cannot be null or empty.", 0L));
+            } else {
+                String cached = cachedResponse(prompt);
+                if (cached != null) {
+                    onResult.accept(BatchResult.ok(i, prompt, true, cached, elapsedMillis(start)));
+                } else {
+                    misses.add(i);
+                }
+            }
+        }
+        logger.info("Batch of {} prompt(s): {} cache hit(s), {} to fetch with parallelism {}",
+                prompts.size(), prompts.size() - misses.size(), misses.size(), parallelism);
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (misses.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(misses.size());
+        Runnable startNext = new Runnable() {
+            // Loops rather than recursing when a call completes on this stack (cache hits, rejections,
+            // an open breaker), so a large batch of fast failures cannot overflow the stack.
+            @Override
+            public void run() {
+                while (true) {
+                    int slot = next.getAndIncrement();
+                    if (slot >= misses.size()) {
+                        return;
+                    }
+                    int index = misses.get(slot);
+                    String prompt = prompts.get(index);
+                    long start = System.nanoTime();
+                    // 0: still registering, 1: completed on this stack, 2: will complete on another thread
+                    AtomicInteger state = new AtomicInteger();
+                    askAsyncFor(client, prompt).whenComplete((response, error) -> {
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                            onResult.accept(BatchResult.error(index, prompt, cause.getMessage(), elapsedMillis(start)));
+                        } else {
+                            onResult.accept(BatchResult.ok(index, prompt, false, response, elapsedMillis(start)));
+                        }
+                        if (remaining.decrementAndGet() == 0) {
+                            done.complete(null);
+                        } else if (!state.compareAndSet(0, 1)) {
+                            run();
+                        }
+                    });
+                    if (state.compareAndSet(0, 2)) {
+                        return;
+                    }
+                }
+            }
+        };
+        for (int i = 0; i < Math.max(1, parallelism); i++) {
+            startNext.run();
+        }
+        return done;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Tokens an upstream call may spend: the prompt plus the completion limit.
+     */
+    private long upstreamCost(String prompt) {
+        return TokenCounter.count(prompt) + llm.getMaxTokens();
+    }
+
+    public ConcurrencyLimiter getUpstreamLimiter() {
+        return upstreamLimiter;
+    }
+
+    /**
+     * Like {@link #ask} but forwards tokens to {@code onToken} as the upstream produces them.
+     * Cache hits and callers that joined someone else's in-flight request get the whole answer as
+     * a single token. The completed answer is cached either way.
+     */
+    public String askStreaming(String prompt, Consumer<String> onToken) throws IOException {
+        return metrics.observation("bender.ask", "ask streaming").observeChecked(() -> {
+            String cached = cachedResponse(prompt);
+            if (cached != null) {
+                onToken.accept(cached);
+                return cached;
+            }
+
+            AtomicBoolean streamed = new AtomicBoolean();
+            String response = inFlight.execute(normalize(prompt), inFlightTimeout, () -> {
+                String joined = cachedAnswer(prompt);
+                if (joined != null) {
+                    return joined;
+                }
+                streamed.set(true);
+                return streamAndCache(prompt, onToken);
+            });
+            if (!streamed.get()) {
+                onToken.accept(response);
+            }
+            return cacheJoined(prompt, response);
+        });
+    }
+
+    private String streamAndCache(String prompt, Consumer<String> onToken) throws IOException {
+        long start = System.nanoTime();
+        String response = metrics.observation("bender.upstream", "upstream completion")
+                .observeChecked(() -> llm.streamResponse(prompt, onToken));
+        cache.recordUpstream(prompt, elapsedMillis(start));
+        if (response.isEmpty()) {
+            logger.warn("Received empty streamed response from OpenAI for prompt: {}", prompt);
+            throw new IOException("Received an empty response from the AI.");
+        }
+
+        metrics.recordTokens(prompt, response);
+        cache.saveResponse(prompt, response);
+        logger.info("Prompt (streamed): {}", prompt);
+        logger.info("Response (streamed): {}", response);
+        return response;
+    }
+
+    private String fetchAndCache(String prompt) throws IOException {
+        // A flight for this prompt may have finished between our cache check and claiming the key.
+        String cached = cachedAnswer(prompt);
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        String response = metrics.observation("bender.upstream", "upstream completion")
+                .observeChecked(() -> llm.getResponse(prompt));
+        cache.recordUpstream(prompt, elapsedMillis(start));
+        if (response == null || response.trim().isEmpty()) {
+            logger.warn("Received empty response from OpenAI for prompt: {}", prompt);
+            throw new IOException("Received an empty response from the AI.");
+        }
+
+        metrics.recordTokens(prompt, response);
+        cache.saveResponse(prompt, response);
+        logger.info("Prompt: {}", prompt);
+        logger.info("Response: {}", response);
+        return response;
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.close();
+        }
+        cache.close();
+    }
+
+    static String normalize(String prompt) {
+        return PromptNormalizer.canonicalize(prompt);
+    }
+}
@@ -0,0 +1,73 @@
+package school.redrover.service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client admission control: one {@link TokenBucket} per client key (API key or address),
+ * held in a concurrent map. Buckets that have refilled completely are dropped once the map grows
+ * past its bound, since a full bucket carries no state. That sweep scans every bucket, so it runs at
+ * most once per refill interval (the time an empty bucket takes to fill), not on every request.
+ */
+public class ClientRateLimiter {
+
+    private final double burst;
+    private final double requestsPerSecond;
+    private final int maxClients;
+    private final long sweepIntervalNanos;
+    private final AtomicLong nextSweepAt = new AtomicLong(System.nanoTime());
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ClientRateLimiter(int requestsPerMinute, int burst, int maxClients) {
+        if (requestsPerMinute < 1 || burst < 1) {
+            throw new IllegalArgumentException("requestsPerMinute and burst must be positive: "
+                    + requestsPerMinute + ", " + burst);
+        }
+        this.burst = burst;
+        this.requestsPerSecond = requestsPerMinute / 60d;
+        this.maxClients = maxClients;
+        this.sweepIntervalNanos = (long) (burst / requestsPerSecond * 1e9);
+    }
+
+    /**
+     * Charges {@code requests} to the client. Returns {@link Duration#ZERO} if admitted, otherwise
+     * how long the client should wait before retrying.
+     */
+    public Duration tryAcquire(String client, int requests) {
+        if (buckets.size() > maxClients) {
+            sweepFullBuckets();
+        }
+        long waitNanos = buckets.computeIfAbsent(client, key -> new TokenBucket(burst, requestsPerSecond))
+                .tryAcquire(requests);
+        if (waitNanos == 0L) {
+            allowed.incrementAndGet();
+            return Duration.ZERO;
+        }
+        rejected.incrementAndGet();
+        return Duration.ofNanos(waitNanos);
+    }
+
+    private void sweepFullBuckets() {
+        long now = System.nanoTime();
+        long due = nextSweepAt.get();
+        if (now - due >= 0 && nextSweepAt.compareAndSet(due, now + sweepIntervalNanos)) {
+            buckets.values().removeIf(TokenBucket::isFull);
+        }
+    }
+
+    public int clientCount() {
+        return buckets.size();
+    }
+
+    public long allowedCount() {
+        return allowed.get();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+}
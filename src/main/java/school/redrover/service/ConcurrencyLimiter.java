@@ -0,0 +1,340 @@
+package school.redrover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many asynchronous upstream calls run at once and, optionally, how many model tokens
+ * they may spend per minute. Excess calls wait without holding a thread in a bounded queue that is
+ * served by weighted fair queuing: each call is stamped with a virtual finish time of
+ * {@code max(now, client's last finish) + cost / weight}, so a client with a deep backlog cannot
+ * starve one that asks occasionally. Calls that would overflow the queue, or that waited longer
+ * than the maximum queue time, fail instead of piling up.
+ */
+public class ConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    public static final String DEFAULT_CLIENT = "anonymous";
+
+    private record Waiter(String client, long cost, double finishTag, long sequence,
+                          Runnable start, CompletableFuture<?> result, long enqueuedNanos) {
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration maxQueueTime;
+    private final TokenBucket tokenBudget;
+    private final Map<String, Integer> weights;
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingDouble(Waiter::finishTag).thenComparingLong(Waiter::sequence));
+    private final Map<String, Double> lastFinishTags = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+    private int active;
+    private boolean drainScheduled;
+    private ScheduledThreadPoolExecutor timer;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    public ConcurrencyLimiter(int maxConcurrent, int maxQueued, Duration maxQueueTime) {
+        this(maxConcurrent, maxQueued, maxQueueTime, 0L, Map.of());
+    }
+
+    /**
+     * @param tokensPerMinute provider token budget shared by all calls; zero or negative disables it
+     * @param weights         fair-queuing weight per client key; unlisted clients weigh 1
+     */
+    public ConcurrencyLimiter(int maxConcurrent, int maxQueued, Duration maxQueueTime,
+                              long tokensPerMinute, Map<String, Integer> weights) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxQueueTime = maxQueueTime;
+        this.tokenBudget = tokensPerMinute > 0 ? new TokenBucket(tokensPerMinute, tokensPerMinute / 60d) : null;
+        this.weights = Map.copyOf(weights);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        return submit(DEFAULT_CLIENT, 1L, task);
+    }
+
+    /**
+     * @param cost model tokens the call is expected to spend (prompt plus completion limit); also
+     *             its size for fair queuing
+     */
+    public <T> CompletableFuture<T> submit(String client, long cost, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long now = System.nanoTime();
+
+        Waiter waiter;
+        synchronized (this) {
+            if (queue.isEmpty() && active < maxConcurrent && acquireBudget(cost) == 0L) {
+                active++;
+                waiter = new Waiter(client, cost, virtualTime, sequence++, () -> run(task, result, now), result, now);
+            } else if (queue.size() < maxQueued) {
+                double start = Math.max(virtualTime, lastFinishTags.getOrDefault(client, 0d));
+                double finishTag = start + (double) cost / weights.getOrDefault(client, 1);
+                lastFinishTags.put(client, finishTag);
+                Waiter queued = new Waiter(client, cost, finishTag, sequence++, () -> run(task, result, now), result, now);
+                queue.add(queued);
+                scheduleExpiry(queued);
+                scheduleDrainForBudget();
+                return result;
+            } else {
+                rejected.incrementAndGet();
+                logger.warn("Upstream queue full ({} active, {} queued), rejecting request", active, queue.size());
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException("Too many requests in flight, please retry shortly."));
+            }
+        }
+        waiter.start().run();
+        return result;
+    }
+
+    /**
+     * Starts the call only if it could start right now: a free slot, room in the token budget and
+     * nobody queued. Otherwise returns {@code null} without queuing, so background work never
+     * delays a live caller.
+     */
+    public <T> CompletableFuture<T> trySubmit(String client, long cost, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (!queue.isEmpty() || active >= maxConcurrent || acquireBudget(cost) != 0L) {
+                return null;
+            }
+            active++;
+        }
+        run(task, result, now);
+        return result;
+    }
+
+    private <T> void run(Supplier<CompletableFuture<T>> task, CompletableFuture<T> result, long enqueuedNanos) {
+        recordQueueTime(System.nanoTime() - enqueuedNanos);
+        CompletableFuture<T> call;
+        try {
+            call = task.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((value, error) -> {
+            release();
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void release() {
+        synchronized (this) {
+            active--;
+        }
+        drain();
+    }
+
+    /**
+     * Starts queued calls in finish-tag order while slots and token budget allow. Expired calls are
+     * failed on the way.
+     */
+    private void drain() {
+        List<Waiter> expired = new ArrayList<>();
+        List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            while (!queue.isEmpty()) {
+                Waiter next = queue.peek();
+                if (System.nanoTime() - next.enqueuedNanos() > maxQueueTime.toNanos()) {
+                    leave(next);
+                    expired.add(next);
+                    continue;
+                }
+                if (active >= maxConcurrent) {
+                    break;
+                }
+                if (acquireBudget(next.cost()) > 0L) {
+                    scheduleDrainForBudget();
+                    break;
+                }
+                active++;
+                ready.add(dequeue());
+            }
+        }
+
+        expired.forEach(this::expire);
+        ready.forEach(waiter -> waiter.start().run());
+    }
+
+    private Waiter dequeue() {
+        Waiter waiter = queue.poll();
+        virtualTime = Math.max(virtualTime, waiter.finishTag());
+        // A client whose last stamped call has been served has no backlog left to account for.
+        if (lastFinishTags.getOrDefault(waiter.client(), 0d) <= virtualTime) {
+            lastFinishTags.remove(waiter.client());
+        }
+        return waiter;
+    }
+
+    /**
+     * Takes a waiter out of the queue without serving it, because it expired or its caller gave
+     * up. Its client's last finish tag goes back to what the client still has queued, so the
+     * abandoned call is not held against the client later, and clients with nothing queued are
+     * forgotten.
+     */
+    private boolean leave(Waiter waiter) {
+        if (!queue.remove(waiter)) {
+            return false;
+        }
+        Double last = null;
+        for (Waiter other : queue) {
+            if (other.client().equals(waiter.client()) && (last == null || other.finishTag() > last)) {
+                last = other.finishTag();
+            }
+        }
+        if (last == null) {
+            lastFinishTags.remove(waiter.client());
+        } else {
+            lastFinishTags.put(waiter.client(), last);
+        }
+        return true;
+    }
+
+    private long acquireBudget(long cost) {
+        return tokenBudget == null ? 0L : tokenBudget.tryAcquire(cost);
+    }
+
+    /**
+     * With a token budget, queued calls may be waiting on refill rather than on a finishing call, so
+     * nothing else would wake them; re-check once the head of the queue can afford to start.
+     */
+    private void scheduleDrainForBudget() {
+        if (tokenBudget == null || drainScheduled || queue.isEmpty()) {
+            return;
+        }
+        long waitNanos = Math.max(1_000_000L, tokenBudget.nanosUntil(queue.peek().cost()));
+        drainScheduled = true;
+        timer().schedule(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        }, Math.min(waitNanos, maxQueueTime.toNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Fails the waiter once it has been queued for the maximum queue time, even if no call
+     * finishes in the meantime to drain the queue (e.g. every slot is held by a stuck call). A
+     * waiter whose caller cancels it first leaves the queue at once.
+     */
+    private void scheduleExpiry(Waiter waiter) {
+        ScheduledFuture<?> expiry = timer().schedule(() -> {
+            synchronized (this) {
+                if (!leave(waiter)) {
+                    return;
+                }
+            }
+            expire(waiter);
+        }, maxQueueTime.toNanos(), TimeUnit.NANOSECONDS);
+        waiter.result().whenComplete((value, error) -> {
+            expiry.cancel(false);
+            synchronized (this) {
+                leave(waiter);
+            }
+        });
+    }
+
+    private void expire(Waiter waiter) {
+        rejected.incrementAndGet();
+        waiter.result().completeExceptionally(new QueueTimeoutException(
+                "Request waited longer than " + maxQueueTime.toMillis() + " ms for an upstream slot."));
+    }
+
+    private ScheduledThreadPoolExecutor timer() {
+        if (timer == null) {
+            timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "upstream-limiter-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.setRemoveOnCancelPolicy(true);
+        }
+        return timer;
+    }
+
+    private void recordQueueTime(long nanos) {
+        admitted.incrementAndGet();
+        totalQueueNanos.addAndGet(nanos);
+        maxQueueNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * How long a rejected caller should wait before trying again: the typical queue wait, at least
+     * a second.
+     */
+    public Duration suggestedRetryAfter() {
+        Duration average = averageQueueTime();
+        return average.compareTo(Duration.ofSeconds(1)) > 0 ? average : Duration.ofSeconds(1);
+    }
+
+    public synchronized int activeCount() {
+        return active;
+    }
+
+    public synchronized int queuedCount() {
+        return queue.size();
+    }
+
+    public double availableTokenBudget() {
+        return tokenBudget == null ? Double.NaN : tokenBudget.available();
+    }
+
+    public long admittedCount() {
+        return admitted.get();
+    }
+
+    public long rejectedCount() {
+        return rejected.get();
+    }
+
+    public Duration totalQueueTime() {
+        return Duration.ofNanos(totalQueueNanos.get());
+    }
+
+    public Duration averageQueueTime() {
+        long count = admitted.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalQueueNanos.get() / count);
+    }
+
+    public Duration maxObservedQueueTime() {
+        return Duration.ofNanos(maxQueueNanos.get());
+    }
+
+    /**
+     * Clients with a finish tag still on record, i.e. with calls queued.
+     */
+    synchronized int trackedClients() {
+        return lastFinishTags.size();
+    }
+}
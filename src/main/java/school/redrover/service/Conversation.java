@@ -0,0 +1,156 @@
+package school.redrover.service;
+
+import school.redrover.api.TokenCounter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One session's context: the most recent turns in a bounded ring plus a rolling extractive
+ * summary of the turns that fell out of it. {@link #assemble} builds the upstream prompt within a
+ * fixed token budget, so request size stays flat however long the session runs.
+ */
+public class Conversation {
+
+    private static final int SUMMARY_WORDS = 24;
+
+    private record Turn(String user, String assistant, int tokens) {
+    }
+
+    private final String preamble;
+    private final int maxTurns;
+    private final int tokenBudget;
+    private final int summaryBudget;
+
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private final ArrayDeque<String> summary = new ArrayDeque<>();
+    private int turnTokens;
+    private int summaryTokens;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    public Conversation(String preamble, int maxTurns, int tokenBudget, int summaryBudget) {
+        if (maxTurns < 1) {
+            throw new IllegalArgumentException("maxTurns must be positive: " + maxTurns);
+        }
+        this.preamble = preamble;
+        this.maxTurns = maxTurns;
+        this.tokenBudget = tokenBudget;
+        this.summaryBudget = summaryBudget;
+    }
+
+    public synchronized boolean isEmpty() {
+        return turns.isEmpty() && summary.isEmpty();
+    }
+
+    /**
+     * Appends a completed turn. Turns beyond the ring size, or beyond the budget left after the
+     * summary's share, are folded into the summary oldest first.
+     */
+    public synchronized void record(String user, String assistant) {
+        Turn turn = new Turn(user, assistant, TokenCounter.count(format(user, assistant)));
+        turns.addLast(turn);
+        turnTokens += turn.tokens();
+        while (turns.size() > maxTurns || (turnTokens > tokenBudget - summaryBudget && turns.size() > 1)) {
+            fold(turns.removeFirst());
+        }
+        touch();
+    }
+
+    /**
+     * Preamble, summary, as many recent turns as fit the remaining budget (newest first), then the
+     * new prompt.
+     */
+    public synchronized String assemble(String prompt) {
+        touch();
+        String question = "User: " + prompt + "\nBender:";
+        String summaryText = summaryText();
+        // Each line break between the sections is a token of its own.
+        int remaining = tokenBudget - TokenCounter.count(preamble) - 1
+                - (summaryText.isEmpty() ? 0 : TokenCounter.count(summaryText) + 1)
+                - TokenCounter.count(question);
+
+        List<Turn> recent = new ArrayList<>();
+        for (Iterator<Turn> it = turns.descendingIterator(); it.hasNext(); ) {
+            Turn turn = it.next();
+            if (turn.tokens() > remaining) {
+                break;
+            }
+            remaining -= turn.tokens();
+            recent.add(0, turn);
+        }
+
+        StringBuilder context = new StringBuilder(preamble).append('\n');
+        if (!summaryText.isEmpty()) {
+            context.append(summaryText).append('\n');
+        }
+        for (Turn turn : recent) {
+            context.append(format(turn.user(), turn.assistant()));
+        }
+        return context.append(question).toString();
+    }
+
+    /**
+     * Human-readable history for display: the summary followed by the turns still held verbatim.
+     */
+    public synchronized String transcript() {
+        StringBuilder transcript = new StringBuilder(preamble).append('\n');
+        String summaryText = summaryText();
+        if (!summaryText.isEmpty()) {
+            transcript.append(summaryText).append('\n');
+        }
+        turns.forEach(turn -> transcript.append(format(turn.user(), turn.assistant())));
+        return transcript.toString();
+    }
+
+    public synchronized int tokens() {
+        return turnTokens + summaryTokens;
+    }
+
+    long lastAccess() {
+        return lastAccess;
+    }
+
+    private void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    private void fold(Turn turn) {
+        turnTokens -= turn.tokens();
+        String line = "The user asked: " + lead(turn.user()) + " Bender said: " + lead(turn.assistant());
+        summary.addLast(line);
+        summaryTokens += TokenCounter.count(line);
+        while (summaryTokens > summaryBudget && !summary.isEmpty()) {
+            summaryTokens -= TokenCounter.count(summary.removeFirst());
+        }
+    }
+
+    private String summaryText() {
+        return summary.isEmpty() ? "" : "Earlier in this conversation: " + String.join(" ", summary);
+    }
+
+    private static String format(String user, String assistant) {
+        return "User: " + user + "\nBender: " + assistant + "\n";
+    }
+
+    /**
+     * First sentence, capped at a couple of dozen words.
+     */
+    private static String lead(String text) {
+        String stripped = text.strip().replaceAll("\\s+", " ");
+        int end = stripped.length();
+        for (int i = 0; i < stripped.length(); i++) {
+            char c = stripped.charAt(i);
+            if ((c == '.' || c == '!' || c == '?') && (i + 1 == stripped.length() || stripped.charAt(i + 1) == ' ')) {
+                end = i + 1;
+                break;
+            }
+        }
+        String[] words = stripped.substring(0, end).split(" ");
+        if (words.length <= SUMMARY_WORDS) {
+            return stripped.substring(0, end);
+        }
+        return String.join(" ", List.of(words).subList(0, SUMMARY_WORDS)) + "...";
+    }
+}
@@ -0,0 +1,76 @@
+package school.redrover.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Session-scoped conversations, keyed by session id. Bounded by session count and by idle time;
+ * the least recently used session goes first.
+ */
+public class ConversationStore {
+
+    public static final String DEFAULT_PREAMBLE = "You are Ostap Bender, the Great Strategist.";
+
+    private final String preamble;
+    private final int maxTurns;
+    private final int tokenBudget;
+    private final int summaryBudget;
+    private final int maxSessions;
+    private final long idleTimeoutMillis;
+    private final LinkedHashMap<String, Conversation> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    public ConversationStore() {
+        this(DEFAULT_PREAMBLE,
+                Integer.getInteger("bender.conversation.max-turns", 16),
+                Integer.getInteger("bender.conversation.token-budget", 1_500),
+                Integer.getInteger("bender.conversation.summary-tokens", 300),
+                Integer.getInteger("bender.conversation.max-sessions", 10_000),
+                Duration.ofMinutes(Long.getLong("bender.conversation.idle-timeout-minutes", 30L)));
+    }
+
+    /**
+     * @param tokenBudget   upper bound on the assembled upstream prompt, in tokens
+     * @param summaryBudget tokens of that budget the rolling summary may use
+     */
+    public ConversationStore(String preamble, int maxTurns, int tokenBudget, int summaryBudget,
+                             int maxSessions, Duration idleTimeout) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+        }
+        this.preamble = preamble;
+        this.maxTurns = maxTurns;
+        this.tokenBudget = tokenBudget;
+        this.summaryBudget = summaryBudget;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+    }
+
+    public synchronized Conversation get(String sessionId) {
+        expireIdle(System.currentTimeMillis());
+        Conversation conversation = sessions.computeIfAbsent(sessionId,
+                id -> new Conversation(preamble, maxTurns, tokenBudget, summaryBudget));
+        Iterator<Map.Entry<String, Conversation>> eldest = sessions.entrySet().iterator();
+        while (sessions.size() > maxSessions) {
+            eldest.next();
+            eldest.remove();
+        }
+        return conversation;
+    }
+
+    public synchronized void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    private void expireIdle(long now) {
+        Iterator<Conversation> eldest = sessions.values().iterator();
+        while (eldest.hasNext() && now - eldest.next().lastAccess() > idleTimeoutMillis) {
+            eldest.remove();
+        }
+    }
+}
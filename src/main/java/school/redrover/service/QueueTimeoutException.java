@@ -0,0 +1,14 @@
+package school.redrover.service;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A call waited in the {@link ConcurrencyLimiter} queue longer than its maximum queue time and was
+ * never started. Unlike other timeouts, upstream was not tried, so the caller may retry later.
+ */
+public class QueueTimeoutException extends TimeoutException {
+
+    public QueueTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,165 @@
+package school.redrover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Fetches fresh answers for prompts in the background: stale cache entries and prompts being
+ * pre-warmed. At most {@code maxConcurrent} fetches run at once, and each only starts when the
+ * upstream limiter has a free slot and nobody queued ({@link ConcurrencyLimiter#trySubmit}), so
+ * live traffic always goes first. While upstream is busy, requested prompts wait here and are
+ * retried shortly; a prompt is never queued twice.
+ */
+public class ResponseRefresher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseRefresher.class);
+
+    static final String CLIENT = "background-refresh";
+
+    private static final long RETRY_DELAY_MILLIS = 1_000;
+
+    private final ConcurrencyLimiter limiter;
+    private final int maxConcurrent;
+    private final int maxPending;
+    private final ToLongFunction<String> cost;
+    private final Function<String, CompletableFuture<String>> fetch;
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Set<String> running = new HashSet<>();
+    private boolean retryScheduled;
+    private volatile boolean closed;
+
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * @param cost  model tokens a fetch may spend, charged to the limiter's budget
+     * @param fetch calls upstream for the prompt and caches the answer
+     */
+    public ResponseRefresher(ConcurrencyLimiter limiter, int maxConcurrent, int maxPending,
+                             ToLongFunction<String> cost, Function<String, CompletableFuture<String>> fetch) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+        }
+        this.limiter = limiter;
+        this.maxConcurrent = maxConcurrent;
+        this.maxPending = maxPending;
+        this.cost = cost;
+        this.fetch = fetch;
+    }
+
+    /**
+     * Queues a background fetch for {@code prompt} unless one is already queued or running.
+     */
+    public void request(String prompt) {
+        synchronized (this) {
+            if (closed || running.contains(prompt) || pending.contains(prompt)) {
+                return;
+            }
+            if (pending.size() >= maxPending) {
+                logger.debug("Refresh queue full, not refreshing prompt: {}", prompt);
+                return;
+            }
+            pending.add(prompt);
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            String prompt;
+            synchronized (this) {
+                if (closed || pending.isEmpty() || running.size() >= maxConcurrent) {
+                    return;
+                }
+                Iterator<String> next = pending.iterator();
+                prompt = next.next();
+                next.remove();
+                running.add(prompt);
+            }
+
+            CompletableFuture<String> call = limiter.trySubmit(CLIENT, cost.applyAsLong(prompt), () -> fetch.apply(prompt));
+            if (call == null) {
+                synchronized (this) {
+                    running.remove(prompt);
+                    pending.add(prompt);
+                }
+                deferred.incrementAndGet();
+                scheduleRetry();
+                return;
+            }
+            call.whenComplete((response, error) -> {
+                synchronized (this) {
+                    running.remove(prompt);
+                }
+                if (error != null) {
+                    failed.incrementAndGet();
+                    logger.warn("Background refresh failed for prompt {}: {}", prompt, error.getMessage());
+                } else {
+                    refreshed.incrementAndGet();
+                    logger.debug("Refreshed cached answer for prompt: {}", prompt);
+                }
+                drain();
+            });
+        }
+    }
+
+    private synchronized void scheduleRetry() {
+        if (retryScheduled || closed) {
+            return;
+        }
+        retryScheduled = true;
+        retryTimer.schedule(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+            }
+            drain();
+        }, RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    public long refreshedCount() {
+        return refreshed.get();
+    }
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Times a fetch waited because upstream was busy with live traffic.
+     */
+    public long deferredCount() {
+        return deferred.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+        }
+        retryTimer.shutdownNow();
+    }
+}
@@ -0,0 +1,69 @@
+package school.redrover.service;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free token bucket: refills continuously at a fixed rate up to its capacity. Callers either
+ * take permits now or learn how long until enough have accumulated.
+ */
+public class TokenBucket {
+
+    private record State(double tokens, long refilledAtNanos) {
+    }
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final AtomicReference<State> state;
+
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        if (capacity <= 0 || tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and rate must be positive: " + capacity + ", " + tokensPerSecond);
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.state = new AtomicReference<>(new State(capacity, System.nanoTime()));
+    }
+
+    /**
+     * Takes {@code permits} if available and returns 0; otherwise takes nothing and returns the
+     * nanoseconds until they would be. Requests larger than the capacity are capped at it, so
+     * they wait for a full bucket rather than forever.
+     */
+    public long tryAcquire(double permits) {
+        double wanted = Math.min(permits, capacity);
+        while (true) {
+            long now = System.nanoTime();
+            State current = state.get();
+            double available = available(current, now);
+            if (available < wanted) {
+                return (long) Math.ceil((wanted - available) / tokensPerNano);
+            }
+            if (state.compareAndSet(current, new State(available - wanted, now))) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Nanoseconds until {@code permits} would be available, without taking any.
+     */
+    public long nanosUntil(double permits) {
+        double missing = Math.min(permits, capacity) - available();
+        return missing <= 0 ? 0L : (long) Math.ceil(missing / tokensPerNano);
+    }
+
+    public double available() {
+        return available(state.get(), System.nanoTime());
+    }
+
+    /**
+     * True once the bucket has refilled completely, i.e. nobody has used it for a while.
+     */
+    public boolean isFull() {
+        return available() >= capacity;
+    }
+
+    private double available(State current, long now) {
+        return Math.min(capacity, current.tokens() + (now - current.refilledAtNanos()) * tokensPerNano);
+    }
+}
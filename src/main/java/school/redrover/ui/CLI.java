@@ -20,6 +20,7 @@ public class CLI implements Runnable {
     private String userInput;
     private int maxLineLength = 80;
     private boolean showPromptKeys = false;
+    private int streamColumn;
 
     public void displayAvailablePrompts(Map<String, String> prompts) {
         System.out.println("Available prompts:");
@@ -48,6 +49,42 @@ public class CLI implements Runnable {
         );
     }
 
+    /**
+     * Starts a response that arrives token by token; follow with {@link #displayToken} calls and
+     * one {@link #endStreamedResponse}. Lines are soft-wrapped at the first space past the limit.
+     */
+    public void beginStreamedResponse(String prompt) {
+        System.out.println(ansi()
+                .fgGreen().a("Prompt: ")
+                .fgYellow().a(prompt)
+                .reset()
+        );
+        String label = "Bender's Response: ";
+        System.out.print(ansi().fgGreen().a(label).reset());
+        streamColumn = label.length();
+    }
+
+    public void displayToken(String token) {
+        StringBuilder text = new StringBuilder(token.length() + 8);
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '\n' || (c == ' ' && streamColumn >= maxLineLength)) {
+                text.append('\n');
+                streamColumn = 0;
+            } else {
+                text.append(c);
+                streamColumn++;
+            }
+        }
+        System.out.print(ansi().fgCyan().a(text).reset());
+        System.out.flush();
+    }
+
+    public void endStreamedResponse(long elapsedMillis) {
+        System.out.println();
+        System.out.println(ansi().fgBrightBlack().a("(" + elapsedMillis + " ms)").reset());
+    }
+
     public void displayError(String errorMessage, String suggestion) {
         System.out.println(ansi()
                 .fgRed().a("Error: ")
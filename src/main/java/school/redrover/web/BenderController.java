@@ -1,52 +1,259 @@
 package school.redrover.web;
 
+import com.google.gson.Gson;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import school.redrover.api.OpenAIClient;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import school.redrover.data.CachedAnswer;
+import school.redrover.data.ConversationIndex;
 import school.redrover.data.ResponseCache;
+import school.redrover.service.BenderService;
+import school.redrover.service.ClientRateLimiter;
+import school.redrover.service.QueueTimeoutException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
-@RequestMapping("/api/bender")
+@RequestMapping(BenderController.BASE_PATH)
 public class BenderController {
     private static final Logger
             logger = LoggerFactory.getLogger(BenderController.class);
 
-    private final OpenAIClient llm = new OpenAIClient(
-            "https://api.openai.com/v1/completions",
-            "your-api-key",
-            "text-davinci-003",
-            100,
-            0.7
-    );
-    private final ResponseCache cache = new ResponseCache();
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final MediaType NDJSON = MediaType.parseMediaType(NDJSON_VALUE);
+    private static final int MAX_BATCH_PARALLELISM = 64;
+    private static final String SESSION_HEADER = "X-Session-Id";
+    private static final String API_KEY_HEADER = "X-Api-Key";
+    static final String BASE_PATH = "/api/bender";
+    private static final String ANSWERS_PATH = "/answers/";
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    private final BenderService bender;
+    private final ExecutorService streamExecutor;
+    private final ClientRateLimiter rateLimiter;
+    private final Duration maxAge;
+    private final Gson gson = new Gson();
 
+    public BenderController(BenderService bender, @Qualifier("streamExecutor") ExecutorService streamExecutor,
+                            ClientRateLimiter rateLimiter,
+                            @Value("${bender.http.max-age-seconds:3600}") long maxAgeSeconds) {
+        this.bender = bender;
+        this.streamExecutor = streamExecutor;
+        this.rateLimiter = rateLimiter;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+    }
+
+    /**
+     * Requests carrying an {@value #SESSION_HEADER} header are answered in that session's context;
+     * without it every prompt stands alone. Clients (by {@value #API_KEY_HEADER} or address) over
+     * their rate, or arriving while the upstream queue is full, get 429 with {@code Retry-After};
+     * a timeout waiting on upstream itself is a 504.
+     * <p>Stateless answers that are now cached carry a {@code Content-Location} pointing at
+     * {@link #cachedAnswer}, so clients and edge caches can fetch repeats with a cacheable GET.
+     */
     @PostMapping("/ask")
-    public String askBender(@RequestBody String prompt) {
+    public CompletableFuture<ResponseEntity<String>> askBender(@RequestBody String prompt,
+                                                               @RequestHeader(value = SESSION_HEADER, required = false) String sessionId,
+                                                               HttpServletRequest request) {
         if (prompt == null || prompt.trim().isEmpty()) {
             logger.warn("Received empty or null prompt.");
-            return "Error: Prompt cannot be null or empty.";
+            return CompletableFuture.completedFuture(ResponseEntity.ok("Error: Prompt cannot be null or empty."));
         }
+        String client = admit(request, 1);
         logger.info("Received prompt: {}", prompt);
 
-        if (cache.isCached(prompt)) {
-            logger.info("Returning cached response for prompt: {}", prompt);
-            return String.valueOf(cache.getResponse(prompt));
+        return bender.askAsync(client, sessionId, prompt).thenApply(response -> {
+            String key = ResponseCache.keyOf(prompt);
+            if (sessionId != null || !bender.hasCachedAnswer(key)) {
+                return ResponseEntity.ok(response);
+            }
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_LOCATION, request.getContextPath() + BASE_PATH + ANSWERS_PATH + key)
+                    .body(response);
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException || cause instanceof QueueTimeoutException) {
+                throw new TooManyRequestsException(cause.getMessage(),
+                        bender.getUpstreamLimiter().suggestedRetryAfter());
+            }
+            if (cause instanceof TimeoutException) {
+                // Upstream (or the in-flight call we joined) is slow: not the client's fault, so no 429.
+                logger.error("Timed out generating response: {}", cause.getMessage());
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .body("Error: Timed out waiting for an answer, please try again later.");
+            }
+            logger.error("Error generating response: {}", cause.getMessage());
+            return ResponseEntity.ok("Error: " + cause.getMessage());
+        });
+    }
+
+    /**
+     * The cached answer for a prompt key from {@link ResponseCache#keyOf}, never calling upstream
+     * and not rate limited: 404 when the prompt is not hot, otherwise the newest answer with a
+     * strong {@code ETag} (so {@code If-None-Match} revalidates to 304) and a {@code max-age} of
+     * the entry's remaining freshness, capped at {@code bender.http.max-age-seconds}.
+     */
+    @GetMapping(ANSWERS_PATH + "{key}")
+    public ResponseEntity<String> cachedAnswer(@PathVariable String key) {
+        CachedAnswer answer = bender.lookup(key);
+        if (answer == null) {
+            return ResponseEntity.notFound().build();
         }
+        long freshSeconds = Math.max(0L, (answer.freshUntil() - System.currentTimeMillis()) / 1_000L);
+        return ResponseEntity.ok()
+                .eTag(String.format("\"%016x\"", ConversationIndex.hash(answer.response())))
+                .lastModified(answer.updatedAt())
+                .cacheControl(CacheControl.maxAge(Math.min(freshSeconds, maxAge.toSeconds()), TimeUnit.SECONDS)
+                        .cachePublic())
+                .contentType(TEXT_PLAIN_UTF8)
+                .body(answer.response());
+    }
 
-        try {
-            String response = llm.getResponse(prompt);
-            if (response == null || response.trim().isEmpty()) {
-                logger.warn("Received empty response from OpenAI for prompt: {}", prompt);
-                return "Error: Received an empty response from the AI.";
+    /**
+     * Answers a JSON array of prompts as NDJSON, one result object per line in completion
+     * order: cache hits first, then upstream answers as they arrive.
+     */
+    @PostMapping(value = "/ask/batch", produces = NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> askBenderBatch(@RequestBody List<String> prompts,
+                                              @RequestParam(defaultValue = "8") int parallelism,
+                                              HttpServletRequest request) {
+        String client = admit(request, Math.max(1, prompts.size()));
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+        int boundedParallelism = Math.max(1, Math.min(parallelism, MAX_BATCH_PARALLELISM));
+        logger.info("Received batch of {} prompt(s) with parallelism {}", prompts.size(), boundedParallelism);
+
+        AtomicBoolean connected = new AtomicBoolean(true);
+        bender.askBatch(client, prompts, boundedParallelism, result -> {
+            if (!connected.get()) {
+                return;
+            }
+            try {
+                emitter.send(gson.toJson(result) + "\n", NDJSON);
+            } catch (IOException | IllegalStateException e) {
+                connected.set(false);
+                logger.warn("Client disconnected from batch, remaining answers will only be cached.");
+            }
+        }).whenComplete((ignored, error) -> {
+            if (connected.get()) {
+                emitter.complete();
             }
-            cache.saveResponse(prompt, response);
-            logger.info("Response generated and cached: {}", response);
-            return response;
-        } catch (Exception e) {
-            logger.error("Error generating response: {}", e.getMessage());
-            return "Error: " + e.getMessage();
+        });
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    /**
+     * Streams the answer as server-sent events: one {@code token} event per text delta, then
+     * {@code done}, or {@code error} if the upstream call fails. Event data is a JSON object so
+     * tokens containing newlines survive SSE framing.
+     */
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter askBenderStream(@RequestBody String prompt,
+                                      @RequestHeader(value = SESSION_HEADER, required = false) String sessionId,
+                                      HttpServletRequest request) {
+        admit(request, 1);
+        SseEmitter emitter = new SseEmitter(0L);
+        if (prompt == null || prompt.trim().isEmpty()) {
+            logger.warn("Received empty or null prompt for streaming.");
+            sendAndComplete(emitter, "error", "Prompt cannot be null or empty.");
+            return emitter;
         }
+        logger.info("Received streaming prompt: {}", prompt);
+
+        streamExecutor.execute(() -> {
+            // Keep reading upstream after a client disconnect so the completed answer is still cached.
+            AtomicBoolean connected = new AtomicBoolean(true);
+            try {
+                bender.askStreaming(sessionId, prompt, token -> {
+                    if (connected.get() && !send(emitter, "token", token)) {
+                        connected.set(false);
+                        logger.warn("Client disconnected from stream, finishing upstream call for cache.");
+                    }
+                });
+                sendAndComplete(emitter, "done", "");
+            } catch (Exception e) {
+                logger.error("Error streaming response: {}", e.getMessage());
+                sendAndComplete(emitter, "error", e.getMessage());
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Charges {@code requests} to the caller's bucket and returns its client key, or throws if the
+     * caller is over its rate.
+     */
+    private String admit(HttpServletRequest request, int requests) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        String client = apiKey != null && !apiKey.isBlank() ? apiKey : request.getRemoteAddr();
+        Duration wait = rateLimiter.tryAcquire(client, requests);
+        if (!wait.isZero()) {
+            throw new TooManyRequestsException("Rate limit exceeded, please retry later.", wait);
+        }
+        return client;
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<String> handleTooManyRequests(TooManyRequestsException e) {
+        logger.warn("Rejected request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body("Error: " + e.getMessage());
+    }
+
+    private boolean send(SseEmitter emitter, String event, String text) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(event)
+                    .data(gson.toJson(Map.of("text", text)), MediaType.APPLICATION_JSON));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void sendAndComplete(SseEmitter emitter, String event, String text) {
+        if (send(emitter, event, text)) {
+            emitter.complete();
+        }
+    }
+
+    /**
+     * The session's history as plain text. Private to the caller, so edge caches never store it.
+     */
+    @GetMapping("/session")
+    public ResponseEntity<String> sessionHistory(@RequestHeader(SESSION_HEADER) String sessionId) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .contentType(TEXT_PLAIN_UTF8)
+                .body(bender.getConversations().get(sessionId).transcript());
+    }
+
+    @DeleteMapping("/session")
+    public ResponseEntity<Void> endSession(@RequestHeader(SESSION_HEADER) String sessionId) {
+        bender.getConversations().remove(sessionId);
+        return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/ask")
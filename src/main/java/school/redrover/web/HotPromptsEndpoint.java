@@ -0,0 +1,67 @@
+package school.redrover.web;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import school.redrover.data.HotPromptTracker;
+import school.redrover.data.PromptStats;
+import school.redrover.data.ResponseCache;
+import school.redrover.service.BenderService;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/hotprompts}: the most requested prompts with their cache hits and misses and
+ * upstream latency, for sizing the cache and choosing what to pre-warm. Prompts are user text, so
+ * the endpoint is not exposed by default, and each prompt is reported by its key
+ * ({@link ResponseCache#keyOf}) and a truncated preview unless {@code fullText=true} is asked for.
+ */
+@Component
+@Endpoint(id = "hotprompts")
+public class HotPromptsEndpoint {
+
+    static final int DEFAULT_LIMIT = 20;
+    static final int PREVIEW_LENGTH = 32;
+
+    private final BenderService bender;
+
+    public HotPromptsEndpoint(BenderService bender) {
+        this.bender = bender;
+    }
+
+    /**
+     * @param lookups         decayed lookups across all prompts
+     * @param halfLifeMinutes how long until every count halves; zero never decays
+     */
+    public record Report(long lookups, long halfLifeMinutes, List<HotPrompt> prompts) {
+    }
+
+    /**
+     * @param key    the prompt's key, as used by {@code GET /api/bender/answers/{key}}
+     * @param prompt the prompt, or only its start unless full text was asked for
+     */
+    public record HotPrompt(String key, String prompt, long lookups, long hits, long misses, long upstreamCalls,
+                            double meanUpstreamMillis) {
+
+        static HotPrompt of(PromptStats stats, boolean fullText) {
+            String prompt = stats.prompt();
+            if (!fullText && prompt.length() > PREVIEW_LENGTH) {
+                prompt = prompt.substring(0, PREVIEW_LENGTH) + "...";
+            }
+            return new HotPrompt(ResponseCache.keyOf(stats.prompt()), prompt, stats.lookups(), stats.hits(),
+                    stats.misses(), stats.upstreamCalls(), stats.meanUpstreamMillis());
+        }
+    }
+
+    @ReadOperation
+    public Report hotPrompts(@Nullable Integer limit, @Nullable Boolean fullText) {
+        return report(bender.getHotPromptTracker(), limit != null ? Math.max(0, limit) : DEFAULT_LIMIT,
+                Boolean.TRUE.equals(fullText));
+    }
+
+    public static Report report(HotPromptTracker tracker, int limit, boolean fullText) {
+        List<HotPrompt> prompts = tracker.top(limit).stream().map(stats -> HotPrompt.of(stats, fullText)).toList();
+        return new Report(tracker.totalLookups(), tracker.getHalfLife().toMinutes(), prompts);
+    }
+}
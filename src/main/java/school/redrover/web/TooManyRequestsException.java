@@ -0,0 +1,23 @@
+package school.redrover.web;
+
+import java.time.Duration;
+
+/**
+ * Admission was refused; answered with 429 and a {@code Retry-After} header.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Whole seconds, rounded up and at least one, as {@code Retry-After} requires.
+     */
+    public long getRetryAfterSeconds() {
+        return Math.max(1L, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
@@ -3,6 +3,38 @@ document.addEventListener("DOMContentLoaded", () => {
     const promptInput = document.getElementById("prompt");
     const responseDiv = document.getElementById("response");
 
+    // Splits an SSE byte stream into {event, data} objects, tolerating events cut across chunks.
+    async function readEvents(body, onEvent) {
+        const reader = body.getReader();
+        const decoder = new TextDecoder();
+        let buffer = "";
+
+        while (true) {
+            const { value, done } = await reader.read();
+            if (done) {
+                break;
+            }
+            buffer += decoder.decode(value, { stream: true }).replace(/\r\n/g, "\n");
+
+            let boundary;
+            while ((boundary = buffer.indexOf("\n\n")) !== -1) {
+                const rawEvent = buffer.slice(0, boundary);
+                buffer = buffer.slice(boundary + 2);
+
+                let event = "message";
+                const data = [];
+                for (const line of rawEvent.split("\n")) {
+                    if (line.startsWith("event:")) {
+                        event = line.slice(6).trim();
+                    } else if (line.startsWith("data:")) {
+                        data.push(line.slice(5));
+                    }
+                }
+                onEvent(event, JSON.parse(data.join("\n")));
+            }
+        }
+    }
+
     form.addEventListener("submit", async (event) => {
         event.preventDefault();
 
@@ -20,9 +52,9 @@ document.addEventListener("DOMContentLoaded", () => {
         responseDiv.style.color = "black";
 
         try {
-            const response = await fetch("http://localhost:8081/api/bender/ask", {
+            const response = await fetch("http://localhost:8081/api/bender/ask/stream", {
                 method: "POST",
-                headers: { "Content-Type": "application/json" },
+                headers: { "Content-Type": "application/json", "Accept": "text/event-stream" },
                 body: JSON.stringify(prompt),
             });
 
@@ -30,9 +62,19 @@ document.addEventListener("DOMContentLoaded", () => {
                 throw new Error(`HTTP error! Status: ${response.status}`);
             }
 
-            const responseText = await response.text();
-            responseDiv.innerText = responseText;
-            responseDiv.style.color = "black";
+            let firstToken = true;
+            await readEvents(response.body, (name, payload) => {
+                if (name === "token") {
+                    if (firstToken) {
+                        responseDiv.innerText = "";
+                        firstToken = false;
+                    }
+                    responseDiv.innerText += payload.text;
+                } else if (name === "error") {
+                    responseDiv.innerText = "Error: " + payload.text;
+                    responseDiv.style.color = "red";
+                }
+            });
         } catch (error) {
             console.error("Error communicating with the backend:", error);
             responseDiv.innerText = "An error occurred. Please try again.";
@@ -0,0 +1,151 @@
+package school.redrover.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchingLlmClientTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private final List<Boolean> completedBatches = new CopyOnWriteArrayList<>();
+
+    @Test
+    void sendsAFullBatchAtOnceAndAnswersEachCallerByIndex() throws Exception {
+        BatchingLlmClient client = client(3, Duration.ofHours(1), this::echo);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (String prompt : List.of("a", "b", "c")) {
+            results.add(client.getResponseAsync(prompt));
+        }
+
+        assertThat(batches).containsExactly(List.of("a", "b", "c"));
+        for (int i = 0; i < 3; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS)).isEqualTo("answer to " + "abc".charAt(i));
+        }
+        assertThat(completedBatches).containsExactly(false);
+    }
+
+    @Test
+    void sendsAPartialBatchWhenTheLingerTimeRunsOut() throws Exception {
+        BatchingLlmClient client = client(10, Duration.ofMillis(20), this::echo);
+
+        CompletableFuture<String> first = client.getResponseAsync("a");
+        CompletableFuture<String> second = client.getResponseAsync("b");
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("answer to a");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("answer to b");
+        assertThat(batches).containsExactly(List.of("a", "b"));
+    }
+
+    @Test
+    void aFullBatchDoesNotLetItsLingerTimerCutTheNextBatchShort() throws Exception {
+        BatchingLlmClient client = client(3, Duration.ofMillis(100), this::echo);
+
+        // Fills and sends the first batch; its linger timer still fires at 100 ms.
+        client.getResponseAsync("a");
+        client.getResponseAsync("b");
+        client.getResponseAsync("c");
+        Thread.sleep(60);
+        CompletableFuture<String> next = client.getResponseAsync("d");
+        Thread.sleep(60);
+        client.getResponseAsync("e");
+
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo("answer to d");
+        assertThat(batches).containsExactly(List.of("a", "b", "c"), List.of("d", "e"));
+    }
+
+    @Test
+    void leavesOutCallersThatGaveUpWhileLingering() throws Exception {
+        BatchingLlmClient client = client(10, Duration.ofMillis(20), this::echo);
+
+        client.getResponseAsync("a").cancel(true);
+        CompletableFuture<String> kept = client.getResponseAsync("b");
+
+        assertThat(kept.get(5, TimeUnit.SECONDS)).isEqualTo("answer to b");
+        // A batch of one goes out as a plain call.
+        assertThat(batches).containsExactly(List.of("b"));
+    }
+
+    @Test
+    void failsOnlyTheCallersWhoseCompletionIsMissing() throws Exception {
+        BatchingLlmClient client = client(2, Duration.ofHours(1),
+                prompts -> CompletableFuture.completedFuture(Arrays.asList("answer", null)));
+
+        CompletableFuture<String> answered = client.getResponseAsync("a");
+        CompletableFuture<String> missing = client.getResponseAsync("b");
+
+        assertThat(answered.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+        assertThatThrownBy(() -> missing.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void anUpstreamFailureFailsTheWholeBatch() {
+        BatchingLlmClient client = client(2, Duration.ofHours(1),
+                prompts -> CompletableFuture.failedFuture(new IOException("upstream down")));
+
+        CompletableFuture<String> first = client.getResponseAsync("a");
+        CompletableFuture<String> second = client.getResponseAsync("b");
+
+        for (CompletableFuture<String> result : List.of(first, second)) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasRootCauseMessage("upstream down");
+        }
+        assertThat(completedBatches).containsExactly(true);
+    }
+
+    private CompletableFuture<List<String>> echo(List<String> prompts) {
+        return CompletableFuture.completedFuture(prompts.stream().map(prompt -> "answer to " + prompt).toList());
+    }
+
+    private BatchingLlmClient client(int maxBatchSize, Duration linger,
+                                     Function<List<String>, CompletableFuture<List<String>>> upstream) {
+        LlmClient delegate = new LlmClient() {
+            @Override
+            public String name() {
+                return "upstream";
+            }
+
+            @Override
+            public int getMaxTokens() {
+                return 16;
+            }
+
+            @Override
+            public String getResponse(String prompt) {
+                return getResponseAsync(prompt).join();
+            }
+
+            @Override
+            public CompletableFuture<String> getResponseAsync(String prompt) {
+                return getResponsesAsync(List.of(prompt)).thenApply(responses -> responses.get(0));
+            }
+
+            @Override
+            public CompletableFuture<List<String>> getResponsesAsync(List<String> prompts) {
+                batches.add(prompts);
+                return upstream.apply(prompts);
+            }
+
+            @Override
+            public String streamResponse(String prompt, Consumer<String> onToken) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        return new BatchingLlmClient(delegate, maxBatchSize, linger,
+                (backend, size, lingerNanos, latencyNanos, failed) -> completedBatches.add(failed));
+    }
+}
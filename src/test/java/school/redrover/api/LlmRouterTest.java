@@ -0,0 +1,191 @@
+package school.redrover.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LlmRouterTest {
+
+    private static final Duration NO_HEDGE = Duration.ZERO;
+    private static final Duration COOLDOWN = Duration.ofMinutes(1);
+
+    @Test
+    void failsOverToTheNextBackendAndCoolsTheFailedOneDown() throws Exception {
+        Backend primary = new Backend("primary");
+        Backend secondary = new Backend("secondary");
+        LlmRouter router = router(LlmRouter.Policy.COST, NO_HEDGE, primary, secondary);
+
+        CompletableFuture<String> answer = router.getResponseAsync("hi");
+        primary.fail(0, new IOException("502"));
+        secondary.answer(0, "from secondary");
+
+        assertThat(answer.get(5, TimeUnit.SECONDS)).isEqualTo("from secondary");
+        assertThat(router.failoverCount()).isEqualTo(1);
+        assertThat(router.ordered()).extracting(LlmRouter.Route::name).containsExactly("secondary", "primary");
+        assertThat(router.getRoutes().get(0).isHealthy()).isFalse();
+        assertThat(router.getRoutes().get(0).failureCount()).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesASlowCallAndCancelsTheLoser() throws Exception {
+        Backend slow = new Backend("slow");
+        Backend fast = new Backend("fast");
+        LlmRouter router = router(LlmRouter.Policy.COST, Duration.ofMillis(20), slow, fast);
+
+        CompletableFuture<String> answer = router.getResponseAsync("hi");
+        fast.awaitCall(0).complete("from fast");
+
+        assertThat(answer.get(5, TimeUnit.SECONDS)).isEqualTo("from fast");
+        assertThat(router.hedgedCount()).isEqualTo(1);
+        assertThat(slow.calls.get(0)).isCancelled();
+        // A hedge that lost is not a failure of the slow backend.
+        assertThat(router.getRoutes().get(0).failureCount()).isZero();
+        assertThat(router.getRoutes().get(0).isHealthy()).isTrue();
+        assertThat(router.getRoutes().get(1).successCount()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsTheLastErrorWhenEveryBackendFails() {
+        Backend first = new Backend("first");
+        Backend second = new Backend("second");
+        LlmRouter router = router(LlmRouter.Policy.COST, NO_HEDGE, first, second);
+
+        CompletableFuture<String> answer = router.getResponseAsync("hi");
+        first.fail(0, new IOException("first down"));
+        second.fail(0, new IOException("second down"));
+
+        assertThatThrownBy(() -> answer.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasRootCauseMessage("second down");
+        assertThat(router.failoverCount()).isEqualTo(1);
+    }
+
+    @Test
+    void ordersHealthyBackendsByPolicy() throws Exception {
+        Backend cheap = new Backend("cheap");
+        Backend quick = new Backend("quick");
+        LlmRouter byCost = router(LlmRouter.Policy.COST, NO_HEDGE, quick, cheap);
+        assertThat(byCost.ordered()).extracting(LlmRouter.Route::name).containsExactly("cheap", "quick");
+
+        LlmRouter byLatency = router(LlmRouter.Policy.LATENCY, NO_HEDGE, cheap, quick);
+        CompletableFuture<String> slowCall = byLatency.getResponseAsync("a");
+        Thread.sleep(20);
+        cheap.answer(0, "slow");
+        slowCall.get(5, TimeUnit.SECONDS);
+        // Only cheap has a latency sample yet, so untried quick (0 ns) goes first.
+        assertThat(byLatency.ordered()).extracting(LlmRouter.Route::name).containsExactly("quick", "cheap");
+    }
+
+    @Test
+    void streamsFailOverOnlyBeforeTheFirstToken() throws IOException {
+        Backend broken = new Backend("broken");
+        broken.streamTokens = List.of();
+        Backend working = new Backend("working");
+        working.streamTokens = List.of("Bite ", "me");
+        List<String> tokens = new ArrayList<>();
+
+        String response = router(LlmRouter.Policy.COST, NO_HEDGE, broken, working).streamResponse("hi", tokens::add);
+
+        assertThat(response).isEqualTo("Bite me");
+        assertThat(tokens).containsExactly("Bite ", "me");
+
+        Backend halfway = new Backend("halfway");
+        halfway.streamTokens = List.of("partial");
+        Backend unused = new Backend("unused");
+        unused.streamTokens = List.of("never");
+        List<String> shown = new ArrayList<>();
+        assertThatThrownBy(() -> router(LlmRouter.Policy.COST, NO_HEDGE, halfway, unused)
+                .streamResponse("hi", shown::add)).isInstanceOf(IOException.class);
+        assertThat(shown).containsExactly("partial");
+        assertThat(unused.streams).isZero();
+    }
+
+    private static LlmRouter router(LlmRouter.Policy policy, Duration hedgeDelay, Backend... backends) {
+        List<LlmClient> clients = List.of(backends);
+        // Prices rise in the order given ("cheap" is free), so the cost policy tries them in that order.
+        List<Double> costs = new ArrayList<>();
+        for (int i = 0; i < backends.length; i++) {
+            costs.add(backends[i].name.equals("cheap") ? 0.0 : 1.0 + i);
+        }
+        return new LlmRouter(clients, costs, policy, hedgeDelay, COOLDOWN);
+    }
+
+    /**
+     * A backend whose calls complete only when the test says so. Streams emit {@code streamTokens}
+     * and then fail, unless the backend's name is "working".
+     */
+    private static final class Backend implements LlmClient {
+
+        final String name;
+        final List<CompletableFuture<String>> calls = new ArrayList<>();
+        List<String> streamTokens = List.of();
+        int streams;
+
+        Backend(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int getMaxTokens() {
+            return 16;
+        }
+
+        @Override
+        public String getResponse(String prompt) {
+            return getResponseAsync(prompt).join();
+        }
+
+        @Override
+        public synchronized CompletableFuture<String> getResponseAsync(String prompt) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            notifyAll();
+            return call;
+        }
+
+        @Override
+        public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+            streams++;
+            streamTokens.forEach(onToken);
+            if (!name.equals("working")) {
+                throw new IOException(name + " stream broke");
+            }
+            return String.join("", streamTokens);
+        }
+
+        synchronized CompletableFuture<String> awaitCall(int index) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (calls.size() <= index && System.currentTimeMillis() < deadline) {
+                wait(100);
+            }
+            return calls.get(index);
+        }
+
+        void answer(int index, String response) throws InterruptedException {
+            awaitCall(index).complete(response);
+        }
+
+        void fail(int index, Throwable error) {
+            try {
+                awaitCall(index).completeExceptionally(error);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
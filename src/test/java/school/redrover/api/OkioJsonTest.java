@@ -0,0 +1,51 @@
+package school.redrover.api;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OkioJsonTest {
+
+    @Test
+    void roundTripsTextAcrossTheDecodeWindow() throws IOException {
+        // Multi-byte and supplementary characters straddling the 1 KiB byte window.
+        String text = "Bite my shiny metal \"ass\" é€🤖\n".repeat(200);
+        Buffer buffer = new Buffer();
+        JsonWriter writer = OkioJson.writer(buffer);
+        writer.beginObject().name("text").value(text).endObject();
+        writer.flush();
+
+        JsonReader reader = OkioJson.reader(buffer);
+        reader.beginObject();
+        assertThat(reader.nextName()).isEqualTo("text");
+        assertThat(reader.nextString()).isEqualTo(text);
+        reader.endObject();
+    }
+
+    @Test
+    void readsTheBytesTheWriterProduces() throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = OkioJson.writer(buffer);
+        writer.value("café 🤖");
+        writer.flush();
+
+        assertThat(buffer.readUtf8()).isEqualTo("\"café 🤖\"");
+    }
+
+    @Test
+    void replacesALoneSurrogateAndMalformedBytes() throws IOException {
+        Buffer written = new Buffer();
+        JsonWriter writer = OkioJson.writer(written);
+        writer.value("a\ud83eb");
+        writer.flush();
+        assertThat(written.readUtf8()).isEqualTo("\"a?b\"");
+
+        Buffer malformed = new Buffer().writeUtf8("\"a").writeByte(0xff).writeUtf8("b\"");
+        assertThat(OkioJson.reader(malformed).nextString()).isEqualTo("a�b");
+    }
+}
@@ -0,0 +1,170 @@
+package school.redrover.api;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenAIClientTest {
+
+    private static final String COMPLETIONS_URL = "http://upstream.test/v1/completions";
+    private static final String CHAT_URL = "http://upstream.test/v1/chat/completions";
+
+    @Test
+    void parsesCompletionAndChatResponsesSkippingEverythingElse() throws IOException {
+        assertThat(OpenAIClient.parseCompletion("""
+                {"id":"x","usage":{"total_tokens":3,"nested":[1,{"a":null}]},
+                 "choices":[{"text":"  Bite me.\\n","logprobs":null},{"text":"ignored"}]}
+                """)).isEqualTo("Bite me.");
+        assertThat(OpenAIClient.parseCompletion("""
+                {"choices":[{"index":0,"message":{"role":"assistant","content":"Kill all humans"}}],"model":"m"}
+                """)).isEqualTo("Kill all humans");
+    }
+
+    @Test
+    void failsWhenThereIsNoCompletion() {
+        assertThatThrownBy(() -> OpenAIClient.parseCompletion("{\"choices\":[]}"))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> OpenAIClient.parseCompletion("{\"choices\":[{\"message\":{\"content\":null}}]}"))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> OpenAIClient.parseCompletion("{\"error\":{\"message\":\"quota\"}}"))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void mapsBatchChoicesBackByIndex() throws IOException {
+        String body = """
+                {"choices":[{"index":2,"text":" c "},{"index":0,"text":"a"},{"index":7,"text":"out of range"}]}
+                """;
+
+        List<String> completions = OpenAIClient.parseCompletions(new JsonReader(new StringReader(body)), 3);
+
+        assertThat(completions).containsExactly("a", null, "c");
+    }
+
+    @Test
+    void escapesThePromptIntoTheRequestBody() throws IOException {
+        String prompt = "Say \"hi\" \\ to {everyone}\n🤖";
+        OpenAIClient completions = client(COMPLETIONS_URL, respond(200, ""));
+        OpenAIClient chat = client(CHAT_URL, respond(200, ""));
+
+        JsonObject body = json(completions, prompt, false);
+        assertThat(body.get("prompt").getAsString()).isEqualTo(prompt);
+        assertThat(body.get("max_tokens").getAsInt()).isEqualTo(100);
+        assertThat(body.has("stream")).isFalse();
+
+        JsonObject chatBody = json(chat, prompt, true);
+        assertThat(chatBody.getAsJsonArray("messages").get(0).getAsJsonObject().get("content").getAsString())
+                .isEqualTo(prompt);
+        assertThat(chatBody.get("stream").getAsBoolean()).isTrue();
+    }
+
+    @Test
+    void streamsChatDeltasAsTheyArrive() throws IOException {
+        String events = """
+                : keep-alive
+                data: {"choices":[{"delta":{"role":"assistant"}}]}
+
+                data: {"choices":[{"delta":{"content":"Bite "}}]}
+
+                data: {"choices":[{"delta":{"content":"my shiny"}}]}
+
+                data: {"choices":[{"delta":{"content":" metal ass"}}]}
+
+                data: [DONE]
+
+                data: {"choices":[{"delta":{"content":"after done"}}]}
+                """;
+        OpenAIClient client = client(CHAT_URL, respond(200, events));
+        List<String> tokens = new ArrayList<>();
+
+        String completion = client.streamResponse("hello", tokens::add);
+
+        assertThat(tokens).containsExactly("Bite ", "my shiny", " metal ass");
+        assertThat(completion).isEqualTo("Bite my shiny metal ass");
+    }
+
+    @Test
+    void keepsEscapedNewlinesInsideStreamedTokens() throws IOException {
+        String events = """
+                data: {"choices":[{"delta":{"content":"Line one\\n"}}]}
+
+                data: {"choices":[{"delta":{"content":"\\n\\nLine \\"two\\""}}]}
+
+                data: [DONE]
+                """;
+        OpenAIClient client = client(CHAT_URL, respond(200, events));
+        List<String> tokens = new ArrayList<>();
+
+        String completion = client.streamResponse("hello", tokens::add);
+
+        assertThat(tokens).containsExactly("Line one\n", "\n\nLine \"two\"");
+        assertThat(completion).isEqualTo("Line one\n\n\nLine \"two\"");
+    }
+
+    @Test
+    void failsAStreamBeforeAnyTokenWhenUpstreamRejectsIt() {
+        OpenAIClient client = client(CHAT_URL, respond(503, "{\"error\":\"overloaded\"}"));
+        List<String> tokens = new ArrayList<>();
+
+        assertThatThrownBy(() -> client.streamResponse("hello", tokens::add))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("overloaded");
+        assertThat(tokens).isEmpty();
+    }
+
+    @Test
+    void readsTheResponseBodyAndReportsUpstreamErrors() throws IOException {
+        AtomicReference<Request> sent = new AtomicReference<>();
+        OpenAIClient ok = client(COMPLETIONS_URL, chain -> {
+            sent.set(chain.request());
+            return respond(200, "{\"choices\":[{\"text\":\"Shut up baby, I know it!\"}]}").intercept(chain);
+        });
+        assertThat(ok.getResponse("hi")).isEqualTo("Shut up baby, I know it!");
+        assertThat(sent.get().header("Authorization")).isEqualTo("Bearer key");
+
+        OpenAIClient failing = client(COMPLETIONS_URL, respond(429, "{\"error\":\"slow down\"}"));
+        assertThatThrownBy(() -> failing.getResponse("hi"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("slow down");
+    }
+
+    private static OpenAIClient client(String url, Interceptor upstream) {
+        OpenAIConfig config = OpenAIConfig.from(Map.of("openai.api-url", url, "openai.api-key", "key")::get);
+        return new OpenAIClient(config, new OkHttpClient.Builder().addInterceptor(upstream).build());
+    }
+
+    private static Interceptor respond(int code, String body) {
+        return chain -> new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code)
+                .body(ResponseBody.create(body, MediaType.get("application/json")))
+                .build();
+    }
+
+    private static JsonObject json(OpenAIClient client, String prompt, boolean stream) throws IOException {
+        Buffer buffer = new Buffer();
+        client.buildRequestBody(prompt, stream).writeTo(buffer);
+        return JsonParser.parseString(buffer.readUtf8()).getAsJsonObject();
+    }
+}
@@ -0,0 +1,211 @@
+package school.redrover.api;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryInterceptorTest {
+
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    void retriesServerErrorsUntilOneSucceeds() throws IOException {
+        OkHttpClient client = client(3, Duration.ofSeconds(1), 503, 500, 200);
+
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void givesUpAfterMaxAttemptsWithTheLastResponse() throws IOException {
+        OkHttpClient client = client(2, Duration.ofSeconds(1), 502, 502, 200);
+
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(502);
+        }
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void doesNotRetryClientErrors() throws IOException {
+        OkHttpClient client = client(3, Duration.ofSeconds(1), 400, 200);
+
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(400);
+        }
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void returnsA429WhoseRetryAfterExceedsTheMaximumBackoff() throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(3, Duration.ofMillis(1), Duration.ofSeconds(1)))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    return response(chain, 429).newBuilder().header("Retry-After", "120").build();
+                })
+                .build();
+
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(429);
+        }
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void retriesConnectionFailures() throws IOException {
+        Deque<Boolean> failures = new ArrayDeque<>(List.of(true, true, false));
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(3, Duration.ofMillis(1), Duration.ofMillis(5)))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    if (failures.pop()) {
+                        throw new IOException("connection reset");
+                    }
+                    return response(chain, 200);
+                })
+                .build();
+
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+
+        OkHttpClient failing = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(2, Duration.ofMillis(1), Duration.ofMillis(5)))
+                .addInterceptor(chain -> {
+                    throw new IOException("refused");
+                })
+                .build();
+        assertThatThrownBy(() -> call(failing)).isInstanceOf(IOException.class).hasMessage("refused");
+    }
+
+    @Test
+    void retriesSocketTimeoutsButNotCancelledCalls() throws IOException {
+        Deque<Boolean> timeouts = new ArrayDeque<>(List.of(true, false));
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(3, Duration.ofMillis(1), Duration.ofMillis(5)))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    if (timeouts.pop()) {
+                        throw new SocketTimeoutException("timeout");
+                    }
+                    return response(chain, 200);
+                })
+                .build();
+        try (Response response = call(client)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        assertThat(attempts).hasValue(2);
+
+        attempts.set(0);
+        OkHttpClient cancelling = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(3, Duration.ofMillis(1), Duration.ofMillis(5)))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    chain.call().cancel();
+                    throw new InterruptedIOException("Canceled");
+                })
+                .build();
+        assertThatThrownBy(() -> call(cancelling)).isInstanceOf(InterruptedIOException.class);
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void aCancelledCallStopsBackingOffAtOnce() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(3, Duration.ofMillis(1), Duration.ofSeconds(30)))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    return response(chain, 503).newBuilder().header("Retry-After", "20").build();
+                })
+                .build();
+        Call call = client.newCall(new Request.Builder().url("http://upstream.test/v1/completions").build());
+        CompletableFuture<IOException> failure = new CompletableFuture<>();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                failure.complete(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                failure.complete(null);
+            }
+        });
+        Thread.sleep(100);
+
+        long start = System.nanoTime();
+        call.cancel();
+
+        assertThat(failure.get(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+        assertThat(attempts).hasValue(1);
+    }
+
+    @Test
+    void parsesRetryAfterSecondsAndDates() {
+        assertThat(RetryInterceptor.parseRetryAfter("7")).isEqualTo(Duration.ofSeconds(7));
+        assertThat(RetryInterceptor.parseRetryAfter("-3")).isEqualTo(Duration.ZERO);
+        assertThat(RetryInterceptor.parseRetryAfter(null)).isNull();
+        assertThat(RetryInterceptor.parseRetryAfter("soon")).isNull();
+
+        String inAMinute = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(60));
+        assertThat(RetryInterceptor.parseRetryAfter(inAMinute)).isBetween(Duration.ofSeconds(55), Duration.ofSeconds(60));
+        String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().minusHours(1));
+        assertThat(RetryInterceptor.parseRetryAfter(past)).isEqualTo(Duration.ZERO);
+    }
+
+    private OkHttpClient client(int maxAttempts, Duration maxBackoff, int... codes) {
+        Deque<Integer> script = new ArrayDeque<>();
+        for (int code : codes) {
+            script.add(code);
+        }
+        return new OkHttpClient.Builder()
+                .addInterceptor(new RetryInterceptor(maxAttempts, Duration.ofMillis(1), maxBackoff))
+                .addInterceptor(chain -> {
+                    attempts.incrementAndGet();
+                    return response(chain, script.pop());
+                })
+                .build();
+    }
+
+    private static Response call(OkHttpClient client) throws IOException {
+        return client.newCall(new Request.Builder().url("http://upstream.test/v1/completions").build()).execute();
+    }
+
+    private static Response response(Interceptor.Chain chain, int code) {
+        return new Response.Builder()
+                .request(chain.request())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("status " + code)
+                .body(ResponseBody.create("{}", MediaType.get("application/json")))
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationIndexTest {
+
+    private static final ConversationIndex.LogPosition A1 = new ConversationIndex.LogPosition(0, 10);
+    private static final ConversationIndex.LogPosition B1 = new ConversationIndex.LogPosition(10, 20);
+    private static final ConversationIndex.LogPosition A2 = new ConversationIndex.LogPosition(30, 15);
+    private static final ConversationIndex.LogPosition C1 = new ConversationIndex.LogPosition(45, 5);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsEveryPositionOfAHashAcrossSnapshotAndTail() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(30));
+        long a = ConversationIndex.hash("a");
+        index.add(a, A1);
+        index.add(ConversationIndex.hash("b"), B1);
+        index.add(a, A2);
+        index.writeSnapshot(30);
+
+        index.add(a, new ConversationIndex.LogPosition(50, 7));
+
+        assertThat(index.coveredLength()).isEqualTo(30);
+        assertThat(index.tailSize()).isEqualTo(2);
+        // Snapshot entries come first in offset order, then the tail.
+        assertThat(index.positions(a)).containsExactly(A1, A2, new ConversationIndex.LogPosition(50, 7));
+        assertThat(index.positions(ConversationIndex.hash("b"))).containsExactly(B1);
+        assertThat(index.positions(ConversationIndex.hash("missing"))).isEmpty();
+    }
+
+    @Test
+    void reopensTheSnapshotSortedByHash() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(10_000));
+        for (int i = 0; i < 1_000; i++) {
+            index.add(ConversationIndex.hash("prompt " + (i % 100)), new ConversationIndex.LogPosition(i * 10L, 10));
+        }
+        index.writeSnapshot(10_000);
+
+        ConversationIndex reopened = ConversationIndex.open(indexFile(), logFile());
+
+        assertThat(reopened.coveredLength()).isEqualTo(10_000);
+        assertThat(reopened.tailSize()).isZero();
+        for (int p = 0; p < 100; p++) {
+            long firstOffset = p * 10L;
+            List<ConversationIndex.LogPosition> positions = reopened.positions(ConversationIndex.hash("prompt " + p));
+            assertThat(positions).hasSize(10);
+            assertThat(positions).extracting(ConversationIndex.LogPosition::offset)
+                    .isSorted().allMatch(offset -> offset % 1_000 == firstOffset);
+        }
+    }
+
+    @Test
+    void foldsAnotherSnapshotOnTopOfTheMappedOne() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(50));
+        long a = ConversationIndex.hash("a");
+        index.add(a, A1);
+        index.writeSnapshot(10);
+        index.add(a, A2);
+        index.add(ConversationIndex.hash("c"), C1);
+        index.writeSnapshot(50);
+
+        ConversationIndex reopened = ConversationIndex.open(indexFile(), logFile());
+
+        assertThat(reopened.positions(a)).containsExactly(A1, A2);
+        assertThat(reopened.positions(ConversationIndex.hash("c"))).containsExactly(C1);
+    }
+
+    @Test
+    void startsEmptyWhenTheLogIsShorterThanTheSnapshot() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(10));
+        index.add(ConversationIndex.hash("a"), A1);
+        index.writeSnapshot(10);
+
+        ConversationIndex reopened = ConversationIndex.open(indexFile(), log(5));
+
+        assertThat(reopened.coveredLength()).isZero();
+        assertThat(reopened.positions(ConversationIndex.hash("a"))).isEmpty();
+    }
+
+    @Test
+    void startsEmptyWhenARotatedLogHasGrownPastTheSnapshot() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(10));
+        index.add(ConversationIndex.hash("a"), A1);
+        index.writeSnapshot(10);
+
+        Files.writeString(logFile(), "{\"prompt\":\"a different log after rotation\"}\n");
+        ConversationIndex reopened = ConversationIndex.open(indexFile(), logFile());
+
+        assertThat(reopened.coveredLength()).isZero();
+        assertThat(reopened.positions(ConversationIndex.hash("a"))).isEmpty();
+    }
+
+    @Test
+    void keepsTheSnapshotWhileTheSameLogGrows() throws IOException {
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(10_000));
+        index.add(ConversationIndex.hash("a"), A1);
+        index.writeSnapshot(10_000);
+
+        Files.write(logFile(), new byte[100], StandardOpenOption.APPEND);
+        ConversationIndex reopened = ConversationIndex.open(indexFile(), logFile());
+
+        assertThat(reopened.coveredLength()).isEqualTo(10_000);
+        assertThat(reopened.positions(ConversationIndex.hash("a"))).containsExactly(A1);
+    }
+
+    @Test
+    void startsEmptyWhenTheSnapshotIsCorrupt() throws IOException {
+        Files.write(indexFile(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        ConversationIndex index = ConversationIndex.open(indexFile(), log(100));
+
+        assertThat(index.coveredLength()).isZero();
+        assertThat(index.positions(ConversationIndex.hash("a"))).isEmpty();
+    }
+
+    /**
+     * (Re)writes the log with {@code length} bytes of the same content each time, so growing it
+     * keeps its start and its fingerprint.
+     */
+    private Path log(int length) throws IOException {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return Files.write(logFile(), bytes);
+    }
+
+    private Path logFile() {
+        return directory.resolve("conversations.jsonl");
+    }
+
+    private Path indexFile() {
+        return directory.resolve("conversations.jsonl.idx");
+    }
+}
@@ -0,0 +1,88 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class ConversationLogWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesLinesAndReportsTheirOffsets() throws IOException {
+        Path log = directory.resolve("log.jsonl");
+        List<long[]> positions = new ArrayList<>();
+        ConversationLogWriter writer = writer(log, (record, offset, length) -> positions.add(new long[]{offset, length}));
+        writer.append(new ConversationRecord("p1", "r1", 1_000L));
+        writer.append(new ConversationRecord("p2", "r2 with \"quotes\" and <html>", 2_000L));
+        writer.close();
+
+        byte[] bytes = Files.readAllBytes(log);
+        List<String> lines = Files.readAllLines(log);
+        assertThat(lines).containsExactly(
+                ConversationLogWriter.toJsonLine(new ConversationRecord("p1", "r1", 1_000L)),
+                ConversationLogWriter.toJsonLine(new ConversationRecord("p2", "r2 with \"quotes\" and <html>", 2_000L)));
+        assertThat(positions).hasSize(2);
+        for (int i = 0; i < positions.size(); i++) {
+            String line = new String(bytes, (int) positions.get(i)[0], (int) positions.get(i)[1]);
+            assertThat(line).isEqualTo(lines.get(i));
+        }
+    }
+
+    @Test
+    void keepsWritingAfterAFailingBatch() throws IOException {
+        Path log = directory.resolve("log.jsonl");
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        ConversationLogWriter writer = writer(log, (record, offset, length) -> {
+            if (failNext.getAndSet(false)) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+
+        writer.append(new ConversationRecord("p1", "r1", 1_000L));
+        awaitBatches(writer, 1);
+        writer.append(new ConversationRecord("p2", "r2", 2_000L));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), writer::close);
+
+        assertThat(Files.readAllLines(log)).hasSize(2);
+        assertThat(writer.getStats().records()).isEqualTo(2);
+    }
+
+    @Test
+    void closeIsIdempotentAndDropsLaterAppends() throws IOException {
+        ConversationLogWriter writer = writer(directory.resolve("log.jsonl"), (record, offset, length) -> {
+        });
+        assertThat(writer.drainAndClose()).isTrue();
+        writer.close();
+        assertThat(writer.drainAndClose()).isTrue();
+
+        assertThat(writer.append(new ConversationRecord("p", "r", 1L))).isFalse();
+        assertThat(writer.getStats().dropped()).isEqualTo(1);
+    }
+
+    private static ConversationLogWriter writer(Path log, ConversationLogWriter.Listener listener) throws IOException {
+        return new ConversationLogWriter(log, 16, Duration.ofMillis(1), 64 * 1024,
+                ConversationLogWriter.FsyncPolicy.NONE, Duration.ZERO, Duration.ofMillis(100), listener);
+    }
+
+    private static void awaitBatches(ConversationLogWriter writer, long batches) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (writer.getStats().batches() < batches) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + batches + " batch(es)");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
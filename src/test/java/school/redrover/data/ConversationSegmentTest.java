@@ -0,0 +1,89 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversationSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsRecordsAcrossBlocksInOrder() throws IOException {
+        List<ConversationRecord> records = new ArrayList<>();
+        long time = 1_700_000_000_000L;
+        for (int i = 0; i < ConversationSegment.BLOCK_RECORDS * 3 + 7; i++) {
+            // Timestamps may go backwards a little; deltas are zigzag-encoded.
+            time += i % 5 == 0 ? -3 : 1_000;
+            records.add(new ConversationRecord("prompt " + (i % 40), "response " + i + " ✓", time));
+        }
+        Path file = directory.resolve("segment-0.seg");
+        ConversationSegment.write(file, records);
+
+        try (ConversationSegment segment = ConversationSegment.open(file)) {
+            assertThat(segment.recordCount()).isEqualTo(records.size());
+            List<ConversationRecord> read = new ArrayList<>();
+            segment.forEach(read::add);
+            assertThat(read).isEqualTo(records);
+
+            List<String> prompts = new ArrayList<>();
+            segment.forEachPrompt(prompts::add);
+            assertThat(prompts).hasSize(40).doesNotHaveDuplicates();
+        }
+        assertThat(Files.exists(directory.resolve("segment-0.seg.tmp"))).isFalse();
+    }
+
+    @Test
+    void findsTheNewestResponsesOfAPromptOldestFirst() throws IOException {
+        List<ConversationRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            String prompt = i % 2 == 0 ? "even" : "odd " + i;
+            records.add(new ConversationRecord(prompt, "answer " + i, 1_000L + i));
+        }
+        Path file = directory.resolve("segment-1.seg");
+        ConversationSegment.write(file, records);
+
+        try (ConversationSegment segment = ConversationSegment.open(file)) {
+            StoredResponses even = segment.find("even", 3);
+            assertThat(even.responses()).containsExactly("answer 994", "answer 996", "answer 998");
+            assertThat(even.updatedAt()).isEqualTo(1_998L);
+
+            assertThat(segment.find("odd 11", 5).responses()).containsExactly("answer 11");
+            assertThat(segment.find("never asked", 5)).isNull();
+        }
+    }
+
+    @Test
+    void compressesRepetitiveLogsWellBelowTheirJsonlSize() throws IOException {
+        List<ConversationRecord> records = new ArrayList<>();
+        StringBuilder jsonl = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            ConversationRecord record = new ConversationRecord("What is the meaning of life? #" + (i % 20),
+                    "Forty-two, meatbag. Now get me a beer.", 1_700_000_000_000L + i * 1_000L);
+            records.add(record);
+            jsonl.append("{\"prompt\":\"").append(record.prompt()).append("\",\"response\":\"")
+                    .append(record.response()).append("\",\"timestamp\":").append(record.timestamp()).append("}\n");
+        }
+        Path file = directory.resolve("segment-2.seg");
+        ConversationSegment.write(file, records);
+
+        assertThat(Files.size(file)).isLessThan(jsonl.length() / 10);
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path file = directory.resolve("conversations.jsonl");
+        Files.writeString(file, "{\"prompt\":\"a\",\"response\":\"b\",\"timestamp\":1}\n");
+
+        assertThatThrownBy(() -> ConversationSegment.open(file)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,73 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CountMinSketchTest {
+
+    @Test
+    void countsExactlyWhileKeysDoNotCollide() {
+        CountMinSketch sketch = new CountMinSketch(1024, 4);
+        long a = ConversationIndex.hash("a");
+        long b = ConversationIndex.hash("b");
+
+        assertThat(sketch.add(a)).isEqualTo(1);
+        assertThat(sketch.add(a)).isEqualTo(2);
+        assertThat(sketch.add(b)).isEqualTo(1);
+
+        assertThat(sketch.estimate(a)).isEqualTo(2);
+        assertThat(sketch.estimate(ConversationIndex.hash("never added"))).isZero();
+    }
+
+    @Test
+    void neverUndercountsAndOvercountsLittleUnderLoad() {
+        CountMinSketch sketch = new CountMinSketch(1 << 10, 4);
+        Map<Long, Integer> exact = new HashMap<>();
+        Random random = new Random(7);
+        int total = 100_000;
+        for (int i = 0; i < total; i++) {
+            long key = ConversationIndex.hash("prompt " + (int) Math.exp(random.nextDouble() * Math.log(5_000)));
+            exact.merge(key, 1, Integer::sum);
+            sketch.add(key);
+        }
+
+        long badlyOvercounted = 0;
+        for (Map.Entry<Long, Integer> entry : exact.entrySet()) {
+            int estimate = sketch.estimate(entry.getKey());
+            assertThat(estimate).isGreaterThanOrEqualTo(entry.getValue());
+            // The classic bound is e/width * total with high probability; conservative updates do better.
+            if (estimate - entry.getValue() > Math.E / (1 << 10) * total) {
+                badlyOvercounted++;
+            }
+        }
+        assertThat(badlyOvercounted).isLessThan(exact.size() / 20);
+    }
+
+    @Test
+    void halvingDecaysEveryCount() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        long key = ConversationIndex.hash("a");
+        for (int i = 0; i < 9; i++) {
+            sketch.add(key);
+        }
+
+        sketch.halve();
+        assertThat(sketch.estimate(key)).isEqualTo(4);
+        sketch.halve();
+        sketch.halve();
+        sketch.halve();
+        assertThat(sketch.estimate(key)).isZero();
+    }
+
+    @Test
+    void requiresAPowerOfTwoWidth() {
+        assertThatThrownBy(() -> new CountMinSketch(1000, 4)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(new CountMinSketch(16, 3).counters()).hasSize(48);
+    }
+}
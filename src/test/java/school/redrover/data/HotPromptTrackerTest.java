@@ -0,0 +1,114 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotPromptTrackerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ranksTheMostRequestedPromptsOfASkewedStream() {
+        HotPromptTracker tracker = new HotPromptTracker(null, 10, 1 << 12, Duration.ZERO);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Roughly Zipf-distributed over 10k prompts: prompt k is asked about 1/k as often.
+            int k = (int) Math.exp(random.nextDouble() * Math.log(10_000));
+            String prompt = "prompt " + k;
+            exact.merge(prompt, 1, Integer::sum);
+            tracker.recordLookup(prompt, false);
+        }
+
+        List<String> expected = exact.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(5).map(Map.Entry::getKey).toList();
+        assertThat(tracker.top(5)).extracting(PromptStats::prompt).containsExactlyElementsOf(expected);
+        for (PromptStats stats : tracker.top(10)) {
+            assertThat(stats.lookups()).isGreaterThanOrEqualTo(exact.get(stats.prompt()));
+        }
+        assertThat(tracker.totalLookups()).isEqualTo(200_000);
+    }
+
+    @Test
+    void countsHitsMissesAndUpstreamLatencyOfHotPrompts() {
+        HotPromptTracker tracker = new HotPromptTracker(null, 2, 1024, Duration.ZERO);
+        tracker.recordLookup("a", false);
+        tracker.recordUpstream("a", 100);
+        tracker.recordLookup("a", true);
+        tracker.recordLookup("a", true);
+        tracker.recordUpstream("not hot", 5_000);
+
+        assertThat(tracker.top(5)).containsExactly(new PromptStats("a", 3, 2, 1, 1, 100.0));
+    }
+
+    @Test
+    void evictsTheLeastRequestedPromptWhenFull() {
+        HotPromptTracker tracker = new HotPromptTracker(null, 2, 1024, Duration.ZERO);
+        lookups(tracker, "a", 5);
+        lookups(tracker, "b", 1);
+        lookups(tracker, "c", 3);
+
+        assertThat(tracker.top(5)).extracting(PromptStats::prompt).containsExactly("a", "c");
+    }
+
+    @Test
+    void halvesEveryCountEachHalfLife() throws InterruptedException {
+        HotPromptTracker tracker = new HotPromptTracker(null, 4, 1024, Duration.ofMillis(200));
+        lookups(tracker, "a", 100);
+
+        Thread.sleep(250);
+
+        assertThat(tracker.top(1).get(0).lookups()).isEqualTo(50);
+        assertThat(tracker.estimate("a")).isEqualTo(50);
+        assertThat(tracker.totalLookups()).isEqualTo(50);
+    }
+
+    @Test
+    void persistsAcrossRestarts() throws IOException {
+        Path file = directory.resolve("conversations.jsonl.hot");
+        try (HotPromptTracker tracker = new HotPromptTracker(file, 4, 1024, Duration.ofHours(1))) {
+            lookups(tracker, "a", 3);
+            tracker.recordUpstream("a", 40);
+        }
+
+        HotPromptTracker reloaded = new HotPromptTracker(file, 4, 1024, Duration.ofHours(1));
+
+        assertThat(reloaded.top(5)).containsExactly(new PromptStats("a", 3, 0, 3, 1, 40.0));
+        assertThat(reloaded.estimate("a")).isEqualTo(3);
+        assertThat(reloaded.totalLookups()).isEqualTo(3);
+    }
+
+    @Test
+    void cachesOutsideTheServerDoNotOverwriteItsStats() throws IOException {
+        Path log = directory.resolve("conversations.jsonl");
+        Path file = directory.resolve("conversations.jsonl.hot");
+        try (HotPromptTracker server = new HotPromptTracker(file, 4, 1024, Duration.ofHours(1))) {
+            lookups(server, "server prompt", 2);
+        }
+
+        try (ResponseCache cli = new ResponseCache(log, 100, 1L << 20, Duration.ZERO, 5, 2.0)) {
+            cli.recordLookup("cli prompt", false);
+        }
+
+        assertThat(new HotPromptTracker(file, 4, 1024, Duration.ofHours(1)).top(5))
+                .extracting(PromptStats::prompt).containsExactly("server prompt");
+    }
+
+    private static void lookups(HotPromptTracker tracker, String prompt, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.recordLookup(prompt, false);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonlCacheStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheNewestResponsesInOrder() {
+        Path log = directory.resolve("conversations.jsonl");
+        try (JsonlCacheStore store = new JsonlCacheStore(log)) {
+            store.append(new ConversationRecord("q", "first", 1_000L));
+            store.append(new ConversationRecord("other", "x", 2_000L));
+            store.append(new ConversationRecord("q", "second", 3_000L));
+            store.append(new ConversationRecord("q", "third", 4_000L));
+            awaitWritten(store, 4);
+
+            StoredResponses stored = store.load("q", 2);
+
+            assertThat(stored.responses()).containsExactly("second", "third");
+            assertThat(stored.updatedAt()).isEqualTo(4_000L);
+            assertThat(store.load("missing", 2)).isNull();
+        }
+    }
+
+    @Test
+    void reopeningUsesTheSnapshotAndReplaysTheTail() {
+        Path log = directory.resolve("conversations.jsonl");
+        try (JsonlCacheStore store = new JsonlCacheStore(log)) {
+            store.append(new ConversationRecord("q", "before restart", 1_000L));
+        }
+        try (JsonlCacheStore store = new JsonlCacheStore(log)) {
+            assertThat(store.load("q", 5).responses()).containsExactly("before restart");
+            List<String> prompts = new ArrayList<>();
+            store.forEachPrompt(prompts::add);
+            assertThat(prompts).containsExactly("q");
+        }
+    }
+
+    @Test
+    void writersSharingTheLogKeepCorrectOffsets() throws IOException {
+        Path log = Files.createFile(directory.resolve("conversations.jsonl"));
+        try (JsonlCacheStore server = new JsonlCacheStore(log); JsonlCacheStore cli = new JsonlCacheStore(log)) {
+            server.append(new ConversationRecord("from server", "server answer 1", 1_000L));
+            awaitWritten(server, 1);
+            cli.append(new ConversationRecord("from cli", "a longer answer written by the CLI", 2_000L));
+            awaitWritten(cli, 1);
+            server.append(new ConversationRecord("from server again", "server answer 2", 3_000L));
+            awaitWritten(server, 2);
+
+            assertThat(server.load("from server again", 5).responses()).containsExactly("server answer 2");
+            assertThat(server.load("from cli", 5).responses()).containsExactly("a longer answer written by the CLI");
+            assertThat(cli.load("from server", 5).responses()).containsExactly("server answer 1");
+        }
+    }
+
+    private static void awaitWritten(JsonlCacheStore store, long records) {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (store.getWriterStats().records() < records) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for " + records + " record(s) to be written");
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
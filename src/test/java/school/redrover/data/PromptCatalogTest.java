@@ -0,0 +1,133 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptCatalogTest {
+
+    private static final Map<String, String> PROMPTS = prompts(
+            "success", "What is the key to success?",
+            "escape", "Plan a bold escape from a difficult situation.",
+            "money", "Generate a money-making plan.",
+            "argument", "Give advice for winning an argument.",
+            "padded", "  Keep the change, ya filthy animal  ");
+
+    @Test
+    void searchMatchesTheLinearScanItReplaced() {
+        Random random = new Random(42);
+        String alphabet = "abcde ?.";
+        Map<String, String> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < 300; i++) {
+            prompts.put("p" + i, randomText(random, alphabet, 1 + random.nextInt(40)));
+        }
+        PromptCatalog catalog = new PromptCatalog(prompts);
+
+        for (int i = 0; i < 2_000; i++) {
+            String needle = randomText(random, alphabet, random.nextInt(7));
+            assertThat(catalog.search(needle)).as("search(\"%s\")", needle)
+                    .containsExactlyEntriesOf(linearSearch(prompts, needle));
+        }
+        for (String prompt : prompts.values()) {
+            int start = random.nextInt(prompt.length());
+            String needle = prompt.substring(start, Math.min(prompt.length(), start + 1 + random.nextInt(8)));
+            assertThat(catalog.search(needle.toUpperCase(Locale.ROOT))).as("search(\"%s\")", needle)
+                    .containsExactlyEntriesOf(linearSearch(prompts, needle));
+        }
+    }
+
+    @Test
+    void searchIgnoresCaseKeepsCatalogOrderAndSeesEdgeWhitespace() {
+        PromptCatalog catalog = new PromptCatalog(PROMPTS);
+
+        assertThat(catalog.search("PLAN").keySet()).containsExactly("escape", "money");
+        assertThat(catalog.search("a ").keySet()).containsExactly("escape", "money", "padded");
+        assertThat(catalog.search("l  ").keySet()).containsExactly("padded");
+        assertThat(catalog.search("").keySet()).containsExactlyElementsOf(PROMPTS.keySet());
+        assertThat(catalog.search("no such words")).isEmpty();
+    }
+
+    @Test
+    void fuzzySearchRanksByTrigramOverlapAndDropsWeakMatches() {
+        PromptCatalog catalog = new PromptCatalog(PROMPTS);
+
+        // Typos and word order still find the prompt.
+        assertThat(catalog.fuzzySearch("succes key", 3, 0.3).keySet()).first().isEqualTo("success");
+        assertThat(catalog.fuzzySearch("plan money making", 1, 0.3).keySet()).containsExactly("money");
+        assertThat(catalog.fuzzySearch("plan", 5, 0.0).keySet()).startsWith("money", "escape");
+        assertThat(catalog.fuzzySearch("plan", 5, 0.3)).isEmpty();
+        assertThat(catalog.fuzzySearch("zzzz", 5, 0.0)).isEmpty();
+        assertThat(catalog.fuzzySearch("plan", 0, 0.0)).isEmpty();
+    }
+
+    @Test
+    void fuzzyScoresAreTheDiceCoefficientOfTrigramSets() {
+        String prompt = "Give advice for winning an argument.";
+        PromptCatalog catalog = new PromptCatalog(Map.of("argument", prompt));
+        String query = "winning arguments";
+
+        double dice = dice(query, prompt);
+
+        assertThat(catalog.fuzzySearch(query, 1, dice)).containsKey("argument");
+        assertThat(catalog.fuzzySearch(query, 1, Math.nextUp(dice))).isEmpty();
+        assertThat(catalog.fuzzySearch("  " + query.toUpperCase(Locale.ROOT) + "  ", 1, dice)).containsKey("argument");
+        assertThat(catalog.fuzzySearch(prompt, 1, 1.0)).containsKey("argument");
+    }
+
+    @Test
+    void resolvesKeysAndOneBasedNumbers() {
+        PromptCatalog catalog = new PromptCatalog(PROMPTS);
+
+        assertThat(catalog.resolve("escape")).isEqualTo("Plan a bold escape from a difficult situation.");
+        assertThat(catalog.resolve("1")).isEqualTo("What is the key to success?");
+        assertThat(catalog.resolve("3")).isEqualTo("Generate a money-making plan.");
+        assertThat(catalog.resolve("0")).isEqualTo("0");
+        assertThat(catalog.resolve("6")).isEqualTo("6");
+        assertThat(catalog.resolve("99999999999")).isEqualTo("99999999999");
+        assertThat(catalog.resolve("How are you?")).isEqualTo("How are you?");
+        assertThat(catalog.resolve("")).isEmpty();
+        assertThat(catalog.byNumber(5)).isEqualTo(PROMPTS.get("padded"));
+        assertThat(catalog.containsPrompt("Generate a money-making plan.")).isTrue();
+        assertThat(catalog.containsPrompt("generate a money-making plan.")).isFalse();
+    }
+
+    private static Map<String, String> linearSearch(Map<String, String> prompts, String keyword) {
+        String needle = keyword.toLowerCase(Locale.ROOT);
+        Map<String, String> results = new LinkedHashMap<>();
+        prompts.forEach((key, prompt) -> {
+            if (prompt.toLowerCase(Locale.ROOT).contains(needle)) {
+                results.put(key, prompt);
+            }
+        });
+        return results;
+    }
+
+    private static double dice(String query, String prompt) {
+        var queryGrams = PromptCatalog.grams(query.toLowerCase(Locale.ROOT));
+        var promptGrams = PromptCatalog.grams(prompt.toLowerCase(Locale.ROOT));
+        long shared = queryGrams.stream().filter(promptGrams::contains).count();
+        return 2.0 * shared / (queryGrams.size() + promptGrams.size());
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            text.append(random.nextBoolean() ? c : Character.toUpperCase(c));
+        }
+        return text.toString();
+    }
+
+    private static Map<String, String> prompts(String... keysAndPrompts) {
+        Map<String, String> prompts = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndPrompts.length; i += 2) {
+            prompts.put(keysAndPrompts[i], keysAndPrompts[i + 1]);
+        }
+        return prompts;
+    }
+}
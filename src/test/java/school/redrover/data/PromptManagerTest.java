@@ -0,0 +1,72 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PromptManagerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void layersPromptFilesOverTheDefaultsInFileOrder() throws IOException {
+        Files.writeString(directory.resolve("b.properties"), "zeta=From b\nsuccess=Overridden by b\n");
+        Files.writeString(directory.resolve("a.properties"), "alpha=From a\nsuccess=Overridden by a\n");
+        Files.writeString(directory.resolve("ignored.txt"), "nope=Not a properties file\n");
+
+        try (PromptManager manager = new PromptManager(directory, false)) {
+            assertThat(manager.getPrompt("success")).isEqualTo("Overridden by b");
+            assertThat(manager.getPrompts().keySet()).startsWith("success", "strategy").endsWith("alpha", "zeta")
+                    .doesNotContain("nope");
+            // Numbers follow display order, so the first file's prompt comes before the second's.
+            int alpha = manager.getPrompts().size() - 1;
+            assertThat(manager.resolve(String.valueOf(alpha))).isEqualTo("From a");
+            assertThat(manager.resolve("zeta")).isEqualTo("From b");
+        }
+    }
+
+    @Test
+    void reloadPicksUpFileChangesAndKeepsRuntimeEdits() throws IOException {
+        Path file = directory.resolve("custom.properties");
+        Files.writeString(file, "custom=First version\nshared=From file\n");
+
+        try (PromptManager manager = new PromptManager(directory, false)) {
+            manager.addPrompt("runtime", "Added at runtime");
+            manager.updatePrompt("shared", "Edited at runtime");
+            manager.removePrompt("escape");
+            manager.updatePrompt("missing", "Ignored");
+            PromptCatalog before = manager.getCatalog();
+
+            Files.writeString(file, "custom=Second version\nshared=Changed in file\n");
+            manager.reload();
+
+            assertThat(manager.getCatalog()).isNotSameAs(before);
+            assertThat(before.get("custom")).isEqualTo("First version");
+            assertThat(manager.getPrompt("custom")).isEqualTo("Second version");
+            assertThat(manager.getPrompt("shared")).isEqualTo("Edited at runtime");
+            assertThat(manager.getPrompt("runtime")).isEqualTo("Added at runtime");
+            assertThat(manager.getPrompt("escape")).isNull();
+            assertThat(manager.getPrompt("missing")).isNull();
+            assertThat(manager.searchPrompts("runtime").keySet()).containsExactlyInAnyOrder("runtime", "shared");
+        }
+    }
+
+    @Test
+    void searchesSeeEditsImmediately() {
+        try (PromptManager manager = new PromptManager(directory.resolve("absent"), false)) {
+            manager.addPrompt("robot", "Bite my shiny metal ass");
+
+            assertThat(manager.searchPrompts("SHINY").keySet()).containsExactly("robot");
+            assertThat(manager.fuzzySearch("bite my shiny metal", 1).keySet()).containsExactly("robot");
+
+            manager.removePrompt("robot");
+            assertThat(manager.searchPrompts("shiny")).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentedLruCacheTest {
+
+    private final List<String> evicted = new ArrayList<>();
+
+    @Test
+    void oneOffKeysDoNotFlushProtectedEntries() {
+        SegmentedLruCache<String, String> cache = cache(5, Long.MAX_VALUE);
+        cache.put("hot", "h");
+        cache.get("hot");
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("scan " + i, "s");
+        }
+
+        assertThat(cache.peek("hot")).isEqualTo("h");
+        assertThat(cache.size()).isEqualTo(5);
+        assertThat(evicted).hasSize(16).doesNotContain("hot").startsWith("scan 0", "scan 1");
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedProbationEntryFirst() {
+        SegmentedLruCache<String, String> cache = cache(3, Long.MAX_VALUE);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+
+        cache.put("d", "4");
+
+        assertThat(evicted).containsExactly("b");
+        assertThat(cache.peek("a")).isEqualTo("1");
+    }
+
+    @Test
+    void demotesTheOldestProtectedEntryWhenItsSegmentOverflows() {
+        // Protected holds 4 of 5 entries.
+        SegmentedLruCache<String, String> cache = cache(5, Long.MAX_VALUE);
+        for (String key : List.of("a", "b", "c", "d", "e")) {
+            cache.put(key, key);
+            cache.get(key);
+        }
+
+        // "a" was demoted to probation when "e" was promoted, so it goes first.
+        cache.put("f", "f");
+
+        assertThat(evicted).containsExactly("a");
+    }
+
+    @Test
+    void boundsTotalWeightButKeepsASingleOversizedEntry() {
+        SegmentedLruCache<String, String> cache = cache(100, 10);
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        assertThat(cache.weight()).isEqualTo(10);
+
+        cache.put("c", "123");
+        assertThat(evicted).containsExactly("a");
+        assertThat(cache.weight()).isEqualTo(8);
+
+        cache.put("huge", "123456789012");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.weight()).isEqualTo(12);
+    }
+
+    @Test
+    void replacingAValueUpdatesTheWeight() {
+        SegmentedLruCache<String, String> cache = cache(10, 100);
+        cache.put("a", "12");
+        cache.put("a", "12345");
+        assertThat(cache.weight()).isEqualTo(5);
+        assertThat(cache.size()).isEqualTo(1);
+
+        assertThat(cache.remove("a")).isEqualTo("12345");
+        assertThat(cache.weight()).isZero();
+        assertThat(evicted).isEmpty();
+    }
+
+    private SegmentedLruCache<String, String> cache(int maxEntries, long maxWeight) {
+        return new SegmentedLruCache<>(maxEntries, maxWeight, String::length, (key, value) -> evicted.add(key));
+    }
+}
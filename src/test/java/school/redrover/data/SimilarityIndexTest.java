@@ -0,0 +1,126 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SimilarityIndexTest {
+
+    private static final String PROMPT = "How do I reset my password on the Planet Express delivery portal?";
+    private static final String NEAR = "how do I reset my password on the Planet Express delivery website";
+
+    @TempDir
+    Path directory;
+
+    private SimilarityIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    @Test
+    void matchesCanonicallyEqualPromptsExactly() {
+        index = index(1.0);
+        index.add("What's the key to success?");
+
+        SimilarityIndex.Match match = index.findSimilar("what is the KEY to success");
+
+        assertThat(match).isEqualTo(new SimilarityIndex.Match("What's the key to success?", 1.0));
+        assertThat(index.findSimilar(NEAR)).isNull();
+    }
+
+    @Test
+    void findsNearDuplicatesAboveTheThresholdOnly() {
+        index = index(0.6);
+        index.add(PROMPT);
+        index.add("Tell me a joke about robots");
+
+        SimilarityIndex.Match match = index.findSimilar(NEAR);
+
+        assertThat(match).isNotNull();
+        assertThat(match.prompt()).isEqualTo(PROMPT);
+        assertThat(match.similarity()).isBetween(0.6, 1.0);
+        assertThat(index.findSimilar("What is the boiling point of liquid nitrogen?")).isNull();
+    }
+
+    @Test
+    void signaturesEstimateShingleJaccardSimilarity() {
+        String a = PromptNormalizer.canonicalize(PROMPT);
+        String b = PromptNormalizer.canonicalize(NEAR);
+        int[] first = SimilarityIndex.signature(a);
+        int[] second = SimilarityIndex.signature(b);
+        int equal = 0;
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] == second[i]) {
+                equal++;
+            }
+        }
+
+        assertThat((double) equal / first.length).isCloseTo(jaccard(shingles(a), shingles(b)), within(0.2));
+        assertThat(SimilarityIndex.signature(a)).isEqualTo(first);
+    }
+
+    @Test
+    void keepsOnePromptPerCanonicalForm() {
+        index = index(1.0);
+        index.add("Hello, Bender!");
+        index.add("hello bender");
+        index.add("");
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.findSimilar("HELLO BENDER").prompt()).isEqualTo("Hello, Bender!");
+    }
+
+    @Test
+    void reloadsPersistedSignaturesIgnoringATornTail() throws IOException {
+        index = index(0.6);
+        index.add(PROMPT);
+        index.add("Tell me a joke about robots");
+        index.close();
+        Files.write(file(), new byte[]{0, 0, 0, 42, 'x'}, StandardOpenOption.APPEND);
+
+        index = index(0.6);
+        assertThat(index.exists()).isTrue();
+        index.load();
+
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.findSimilar(NEAR).prompt()).isEqualTo(PROMPT);
+    }
+
+    private SimilarityIndex index(double threshold) {
+        return new SimilarityIndex(file(), threshold);
+    }
+
+    private Path file() {
+        return directory.resolve("conversations.jsonl.sig");
+    }
+
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + 4 <= text.length(); i++) {
+            shingles.add(text.substring(i, i + 4));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        Set<String> union = new HashSet<>(a);
+        union.addAll(b);
+        Set<String> intersection = new HashSet<>(a);
+        intersection.retainAll(b);
+        return (double) intersection.size() / union.size();
+    }
+}
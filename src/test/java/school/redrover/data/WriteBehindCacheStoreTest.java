@@ -0,0 +1,137 @@
+package school.redrover.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindCacheStoreTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final GatedStore delegate = new GatedStore(release);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    void queuedRecordsAreReadableBeforeTheyAreWritten() throws InterruptedException {
+        WriteBehindCacheStore store = new WriteBehindCacheStore(delegate, 100);
+        store.append(new ConversationRecord("p", "first", 1L));
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+        store.append(new ConversationRecord("p", "second", 2L));
+        store.append(new ConversationRecord("p", "third", 3L));
+
+        StoredResponses stored = store.load("p", 2);
+        assertThat(stored.responses()).containsExactly("second", "third");
+        assertThat(stored.updatedAt()).isEqualTo(3L);
+        assertThat(store.load("other", 2)).isNull();
+
+        release.countDown();
+        store.close();
+        assertThat(delegate.load("p", 5).responses()).containsExactly("first", "second", "third");
+        assertThat(store.getWriterStats().records()).isEqualTo(3);
+        assertThat(store.pendingWrites()).isZero();
+    }
+
+    @Test
+    void dropsRecordsInsteadOfBlockingWhenTheQueueIsFull() throws InterruptedException {
+        WriteBehindCacheStore store = new WriteBehindCacheStore(delegate, 2);
+        store.append(new ConversationRecord("held", "by the writer", 1L));
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        for (int i = 0; i < 5; i++) {
+            store.append(new ConversationRecord("p" + i, "r" + i, i));
+        }
+
+        assertThat(store.getWriterStats().dropped()).isEqualTo(3);
+        assertThat(store.pendingWrites()).isEqualTo(2);
+        // A dropped record is not served as if it had been accepted.
+        assertThat(store.load("p4", 5)).isNull();
+
+        release.countDown();
+        store.close();
+        assertThat(delegate.load("p1", 5).responses()).containsExactly("r1");
+        store.append(new ConversationRecord("late", "after close", 9L));
+        assertThat(store.getWriterStats().dropped()).isEqualTo(4);
+    }
+
+    @Test
+    void aRecordWrittenThroughDuringALoadIsStillSeen() throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        MemoryCacheStore slowReads = new MemoryCacheStore(5) {
+            @Override
+            public StoredResponses load(String prompt, int limit) {
+                StoredResponses stored = super.load(prompt, limit);
+                loading.countDown();
+                try {
+                    // The writer appends and forgets the record after the delegate was read.
+                    written.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return stored;
+            }
+
+            @Override
+            public void append(ConversationRecord record) {
+                try {
+                    loading.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.append(record);
+            }
+        };
+        WriteBehindCacheStore store = new WriteBehindCacheStore(slowReads, 100);
+        store.append(new ConversationRecord("p", "accepted", 1L));
+
+        Thread waitForWrite = new Thread(() -> {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (store.getWriterStats().records() == 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            written.countDown();
+        });
+        waitForWrite.start();
+
+        StoredResponses stored = store.load("p", 5);
+        waitForWrite.join();
+
+        assertThat(stored).isNotNull();
+        assertThat(stored.responses()).containsExactly("accepted");
+        // Once written through, the record is served by the delegate only, not twice.
+        assertThat(store.load("p", 5).responses()).containsExactly("accepted");
+        store.close();
+    }
+
+    /**
+     * An in-memory store whose first append blocks until released, so later records stay queued.
+     */
+    private static final class GatedStore extends MemoryCacheStore {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        GatedStore(CountDownLatch release) {
+            super(5);
+            this.release = release;
+        }
+
+        @Override
+        public void append(ConversationRecord record) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.append(record);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import school.redrover.api.LlmClient;
+import school.redrover.data.ResponseCache;
+import school.redrover.metrics.BenderMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BenderServiceBatchTest {
+
+    @TempDir
+    Path directory;
+
+    private ResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ResponseCache(directory.resolve("conversations.jsonl"), 1_000, 1L << 20, Duration.ZERO, 5, 2.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    void largeBatchOfImmediateFailuresDoesNotOverflowTheStack() throws Exception {
+        BenderService service = service(new FixedLlmClient(prompt -> CompletableFuture.failedFuture(new IOException("down"))));
+        List<String> prompts = IntStream.range(0, 20_000).mapToObj(i -> "prompt " + i).toList();
+        ConcurrentLinkedQueue<BatchResult> results = new ConcurrentLinkedQueue<>();
+
+        service.askBatch(prompts, 1, results::add).get(30, TimeUnit.SECONDS);
+
+        assertThat(results).hasSize(prompts.size());
+        assertThat(results).allSatisfy(result -> assertThat(result.error()).isEqualTo("down"));
+    }
+
+    @Test
+    void reportsEveryPromptOnceWhenCallsCompleteLater() throws Exception {
+        BenderService service = service(new FixedLlmClient(prompt -> CompletableFuture.supplyAsync(
+                () -> "answer to " + prompt, CompletableFuture.delayedExecutor(1, TimeUnit.MILLISECONDS))));
+        List<String> prompts = IntStream.range(0, 200).mapToObj(i -> "prompt " + i).toList();
+        ConcurrentLinkedQueue<BatchResult> results = new ConcurrentLinkedQueue<>();
+
+        service.askBatch(prompts, 8, results::add).get(30, TimeUnit.SECONDS);
+
+        List<Integer> indexes = new ArrayList<>(results.stream().map(BatchResult::index).toList());
+        indexes.sort(null);
+        assertThat(indexes).isEqualTo(IntStream.range(0, 200).boxed().toList());
+        assertThat(results).allSatisfy(result -> assertThat(result.response()).isEqualTo("answer to " + result.prompt()));
+    }
+
+    private BenderService service(LlmClient llm) {
+        return new BenderService(llm, cache, Duration.ofSeconds(10),
+                new ConcurrencyLimiter(64, 100_000, Duration.ofSeconds(30)), BenderMetrics.local(), new ConversationStore());
+    }
+}
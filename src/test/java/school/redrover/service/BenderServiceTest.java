@@ -0,0 +1,73 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import school.redrover.data.ResponseCache;
+import school.redrover.metrics.BenderMetrics;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BenderServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // Similarity tier off, so only exact prompts hit the cache.
+        cache = new ResponseCache(directory.resolve("conversations.jsonl"), 1_000, 1L << 20, Duration.ZERO, 5, 2.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    void coalescesSpellingsOfAPromptAndCachesTheAnswerUnderEach() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+        BenderService service = service(new FixedLlmClient(prompt -> {
+            calls.incrementAndGet();
+            return upstream;
+        }));
+
+        CompletableFuture<String> leader = service.askAsync("What's the key to success?");
+        CompletableFuture<String> follower = service.askAsync("what is the key to success");
+        upstream.complete("Bending.");
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("Bending.");
+        assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("Bending.");
+        assertThat(calls).hasValue(1);
+        assertThat(cache.getResponse("What's the key to success?")).containsExactly("Bending.");
+        assertThat(cache.getResponse("what is the key to success")).containsExactly("Bending.");
+
+        assertThat(service.ask("what is the key to success")).isEqualTo("Bending.");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void cachesASingleAskOnce() throws Exception {
+        BenderService service = service(new FixedLlmClient(prompt -> CompletableFuture.completedFuture("Bite me.")));
+
+        service.askAsync("hello").get(5, TimeUnit.SECONDS);
+        service.ask("hello");
+
+        assertThat(cache.getResponse("hello")).containsExactly("Bite me.");
+    }
+
+    private BenderService service(FixedLlmClient llm) {
+        return new BenderService(llm, cache, Duration.ofSeconds(10),
+                new ConcurrencyLimiter(64, 1_000, Duration.ofSeconds(30)), BenderMetrics.local(), new ConversationStore());
+    }
+}
@@ -0,0 +1,36 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientRateLimiterTest {
+
+    @Test
+    void limitsEachClientToItsBurst() {
+        ClientRateLimiter limiter = new ClientRateLimiter(60, 2, 100);
+
+        assertThat(limiter.tryAcquire("a", 1)).isZero();
+        assertThat(limiter.tryAcquire("a", 1)).isZero();
+        assertThat(limiter.tryAcquire("a", 1)).isPositive();
+        assertThat(limiter.tryAcquire("b", 1)).isZero();
+        assertThat(limiter.rejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsRefilledBucketsOncePastTheBound() throws InterruptedException {
+        // A thousand requests a second with a burst of one: buckets refill within a millisecond.
+        ClientRateLimiter limiter = new ClientRateLimiter(60_000, 1, 2);
+        limiter.tryAcquire("a", 1);
+        limiter.tryAcquire("b", 1);
+        limiter.tryAcquire("c", 1);
+        assertThat(limiter.clientCount()).isEqualTo(3);
+
+        Thread.sleep(20);
+        assertThat(limiter.tryAcquire("d", 1)).isEqualTo(Duration.ZERO);
+
+        assertThat(limiter.clientCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,140 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyLimiterTest {
+
+    @Test
+    void queuedCallTimesOutWhileEverySlotIsStuck() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, Duration.ofMillis(100));
+        CompletableFuture<String> stuck = new CompletableFuture<>();
+        limiter.submit(() -> stuck);
+
+        CompletableFuture<String> queued = limiter.submit(() -> CompletableFuture.completedFuture("late"));
+
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(QueueTimeoutException.class);
+        assertThat(limiter.queuedCount()).isZero();
+        assertThat(limiter.rejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedCallStartsWhenASlotFrees() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, Duration.ofSeconds(10));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        CompletableFuture<String> queued = limiter.submit(() -> CompletableFuture.completedFuture("second"));
+        assertThat(queued).isNotDone();
+
+        first.complete("first");
+
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+        assertThat(limiter.activeCount()).isZero();
+    }
+
+    @Test
+    void rejectsWhenTheQueueIsFull() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, Duration.ofSeconds(10));
+        limiter.submit(CompletableFuture::new);
+        limiter.submit(CompletableFuture::new);
+
+        CompletableFuture<Object> rejected = limiter.submit(CompletableFuture::new);
+
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void fairQueuingInterleavesAnOccasionalClientWithABacklog() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 100, Duration.ofSeconds(10));
+        CompletableFuture<String> busy = new CompletableFuture<>();
+        limiter.submit(() -> busy);
+        List<String> started = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            submit(limiter, started, "bulk", 10, "bulk " + i);
+        }
+        submit(limiter, started, "light", 10, "light");
+
+        busy.complete("done");
+
+        // light's finish tag (10) ties bulk's first and beats the rest of the backlog.
+        assertThat(started).containsExactly("bulk 0", "light", "bulk 1", "bulk 2", "bulk 3");
+    }
+
+    @Test
+    void heavierWeightsAndCheaperCallsGoFirst() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 100, Duration.ofSeconds(10), 0L, Map.of("gold", 4));
+        CompletableFuture<String> busy = new CompletableFuture<>();
+        limiter.submit(() -> busy);
+        List<String> started = new CopyOnWriteArrayList<>();
+        submit(limiter, started, "bronze", 8, "bronze 8");
+        submit(limiter, started, "gold", 8, "gold 8");
+        submit(limiter, started, "silver", 4, "silver 4");
+        submit(limiter, started, "gold", 8, "gold 8 again");
+
+        busy.complete("done");
+
+        // Finish tags: bronze 8, gold 2 then 4, silver 4 (queued before gold's second call).
+        assertThat(started).containsExactly("gold 8", "silver 4", "gold 8 again", "bronze 8");
+    }
+
+    @Test
+    void aCancelledCallIsNotHeldAgainstItsClient() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 100, Duration.ofSeconds(10));
+        CompletableFuture<String> busy = new CompletableFuture<>();
+        limiter.submit(() -> busy);
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> abandoned = limiter.submit("returning", 1_000, () -> {
+            started.add("abandoned");
+            return CompletableFuture.completedFuture("abandoned");
+        });
+
+        abandoned.cancel(false);
+        assertThat(limiter.queuedCount()).isZero();
+        assertThat(limiter.trackedClients()).isZero();
+
+        submit(limiter, started, "returning", 10, "returning");
+        submit(limiter, started, "other", 10, "other");
+        busy.complete("done");
+
+        assertThat(started).containsExactly("returning", "other");
+        assertThat(limiter.trackedClients()).isZero();
+    }
+
+    @Test
+    void expiredCallsForgetTheirClients() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 100, Duration.ofMillis(50));
+        limiter.submit(CompletableFuture::new);
+        for (int i = 0; i < 10; i++) {
+            limiter.submit("10.0.0." + i, 10, CompletableFuture::new);
+        }
+        assertThat(limiter.trackedClients()).isEqualTo(10);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.queuedCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(limiter.queuedCount()).isZero();
+        assertThat(limiter.trackedClients()).isZero();
+    }
+
+    private static void submit(ConcurrencyLimiter limiter, List<String> started, String client, long cost, String name) {
+        limiter.submit(client, cost, () -> {
+            started.add(name);
+            return CompletableFuture.completedFuture(name);
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.Test;
+import school.redrover.api.TokenCounter;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversationTest {
+
+    private static final String PREAMBLE = "You are Bender.";
+
+    @Test
+    void keepsRecentTurnsVerbatimAndSummarizesOlderOnes() {
+        Conversation conversation = new Conversation(PREAMBLE, 2, 1_000, 200);
+        conversation.record("What is your name? Tell me everything.", "Bender. Bending Rodriguez.");
+        conversation.record("Where do you work?", "Planet Express.");
+        conversation.record("Favourite drink?", "Mom's Old-Fashioned Robot Oil.");
+
+        String prompt = conversation.assemble("Anything else?");
+
+        assertThat(prompt).startsWith(PREAMBLE + "\nEarlier in this conversation: "
+                + "The user asked: What is your name? Bender said: Bender.\n");
+        assertThat(prompt).contains("User: Where do you work?\nBender: Planet Express.\n")
+                .contains("User: Favourite drink?\n")
+                .endsWith("User: Anything else?\nBender:")
+                .doesNotContain("Tell me everything");
+    }
+
+    @Test
+    void theAssembledPromptStaysWithinBudgetHoweverLongTheSession() {
+        int budget = 300;
+        Conversation conversation = new Conversation(PREAMBLE, 16, budget, 80);
+        String answer = "Bite my shiny metal ass, and while you are at it fetch me another beer from the fridge.";
+        for (int i = 0; i < 500; i++) {
+            conversation.record("Question number " + i + " about robots and humans and beer?", answer);
+            assertThat(TokenCounter.count(conversation.assemble("And now?"))).isLessThanOrEqualTo(budget);
+        }
+        assertThat(conversation.tokens()).isLessThanOrEqualTo(budget);
+        assertThat(conversation.transcript()).contains("Question number 499").doesNotContain("Question number 0 ");
+    }
+
+    @Test
+    void capsSummaryLinesAtTheirLeadingWords() {
+        Conversation conversation = new Conversation(PREAMBLE, 1, 1_000, 200);
+        conversation.record("one two three four five six seven eight nine ten eleven twelve thirteen fourteen "
+                + "fifteen sixteen seventeen eighteen nineteen twenty twentyone twentytwo twentythree twentyfour "
+                + "twentyfive twentysix", "ok");
+        conversation.record("next", "sure");
+
+        assertThat(conversation.transcript()).contains("twentyfour...").doesNotContain("twentyfive");
+    }
+
+    @Test
+    void storeEvictsTheLeastRecentlyUsedSession() {
+        ConversationStore store = new ConversationStore(PREAMBLE, 4, 500, 100, 2, Duration.ofHours(1));
+        Conversation a = store.get("a");
+        Conversation b = store.get("b");
+        assertThat(store.get("a")).isSameAs(a);
+
+        store.get("c");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get("a")).isSameAs(a);
+        assertThat(store.get("b")).isNotSameAs(b);
+    }
+
+    @Test
+    void storeExpiresIdleSessions() throws InterruptedException {
+        ConversationStore store = new ConversationStore(PREAMBLE, 4, 500, 100, 10, Duration.ofMillis(20));
+        Conversation idle = store.get("idle");
+        idle.record("hi", "hello");
+
+        Thread.sleep(50);
+
+        assertThat(store.get("idle")).isNotSameAs(idle).matches(Conversation::isEmpty);
+        assertThat(store.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,40 @@
+package school.redrover.service;
+
+import school.redrover.api.LlmClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Answers every prompt with {@code answer}, for service tests that need no upstream.
+ */
+record FixedLlmClient(Function<String, CompletableFuture<String>> answer) implements LlmClient {
+
+    @Override
+    public String name() {
+        return "fixed";
+    }
+
+    @Override
+    public int getMaxTokens() {
+        return 16;
+    }
+
+    @Override
+    public String getResponse(String prompt) {
+        return answer.apply(prompt).join();
+    }
+
+    @Override
+    public CompletableFuture<String> getResponseAsync(String prompt) {
+        return answer.apply(prompt);
+    }
+
+    @Override
+    public String streamResponse(String prompt, Consumer<String> onToken) {
+        String response = getResponse(prompt);
+        onToken.accept(response);
+        return response;
+    }
+}
@@ -0,0 +1,100 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseRefresherTest {
+
+    private final List<String> fetched = new CopyOnWriteArrayList<>();
+    private final Map<String, CompletableFuture<String>> calls = new ConcurrentHashMap<>();
+    private ResponseRefresher refresher;
+
+    @AfterEach
+    void tearDown() {
+        calls.values().forEach(call -> call.complete("done"));
+        if (refresher != null) {
+            refresher.close();
+        }
+    }
+
+    @Test
+    void runsAtMostMaxConcurrentFetchesAndNeverQueuesAPromptTwice() {
+        refresher = refresher(new ConcurrencyLimiter(10, 10, Duration.ofSeconds(10)), 2);
+
+        for (String prompt : List.of("a", "b", "a", "c", "b", "c", "d")) {
+            refresher.request(prompt);
+        }
+
+        assertThat(fetched).containsExactly("a", "b");
+        assertThat(refresher.pendingCount()).isEqualTo(2);
+
+        calls.get("a").complete("fresh a");
+        calls.get("b").completeExceptionally(new IOException("down"));
+
+        assertThat(fetched).containsExactly("a", "b", "c", "d");
+        assertThat(refresher.refreshedCount()).isEqualTo(1);
+        assertThat(refresher.failedCount()).isEqualTo(1);
+        assertThat(refresher.pendingCount()).isZero();
+    }
+
+    @Test
+    void waitsForLiveTrafficToLeaveAFreeSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 10, Duration.ofSeconds(10));
+        CompletableFuture<String> live = new CompletableFuture<>();
+        limiter.submit(() -> live);
+        refresher = refresher(limiter, 2);
+
+        refresher.request("stale");
+
+        assertThat(fetched).isEmpty();
+        assertThat(refresher.deferredCount()).isEqualTo(1);
+        assertThat(refresher.pendingCount()).isEqualTo(1);
+
+        live.complete("answered");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (fetched.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(fetched).containsExactly("stale");
+    }
+
+    @Test
+    void dropsRequestsBeyondMaxPendingAndAfterClose() {
+        refresher = new ResponseRefresher(new ConcurrencyLimiter(1, 10, Duration.ofSeconds(10)), 1, 1,
+                prompt -> 1L, this::fetch);
+
+        refresher.request("running");
+        refresher.request("pending");
+        refresher.request("dropped");
+        assertThat(refresher.pendingCount()).isEqualTo(1);
+
+        refresher.close();
+        refresher.request("late");
+        calls.get("running").complete("done");
+
+        assertThat(fetched).containsExactly("running");
+        assertThat(refresher.pendingCount()).isZero();
+    }
+
+    private ResponseRefresher refresher(ConcurrencyLimiter limiter, int maxConcurrent) {
+        return new ResponseRefresher(limiter, maxConcurrent, 100, prompt -> 1L, this::fetch);
+    }
+
+    private CompletableFuture<String> fetch(String prompt) {
+        fetched.add(prompt);
+        CompletableFuture<String> call = new CompletableFuture<>();
+        calls.put(prompt, call);
+        return call;
+    }
+}
@@ -0,0 +1,104 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> flights.execute("key", Duration.ofSeconds(5), () -> {
+                    loads.incrementAndGet();
+                    awaitQuietly(release);
+                    return "value";
+                })));
+            }
+            while (flights.inFlightCount() == 0) {
+                Thread.onSpinWait();
+            }
+            // Give the other callers time to join the flight before it lands.
+            Thread.sleep(50);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads).hasValueLessThan(8).hasValueGreaterThanOrEqualTo(1);
+        assertThat(flights.inFlightCount()).isZero();
+    }
+
+    @Test
+    void followersSeeTheLeadersFailureAndTheKeyIsReleased() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.executeAsync("key", Duration.ofSeconds(5), () -> upstream);
+        CompletableFuture<String> follower = flights.executeAsync("key", Duration.ofSeconds(5),
+                () -> CompletableFuture.completedFuture("not called"));
+
+        upstream.completeExceptionally(new IOException("down"));
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("down");
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("down");
+        assertThat(flights.inFlightCount()).isZero();
+        assertThat(flights.executeAsync("key", Duration.ofSeconds(5), () -> CompletableFuture.completedFuture("retry"))
+                .get(5, TimeUnit.SECONDS)).isEqualTo("retry");
+    }
+
+    @Test
+    void followersGiveUpAfterTheirWaitTimeout() {
+        flights.executeAsync("key", Duration.ofSeconds(5), CompletableFuture::new);
+
+        CompletableFuture<String> follower = flights.executeAsync("key", Duration.ofMillis(20),
+                () -> CompletableFuture.completedFuture("not called"));
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        // The timed-out follower does not cancel the flight itself.
+        assertThat(flights.inFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    void aLoaderThatThrowsFailsTheFlight() {
+        CompletableFuture<String> flight = flights.executeAsync("key", Duration.ofSeconds(5), () -> {
+            throw new IllegalStateException("broken");
+        });
+
+        assertThat(flight).isCompletedExceptionally();
+        assertThat(flights.inFlightCount()).isZero();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
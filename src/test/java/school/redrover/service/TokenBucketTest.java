@@ -0,0 +1,80 @@
+package school.redrover.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TokenBucketTest {
+
+    // Refills one token every ~3 hours, so tests see no refill.
+    private static final double SLOW_RATE = 1e-4;
+
+    @Test
+    void startsFullAndTakesPermitsUntilEmpty() {
+        TokenBucket bucket = new TokenBucket(10, SLOW_RATE);
+        assertThat(bucket.isFull()).isTrue();
+
+        assertThat(bucket.tryAcquire(4)).isZero();
+        assertThat(bucket.tryAcquire(6)).isZero();
+
+        assertThat(bucket.available()).isCloseTo(0.0, within(1e-3));
+        assertThat(bucket.isFull()).isFalse();
+    }
+
+    @Test
+    void refusesWithTheWaitUntilEnoughHaveRefilled() {
+        TokenBucket bucket = new TokenBucket(10, 100);
+        bucket.tryAcquire(10);
+
+        long wait = bucket.tryAcquire(5);
+
+        // 5 tokens at 100/s take at most 50 ms; a refused request takes nothing.
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(bucket.nanosUntil(5)).isLessThanOrEqualTo(wait);
+        assertThat(bucket.nanosUntil(0)).isZero();
+    }
+
+    @Test
+    void capsRequestsLargerThanTheCapacity() {
+        TokenBucket bucket = new TokenBucket(10, SLOW_RATE);
+
+        assertThat(bucket.tryAcquire(50)).isZero();
+        assertThat(bucket.tryAcquire(1)).isPositive();
+    }
+
+    @Test
+    void concurrentAcquirersNeverOverdraw() throws Exception {
+        TokenBucket bucket = new TokenBucket(1_000, SLOW_RATE);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    if (bucket.tryAcquire(1) == 0L) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted).hasValue(1_000);
+    }
+}
@@ -0,0 +1,265 @@
+package school.redrover.web;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import school.redrover.api.LlmClient;
+import school.redrover.api.StubLlmClient;
+import school.redrover.data.HotPromptTracker;
+import school.redrover.data.MemoryCacheStore;
+import school.redrover.data.ResponseCache;
+import school.redrover.service.BenderService;
+import school.redrover.service.ClientRateLimiter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class BenderControllerTest {
+
+    private static final String PROMPT = "Bender, what do you think about humans?";
+    private static final long MAX_AGE_SECONDS = 60L;
+
+    private final ExecutorService streamExecutor = Executors.newSingleThreadExecutor();
+    private ResponseCache cache;
+
+    @AfterEach
+    void tearDown() {
+        streamExecutor.shutdownNow();
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    void answersAreNotFoundUntilThePromptIsCached() throws Exception {
+        MockMvc mvc = mvc(Duration.ofHours(1));
+
+        mvc.perform(get("/api/bender/answers/" + ResponseCache.keyOf(PROMPT)))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/bender/answers/not-a-key"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void servesACachedAnswerWithAStableStrongETag() throws Exception {
+        MockMvc mvc = mvc(Duration.ofHours(1));
+        cache.saveResponse(PROMPT, "Kill all humans.");
+        String path = "/api/bender/answers/" + ResponseCache.keyOf(PROMPT);
+
+        MvcResult first = mvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Kill all humans."))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=" + MAX_AGE_SECONDS + ", public"))
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).matches("\"[0-9a-f]{16}\"");
+
+        mvc.perform(get(path)).andExpect(header().string(HttpHeaders.ETAG, etag));
+        mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mvc.perform(get(path).header(HttpHeaders.IF_NONE_MATCH, "\"0000000000000000\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void maxAgeDropsToZeroOnceTheAnswerIsNoLongerFresh() throws Exception {
+        MockMvc mvc = mvc(Duration.ofMillis(1));
+        cache.saveResponse(PROMPT, "Bite my shiny metal ass.");
+        Thread.sleep(20);
+
+        mvc.perform(get("/api/bender/answers/" + ResponseCache.keyOf(PROMPT)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=0, public"));
+    }
+
+    @Test
+    void pointsStatelessAnswersAtTheirCacheableCopy() throws Exception {
+        MockMvc mvc = mvc(Duration.ofHours(1));
+
+        MvcResult stateless = mvc.perform(post("/api/bender/ask").contentType(MediaType.TEXT_PLAIN).content(PROMPT))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(stateless))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_LOCATION,
+                        "/api/bender/answers/" + ResponseCache.keyOf(PROMPT)));
+
+        MvcResult session = mvc.perform(post("/api/bender/ask").contentType(MediaType.TEXT_PLAIN).content(PROMPT)
+                        .header("X-Session-Id", "s1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(session))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_LOCATION));
+    }
+
+    @Test
+    void streamsTokensThenDoneWithNewlinesIntact() throws Exception {
+        ScriptedLlmClient llm = new ScriptedLlmClient(List.of("Bite\nmy", " shiny\n\n", "metal ass"), null);
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller(llm, Duration.ofHours(1))).build();
+
+        List<String[]> events = stream(mvc, PROMPT);
+
+        assertThat(events).extracting(event -> event[0]).containsExactly("token", "token", "token", "done");
+        assertThat(events).extracting(event -> event[1]).containsExactly(
+                "Bite\nmy", " shiny\n\n", "metal ass", "");
+        assertThat(cache.getResponse(PROMPT)).containsExactly("Bite\nmy shiny\n\nmetal ass");
+    }
+
+    @Test
+    void endsTheStreamWithAnErrorEventWhenUpstreamFails() throws Exception {
+        ScriptedLlmClient llm = new ScriptedLlmClient(List.of("Bite "), new IOException("upstream went away"));
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(controller(llm, Duration.ofHours(1))).build();
+
+        List<String[]> events = stream(mvc, PROMPT);
+
+        assertThat(events).extracting(event -> event[0]).containsExactly("token", "error");
+        assertThat(events.get(1)[1]).isEqualTo("upstream went away");
+        assertThat(cache.getResponse(PROMPT)).isEmpty();
+    }
+
+    @Test
+    void cachesTheWholeAnswerAfterTheClientDisconnects() throws Exception {
+        CountDownLatch disconnected = new CountDownLatch(1);
+        ScriptedLlmClient llm = new ScriptedLlmClient(List.of("Bite ", "my ", "shiny ", "metal ass"), null) {
+            @Override
+            void afterToken(int index) throws InterruptedException {
+                if (index == 0) {
+                    disconnected.await(5, TimeUnit.SECONDS);
+                }
+            }
+        };
+        BenderController controller = controller(llm, Duration.ofHours(1));
+
+        SseEmitter emitter = controller.askBenderStream(PROMPT, null, new MockHttpServletRequest());
+        // A completed emitter rejects further sends, just like one whose client has gone.
+        emitter.complete();
+        disconnected.countDown();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getResponse(PROMPT).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(cache.getResponse(PROMPT)).containsExactly("Bite my shiny metal ass");
+        assertThat(llm.streams).hasValue(1);
+    }
+
+    /**
+     * Runs a streaming request to completion and returns its events as (name, text) pairs.
+     */
+    private static List<String[]> stream(MockMvc mvc, String prompt) throws Exception {
+        MvcResult result = mvc.perform(post("/api/bender/ask/stream").contentType(MediaType.TEXT_PLAIN).content(prompt))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        result.getAsyncResult(5_000);
+
+        List<String[]> events = new ArrayList<>();
+        String name = null;
+        for (String line : result.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith("event:")) {
+                name = line.substring("event:".length());
+            } else if (line.startsWith("data:")) {
+                String text = JsonParser.parseString(line.substring("data:".length())).getAsJsonObject()
+                        .get("text").getAsString();
+                events.add(new String[]{name, text});
+            }
+        }
+        return events;
+    }
+
+    private MockMvc mvc(Duration softTtl) {
+        return MockMvcBuilders.standaloneSetup(controller(new StubLlmClient("stub", 16, Duration.ZERO), softTtl)).build();
+    }
+
+    private BenderController controller(LlmClient llm, Duration softTtl) {
+        // Similarity tier off, so only exact prompts hit the cache.
+        cache = new ResponseCache(new MemoryCacheStore(5), null, HotPromptTracker.inMemory(), 1_000, 1L << 20,
+                Duration.ZERO, softTtl, 5, 2.0);
+        return new BenderController(new BenderService(llm, cache), streamExecutor,
+                new ClientRateLimiter(6_000, 100, 100), MAX_AGE_SECONDS);
+    }
+
+    /**
+     * Streams a fixed list of tokens, then fails with {@code failure} if one is given.
+     */
+    private static class ScriptedLlmClient implements LlmClient {
+
+        final AtomicInteger streams = new AtomicInteger();
+        private final List<String> tokens;
+        private final IOException failure;
+
+        ScriptedLlmClient(List<String> tokens, IOException failure) {
+            this.tokens = tokens;
+            this.failure = failure;
+        }
+
+        void afterToken(int index) throws InterruptedException {
+        }
+
+        @Override
+        public String name() {
+            return "scripted";
+        }
+
+        @Override
+        public int getMaxTokens() {
+            return 16;
+        }
+
+        @Override
+        public String getResponse(String prompt) throws IOException {
+            return streamResponse(prompt, token -> {
+            });
+        }
+
+        @Override
+        public CompletableFuture<String> getResponseAsync(String prompt) {
+            return CompletableFuture.supplyAsync(() -> String.join("", tokens));
+        }
+
+        @Override
+        public String streamResponse(String prompt, Consumer<String> onToken) throws IOException {
+            streams.incrementAndGet();
+            for (int i = 0; i < tokens.size(); i++) {
+                onToken.accept(tokens.get(i));
+                try {
+                    afterToken(i);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while streaming", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return String.join("", tokens);
+        }
+    }
+}
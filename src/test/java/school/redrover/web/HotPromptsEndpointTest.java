@@ -0,0 +1,38 @@
+package school.redrover.web;
+
+import org.junit.jupiter.api.Test;
+import school.redrover.data.HotPromptTracker;
+import school.redrover.data.ResponseCache;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotPromptsEndpointTest {
+
+    private static final String PROMPT = "Bender, tell me the secret recipe you stole from the Planet Express kitchen";
+
+    @Test
+    void reportsTheKeyAndAPreviewByDefault() {
+        HotPromptsEndpoint.HotPrompt hot = HotPromptsEndpoint.report(tracker(), 10, false).prompts().get(0);
+
+        assertThat(hot.key()).isEqualTo(ResponseCache.keyOf(PROMPT));
+        assertThat(hot.prompt()).isEqualTo(PROMPT.substring(0, HotPromptsEndpoint.PREVIEW_LENGTH) + "...");
+        assertThat(hot.lookups()).isEqualTo(2);
+        assertThat(hot.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsTheWholePromptWhenAskedFor() {
+        HotPromptsEndpoint.HotPrompt hot = HotPromptsEndpoint.report(tracker(), 10, true).prompts().get(0);
+
+        assertThat(hot.prompt()).isEqualTo(PROMPT);
+    }
+
+    private static HotPromptTracker tracker() {
+        HotPromptTracker tracker = new HotPromptTracker(null, 10, 1024, Duration.ZERO);
+        tracker.recordLookup(PROMPT, false);
+        tracker.recordLookup(PROMPT, true);
+        return tracker;
+    }
+}